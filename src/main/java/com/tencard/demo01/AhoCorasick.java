@@ -0,0 +1,143 @@
+package com.tencard.demo01;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick 多模式匹配自动机，构建后只读，可被多个线程同时使用。
+ * 一次扫描文本即可找出任意敏感词，耗时只与文本长度有关，与词库大小无关。
+ * 每个节点的转移按字符排序存放在数组里，查找用二分，避免每个节点一个 HashMap。
+ */
+final class AhoCorasick {
+
+    // 节点 -> 出边字符（升序）
+    private final char[][] keys;
+    // 节点 -> 出边目标节点，与 keys 一一对应
+    private final int[][] targets;
+    // 失配指针
+    private final int[] fail;
+    // 在该节点结束的最长词长度（含经失配链可达的词），0 表示没有词在此结束
+    private final int[] matchLength;
+    private final int wordCount;
+
+    /**
+     * @param words 已经规范化的词，空串会被忽略
+     */
+    AhoCorasick(Collection<String> words) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        children.add(new TreeMap<>());
+        lengths.add(0);
+        int count = 0;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer child = children.get(node).get(word.charAt(i));
+                if (child == null) {
+                    child = children.size();
+                    children.get(node).put(word.charAt(i), child);
+                    children.add(new TreeMap<>());
+                    lengths.add(0);
+                }
+                node = child;
+            }
+            if (lengths.get(node) == 0) {
+                count++;
+            }
+            lengths.set(node, word.length());
+        }
+
+        int size = children.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        fail = new int[size];
+        matchLength = new int[size];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> edges = children.get(node);
+            keys[node] = new char[edges.size()];
+            targets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[node][i] = edge.getKey();
+                targets[node][i] = edge.getValue();
+                i++;
+            }
+            matchLength[node] = lengths.get(node);
+        }
+        wordCount = count;
+        buildFailLinks();
+    }
+
+    /**
+     * 按层 BFS 计算失配指针，父节点的失配指针总是先于子节点算好
+     */
+    private void buildFailLinks() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                char c = keys[node][i];
+                int child = targets[node][i];
+                int f = fail[node];
+                int next = transition(f, c);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = transition(f, c);
+                }
+                fail[child] = next < 0 ? 0 : next;
+                if (matchLength[child] == 0) {
+                    matchLength[child] = matchLength[fail[child]];
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 在文本中找第一个出现的词
+     * @return 命中的词，没有命中返回 null
+     */
+    String findFirst(char[] text, int length) {
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            int next = transition(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = transition(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            int matched = matchLength[state];
+            if (matched > 0) {
+                return new String(text, i + 1 - matched, matched);
+            }
+        }
+        return null;
+    }
+
+    int wordCount() {
+        return wordCount;
+    }
+
+    int nodeCount() {
+        return keys.length;
+    }
+
+    private int transition(int node, char c) {
+        int index = Arrays.binarySearch(keys[node], c);
+        return index < 0 ? -1 : targets[node][index];
+    }
+}
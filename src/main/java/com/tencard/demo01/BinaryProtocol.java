@@ -0,0 +1,150 @@
+package com.tencard.demo01;
+
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /match 紧凑二进制协议（可选）。连接时通过 ?protocol=binary 或子协议 xcards.bin 协商，
+ * 未协商的老客户端仍走 JSON。只有对局中最频繁的几种消息使用定长二进制帧：
+ * <pre>
+ * play_card        (客户端 -> 服务端) [0x01][card]
+ * ack              (客户端 -> 服务端) [0x02][seq:int32 大端]
+ * round_complete   (服务端 -> 客户端) [0x10][seq][round][myCard][oppCard]
+ * please_take_card (服务端 -> 客户端) [0x11][seq]
+ * game_result      (服务端 -> 客户端) [0x12][seq][result]  result: 1 红方胜 / 2 蓝方胜 / 3 平局
+ * card_rejected    (服务端 -> 客户端) [0x13][seq][reason][card]  reason: 1 无效的牌 / 2 已出过 / 3 本回合已出牌
+ * </pre>
+ * 服务端帧的 seq 是 int32 大端，与 JSON 帧的 "seq" 同属一个座位序列，ack 时原样回传。
+ * 其余消息（进房、再战等）依旧是 JSON 文本帧。
+ */
+public final class BinaryProtocol {
+
+    public static final String SUBPROTOCOL = "xcards.bin";
+
+    public static final byte OP_PLAY_CARD = 0x01;
+    public static final byte OP_ACK = 0x02;
+    public static final byte OP_ROUND_COMPLETE = 0x10;
+    public static final byte OP_PLEASE_TAKE_CARD = 0x11;
+    public static final byte OP_GAME_RESULT = 0x12;
+    public static final byte OP_CARD_REJECTED = 0x13;
+
+    public static final byte RESULT_RED_WIN = 1;
+    public static final byte RESULT_BLUE_WIN = 2;
+    public static final byte RESULT_DRAW = 3;
+
+    public static final byte REJECT_INVALID_CARD = 1;
+    public static final byte REJECT_CARD_USED = 2;
+    public static final byte REJECT_ALREADY_PLAYED = 3;
+
+    private static final String PROTOCOL_KEY = "xcards.protocol";
+    private static final String BINARY = "binary";
+
+    private static final byte[] PLEASE_TAKE_CARD = {OP_PLEASE_TAKE_CARD};
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * 连接建立时根据查询参数或子协议确定该会话使用的协议。
+     */
+    public static void negotiate(Session session) {
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        List<String> protocol = params.get("protocol");
+        boolean binary = (protocol != null && protocol.contains(BINARY))
+                || SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
+        if (binary) {
+            session.getUserProperties().put(PROTOCOL_KEY, BINARY);
+        }
+    }
+
+    public static boolean isBinary(Session session) {
+        // 已关闭的会话不允许再访问属性
+        return session != null && session.isOpen() && BINARY.equals(session.getUserProperties().get(PROTOCOL_KEY));
+    }
+
+    /**
+     * 在操作码后插入 4 字节 seq，返回新帧，原帧不变
+     */
+    public static ByteBuffer withSeq(ByteBuffer frame, long seq) {
+        ByteBuffer source = frame.duplicate();
+        ByteBuffer stamped = ByteBuffer.allocate(source.remaining() + 4);
+        stamped.put(source.get()).putInt((int) seq).put(source);
+        stamped.flip();
+        return stamped.asReadOnlyBuffer();
+    }
+
+    public static ByteBuffer roundComplete(RoundCompleteMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put(OP_ROUND_COMPLETE)
+                .put((byte) message.getRound())
+                .put((byte) message.getMyCard())
+                .put((byte) message.getOppCard());
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer pleaseTakeCard() {
+        return ByteBuffer.wrap(PLEASE_TAKE_CARD).asReadOnlyBuffer();
+    }
+
+    public static ByteBuffer gameResult(String result) {
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        buffer.put(OP_GAME_RESULT).put(resultCode(result));
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer cardRejected(CardRejectedMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        buffer.put(OP_CARD_REJECTED)
+                .put(rejectCode(message.getReason()))
+                .put((byte) message.getCard());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 解码客户端发来的二进制帧，出牌人由调用方按会话确定。
+     */
+    public static InboundCommand decode(ByteBuffer frame) {
+        if (!frame.hasRemaining()) {
+            return new InboundCommand.Invalid(null, "empty binary frame");
+        }
+        byte op = frame.get();
+        if (op == OP_PLAY_CARD) {
+            if (!frame.hasRemaining()) {
+                return new InboundCommand.Invalid("play_card", "missing card");
+            }
+            return new InboundCommand.PlayCard((int) frame.get());
+        }
+        if (op == OP_ACK) {
+            if (frame.remaining() < 4) {
+                return new InboundCommand.Invalid("ack", "missing seq");
+            }
+            return new InboundCommand.Ack(frame.getInt() & 0xFFFFFFFFL);
+        }
+        return new InboundCommand.Invalid(String.valueOf(op), "unknown binary op");
+    }
+
+    private static byte rejectCode(String reason) {
+        if (CardRejectedMessage.REASON_CARD_USED.equals(reason)) {
+            return REJECT_CARD_USED;
+        }
+        if (CardRejectedMessage.REASON_ALREADY_PLAYED.equals(reason)) {
+            return REJECT_ALREADY_PLAYED;
+        }
+        return REJECT_INVALID_CARD;
+    }
+
+    private static byte resultCode(String result) {
+        if (GameState.RESULT_RED_WIN.equals(result)) {
+            return RESULT_RED_WIN;
+        }
+        if (GameState.RESULT_BLUE_WIN.equals(result)) {
+            return RESULT_BLUE_WIN;
+        }
+        return RESULT_DRAW;
+    }
+}
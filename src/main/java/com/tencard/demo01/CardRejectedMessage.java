@@ -0,0 +1,26 @@
+package com.tencard.demo01;
+
+import lombok.Data;
+
+/**
+ * 出牌被拒绝消息 card_rejected，只发给出牌的一方。
+ */
+@Data
+public class CardRejectedMessage {
+
+    // 拒绝原因
+    public static final String REASON_INVALID_CARD = "invalid_card";
+    public static final String REASON_CARD_USED = "card_used";
+    public static final String REASON_ALREADY_PLAYED = "already_played";
+
+    private String type = GameState.MSG_TYPE_CARD_REJECTED;
+    private int card;        // 被拒绝的牌
+    private String reason;   // 拒绝原因
+    private String message;  // 提示文案
+
+    public CardRejectedMessage(int card, String reason, String message) {
+        this.card = card;
+        this.reason = reason;
+        this.message = message;
+    }
+}
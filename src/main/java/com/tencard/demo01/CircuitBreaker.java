@@ -0,0 +1,83 @@
+package com.tencard.demo01;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 远程调用熔断器：连续失败 failureThreshold 次后打开，openMillis 内的调用直接短路；
+ * 到期后进入半开，只放一个探测请求过去，成功则关闭，失败则重新打开。
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 打开时刻，0 表示关闭
+    private volatile long openedAt;
+    // 半开状态下是否已有探测请求在途
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否允许本次调用；允许后必须调用 onSuccess 或 onFailure
+     */
+    boolean tryAcquire() {
+        long since = openedAt;
+        if (since == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() - since >= openMillis && probing.compareAndSet(false, true)) {
+            return true;
+        }
+        shortCircuited.incrementAndGet();
+        return false;
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        openedAt = 0;
+        probing.set(false);
+    }
+
+    void onFailure() {
+        // 半开探测失败，或关闭状态下连续失败达到阈值
+        if (probing.get() || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            if (openedAt == 0) {
+                opened.incrementAndGet();
+            }
+            openedAt = System.currentTimeMillis();
+            probing.set(false);
+        }
+    }
+
+    State state() {
+        long since = openedAt;
+        if (since == 0) {
+            return State.CLOSED;
+        }
+        return System.currentTimeMillis() - since >= openMillis ? State.HALF_OPEN : State.OPEN;
+    }
+
+    int consecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    long openedCount() {
+        return opened.get();
+    }
+
+    long shortCircuitedCount() {
+        return shortCircuited.get();
+    }
+}
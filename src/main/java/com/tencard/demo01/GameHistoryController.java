@@ -0,0 +1,72 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 玩家最近对局查询，数据来自内存中的 GameHistoryStore，不查数据库。
+ * 路径在 /api/user 下，由会话令牌拦截器校验 openId；返回内容不含对手的 openId
+ */
+@RestController
+@RequestMapping("/api/user")
+public class GameHistoryController {
+
+    @Autowired
+    private GameHistoryStore gameHistoryStore;
+
+    /**
+     * 最近的对局，最新的在前
+     * @param limit 最多返回几局，默认全部
+     */
+    @GetMapping("/{openId}/history")
+    public ResponseEntity<?> getHistory(@PathVariable String openId,
+                                        @RequestParam(defaultValue = "0") int limit) {
+        if (limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<GameRecord> records = gameHistoryStore.recent(openId);
+        if (limit > 0 && records.size() > limit) {
+            records = records.subList(0, limit);
+        }
+        List<JSONObject> games = new ArrayList<>(records.size());
+        for (GameRecord record : records) {
+            games.add(toJson(record, openId));
+        }
+        JSONObject json = new JSONObject();
+        json.put("openId", openId);
+        json.put("games", games);
+        return ResponseEntity.ok(json);
+    }
+
+    private static JSONObject toJson(GameRecord record, String openId) {
+        JSONObject game = new JSONObject();
+        game.put("gameId", record.getGameId());
+        game.put("roomId", record.getRoomId());
+        // 以查询者视角给出胜负
+        String outcome = record.getResult() == GameRecord.RESULT_DRAW ? "draw"
+                : openId.equals(record.getWinner()) ? "win" : "loss";
+        game.put("outcome", outcome);
+        game.put("redCards", toInts(record.getRedCards()));
+        game.put("blueCards", toInts(record.getBlueCards()));
+        game.put("startTime", record.getStartTime());
+        game.put("endTime", record.getEndTime());
+        return game;
+    }
+
+    private static int[] toInts(byte[] cards) {
+        int[] result = new int[cards.length];
+        for (int i = 0; i < cards.length; i++) {
+            result[i] = cards[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 玩家对局历史：每个玩家一个定长环形缓冲区，只保留最近 capacity 局，
+ * 长时间没有新对局也没有被查询的玩家整体淘汰。
+ * 配置了 xcards.history.spill-file 时，每局记录还会追加写入该文件，内存中淘汰的历史仍可离线查阅。
+ * 待写入的记录攒够 spill-batch 条由写入线程直接刷盘，不等定时任务，积压不会无限增长；
+ * 写文件失败时丢弃积压的记录并计数，下次重新打开文件。
+ */
+@Component
+public class GameHistoryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GameHistoryStore.class);
+
+    private final int capacity;
+    private final long idleMillis;
+    private final String spillFile;
+    private final int spillBatch;
+
+    // openId -> 最近对局
+    private final Map<String, PlayerHistory> histories = new ConcurrentHashMap<>();
+    // 等待追加写入溢出文件的记录
+    private final Queue<GameRecord> spillQueue = new ConcurrentLinkedQueue<>();
+    // spillQueue 的长度，ConcurrentLinkedQueue.size() 要遍历整个队列
+    private final AtomicInteger pendingSpill = new AtomicInteger();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong evictedPlayers = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong spillDropped = new AtomicLong();
+
+    private DataOutputStream spillOut;
+
+    public GameHistoryStore(@Value("${xcards.history.capacity:20}") int capacity,
+                            @Value("${xcards.history.idle-minutes:30}") long idleMinutes,
+                            @Value("${xcards.history.spill-file:}") String spillFile,
+                            @Value("${xcards.history.spill-batch:256}") int spillBatch) {
+        this.capacity = Math.max(1, capacity);
+        this.idleMillis = TimeUnit.MINUTES.toMillis(idleMinutes);
+        this.spillFile = spillFile;
+        this.spillBatch = Math.max(1, spillBatch);
+    }
+
+    /**
+     * 记录一局，同时写入胜负双方的历史
+     */
+    public void add(GameRecord record) {
+        append(record.getWinner(), record);
+        append(record.getLoser(), record);
+        recorded.incrementAndGet();
+        if (StringUtils.hasLength(spillFile)) {
+            spillQueue.add(record);
+            if (pendingSpill.incrementAndGet() >= spillBatch) {
+                flushSpill();
+            }
+        }
+    }
+
+    /**
+     * 玩家最近的对局，最新的在前
+     */
+    public List<GameRecord> recent(String openId) {
+        PlayerHistory history = histories.get(openId);
+        return history == null ? new ArrayList<>() : history.newestFirst();
+    }
+
+    private void append(String openId, GameRecord record) {
+        if (openId == null) {
+            return;
+        }
+        // 在 compute 内写入，与淘汰互斥，不会写进刚被移除的缓冲区
+        histories.compute(openId, (k, history) -> {
+            if (history == null) {
+                history = new PlayerHistory(capacity);
+            }
+            history.add(record);
+            return history;
+        });
+    }
+
+    /**
+     * 淘汰长时间不活跃的玩家历史，并把待溢出的记录写入文件
+     */
+    @Scheduled(fixedDelayString = "${xcards.history.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        for (String openId : histories.keySet()) {
+            if (histories.computeIfPresent(openId, (k, history) -> history.lastAccess < deadline ? null : history) == null) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictedPlayers.addAndGet(evicted);
+            log.info("Evicted {} idle player histories", evicted);
+        }
+        flushSpill();
+    }
+
+    synchronized void flushSpill() {
+        if (spillQueue.isEmpty()) {
+            return;
+        }
+        try {
+            if (spillOut == null) {
+                spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)));
+            }
+            GameRecord record;
+            while ((record = spillQueue.poll()) != null) {
+                pendingSpill.decrementAndGet();
+                record.writeTo(spillOut);
+                spilled.incrementAndGet();
+            }
+            spillOut.flush();
+        } catch (IOException e) {
+            // 文件写不进去时不再积压，丢掉待写的记录，下次重新打开文件
+            int dropped = 0;
+            while (spillQueue.poll() != null) {
+                pendingSpill.decrementAndGet();
+                dropped++;
+            }
+            spillDropped.addAndGet(dropped);
+            closeSpillOut();
+            log.error("Failed to spill game history to {}, dropped {} pending records", spillFile, dropped, e);
+        }
+    }
+
+    private void closeSpillOut() {
+        if (spillOut != null) {
+            try {
+                spillOut.close();
+            } catch (IOException e) {
+                log.error("Error closing history spill file {}", spillFile, e);
+            }
+            spillOut = null;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        flushSpill();
+        closeSpillOut();
+    }
+
+    /**
+     * 历史存储指标
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("capacity", capacity);
+        metrics.put("players", histories.size());
+        metrics.put("recorded", recorded.get());
+        metrics.put("evictedPlayers", evictedPlayers.get());
+        metrics.put("spilled", spilled.get());
+        metrics.put("spillDropped", spillDropped.get());
+        metrics.put("pendingSpill", pendingSpill.get());
+        return metrics;
+    }
+
+    /**
+     * 单个玩家的环形缓冲区，写满后覆盖最旧的记录
+     */
+    private static final class PlayerHistory {
+        private final GameRecord[] ring;
+        private int next;
+        private int size;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        PlayerHistory(int capacity) {
+            this.ring = new GameRecord[capacity];
+        }
+
+        synchronized void add(GameRecord record) {
+            ring[next] = record;
+            next = (next + 1) % ring.length;
+            if (size < ring.length) {
+                size++;
+            }
+            lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized List<GameRecord> newestFirst() {
+            List<GameRecord> result = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                result.add(ring[(next - i + ring.length) % ring.length]);
+            }
+            lastAccess = System.currentTimeMillis();
+            return result;
+        }
+    }
+}
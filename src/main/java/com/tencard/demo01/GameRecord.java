@@ -0,0 +1,90 @@
+package com.tencard.demo01;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 一局的紧凑记录：双方 10 回合出牌各占 10 字节（0 表示该回合未出牌），结果 1 字节，时间为毫秒时间戳。
+ * 创建后不可修改，胜负双方的历史共享同一个实例。
+ */
+public final class GameRecord {
+
+    public static final byte RESULT_RED_WIN = 1;
+    public static final byte RESULT_BLUE_WIN = 2;
+    public static final byte RESULT_DRAW = 3;
+
+    private final String gameId;
+    private final long roomId;
+    private final byte[] redCards;
+    private final byte[] blueCards;
+    private final byte result;
+    private final String winner;
+    private final String loser;
+    private final long startTime;
+    private final long endTime;
+
+    public GameRecord(String gameId, long roomId, byte[] redCards, byte[] blueCards, byte result,
+                      String winner, String loser, long startTime, long endTime) {
+        this.gameId = gameId;
+        this.roomId = roomId;
+        this.redCards = redCards;
+        this.blueCards = blueCards;
+        this.result = result;
+        this.winner = winner;
+        this.loser = loser;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public long getRoomId() {
+        return roomId;
+    }
+
+    public byte[] getRedCards() {
+        return redCards.clone();
+    }
+
+    public byte[] getBlueCards() {
+        return blueCards.clone();
+    }
+
+    public byte getResult() {
+        return result;
+    }
+
+    public String getWinner() {
+        return winner;
+    }
+
+    public String getLoser() {
+        return loser;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * 追加写入溢出文件的定长头 + 变长 openId：
+     * roomId, startTime, endTime (long) | result (byte) | red[10] | blue[10] | gameId, winner, loser (UTF)
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(roomId);
+        out.writeLong(startTime);
+        out.writeLong(endTime);
+        out.writeByte(result);
+        out.write(redCards);
+        out.write(blueCards);
+        out.writeUTF(gameId == null ? "" : gameId);
+        out.writeUTF(winner == null ? "" : winner);
+        out.writeUTF(loser == null ? "" : loser);
+    }
+}
@@ -0,0 +1,17 @@
+package com.tencard.demo01;
+
+import lombok.Data;
+
+/**
+ * 对局结果消息 game_result
+ */
+@Data
+public class GameResultMessage {
+
+    private String type = GameState.MSG_TYPE_GAME_RESULT;
+    private String result; // red_win | blue_win | draw
+
+    public GameResultMessage(String result) {
+        this.result = result;
+    }
+}
@@ -1,8 +1,14 @@
 package com.tencard.demo01;
 
-import org.springframework.beans.BeanUtils;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.UUID;
 
 @Data
 public class GameState implements Cloneable {
@@ -19,6 +25,7 @@ public class GameState implements Cloneable {
     public static final String MSG_TYPE_ROUND_COMPLETE = "round_complete";
     public static final String MSG_TYPE_PLEASE_TAKE_CARD = "please_take_card";
     public static final String MSG_TYPE_GAME_RESULT = "game_result";
+    public static final String MSG_TYPE_CARD_REJECTED = "card_rejected";
     
     // 游戏结果常量
     public static final String RESULT_RED_WIN = "red_win";
@@ -29,16 +36,17 @@ public class GameState implements Cloneable {
     private int currentRound = 0;  // 当前回合数（0-9）
     private LocalDateTime startTime = LocalDateTime.now();
 
-    // 红方的牌
-    private Integer redCard1, redCard2, redCard3, redCard4, redCard5;
-    private Integer redCard6, redCard7, redCard8, redCard9, redCard10;
-
-    // 蓝方的牌
-    private Integer blueCard1, blueCard2, blueCard3, blueCard4, blueCard5;
-    private Integer blueCard6, blueCard7, blueCard8, blueCard9, blueCard10;
+    // 双方每回合出的牌，下标为回合（0-9），0 表示该回合还没出牌
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] redCards = new byte[TEN];
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] blueCards = new byte[TEN];
 
     private boolean gameCompleted = false;
 
+    private String gameId = UUID.randomUUID().toString();  // 对局ID，每局唯一，用于幂等结算
     private Long roomId;  // 房间ID
     private String winner;  // 胜利者deviceId
     private String loser;   // 失败者deviceId
@@ -46,83 +54,47 @@ public class GameState implements Cloneable {
     private Integer bet = 200; // 游戏赌注，默认为200
 
     // 记录当前回合的出牌
-    public void addCard(String role, Integer card) {
+    public void addCard(String role, int card) {
         if ("redSide".equals(role)) {
-            switch (currentRound) {
-                case 0: redCard1 = card; break;
-                case 1: redCard2 = card; break;
-                case 2: redCard3 = card; break;
-                case 3: redCard4 = card; break;
-                case 4: redCard5 = card; break;
-                case 5: redCard6 = card; break;
-                case 6: redCard7 = card; break;
-                case 7: redCard8 = card; break;
-                case 8: redCard9 = card; break;
-                case 9: redCard10 = card; break;
-            }
+            redCards[currentRound] = (byte) card;
         } else {
-            switch (currentRound) {
-                case 0: blueCard1 = card; break;
-                case 1: blueCard2 = card; break;
-                case 2: blueCard3 = card; break;
-                case 3: blueCard4 = card; break;
-                case 4: blueCard5 = card; break;
-                case 5: blueCard6 = card; break;
-                case 6: blueCard7 = card; break;
-                case 7: blueCard8 = card; break;
-                case 8: blueCard9 = card; break;
-                case 9: blueCard10 = card; break;
-            }
+            blueCards[currentRound] = (byte) card;
         }
     }
 
-    // 获取当前回合的牌
-    public Integer getCurrentRedCard() {
-        switch (currentRound) {
-            case 0: return redCard1;
-            case 1: return redCard2;
-            case 2: return redCard3;
-            case 3: return redCard4;
-            case 4: return redCard5;
-            case 5: return redCard6;
-            case 6: return redCard7;
-            case 7: return redCard8;
-            case 8: return redCard9;
-            case 9: return redCard10;
-            default: return null;
-        }
+    // 获取当前回合的牌，未出牌返回 0
+    public int getCurrentRedCard() {
+        return redCards[currentRound];
     }
 
-    public Integer getCurrentBlueCard() {
-        switch (currentRound) {
-            case 0: return blueCard1;
-            case 1: return blueCard2;
-            case 2: return blueCard3;
-            case 3: return blueCard4;
-            case 4: return blueCard5;
-            case 5: return blueCard6;
-            case 6: return blueCard7;
-            case 7: return blueCard8;
-            case 8: return blueCard9;
-            case 9: return blueCard10;
-            default: return null;
+    public int getCurrentBlueCard() {
+        return blueCards[currentRound];
+    }
+
+    // 某一方从第一回合到当前回合出的牌，0 表示当前回合还没出牌
+    public int[] playedCards(String role) {
+        byte[] cards = "redSide".equals(role) ? redCards : blueCards;
+        int[] played = new int[currentRound + 1];
+        for (int i = 0; i <= currentRound; i++) {
+            played[i] = cards[i];
         }
+        return played;
     }
 
     // 判断当前回合是否结束（双方都出牌了）
     public boolean isCurrentRoundComplete() {
-        return getCurrentRedCard() != null && getCurrentBlueCard() != null;
+        return redCards[currentRound] != 0 && blueCards[currentRound] != 0;
     }
 
     // 判断当前回合结果
     public String determineRoundResult() {
         if (!isCurrentRoundComplete()) return null;
 
-        Integer redCard = getCurrentRedCard();
-        Integer blueCard = getCurrentBlueCard();
+        int redCard = redCards[currentRound];
+        int blueCard = blueCards[currentRound];
 
-        // 如果有人出1，直接进入下一轮
-        if (redCard == 1 || blueCard == 1) {
+        // 如果有人出1，直接进入下一轮；最后一轮没有下一轮，照常比较点数，保证第 10 回合一定分出结果
+        if ((redCard == 1 || blueCard == 1) && currentRound < TEN - 1) {
             return RESULT_CONTINUE;
         }
 
@@ -168,14 +140,13 @@ public class GameState implements Cloneable {
         Long savedRoomId = this.roomId;
         currentRound = 0;
         gameCompleted = false;
-        redCard1 = redCard2 = redCard3 = redCard4 = redCard5 = 
-        redCard6 = redCard7 = redCard8 = redCard9 = redCard10 = null;
-        blueCard1 = blueCard2 = blueCard3 = blueCard4 = blueCard5 = 
-        blueCard6 = blueCard7 = blueCard8 = blueCard9 = blueCard10 = null;
+        Arrays.fill(redCards, (byte) 0);
+        Arrays.fill(blueCards, (byte) 0);
         winner = null;
         loser = null;
         gameEndTime = null;
         startTime = LocalDateTime.now();
+        gameId = UUID.randomUUID().toString();
         this.roomId = savedRoomId;  // 恢复roomId
     }
 
@@ -196,6 +167,8 @@ public class GameState implements Cloneable {
     public GameState clone() {
         try {
             GameState cloned = (GameState) super.clone();
+            cloned.redCards = redCards.clone();
+            cloned.blueCards = blueCards.clone();
             // 设置新的开始时间
             cloned.startTime = LocalDateTime.now();
             return cloned;
@@ -204,11 +177,17 @@ public class GameState implements Cloneable {
         }
     }
 
-    // 创建一个新的GameState实例，用于记录
-    public GameState createRecord() {
-        GameState gameRecord = new GameState();
-        BeanUtils.copyProperties(this, gameRecord);
-        return gameRecord;
+    // 生成紧凑的对局记录（直接复制出牌数组，不走反射），在 recordGameResult 之后调用
+    public GameRecord toRecord(String result) {
+        byte resultCode = RESULT_RED_WIN.equals(result) ? GameRecord.RESULT_RED_WIN
+                : RESULT_BLUE_WIN.equals(result) ? GameRecord.RESULT_BLUE_WIN : GameRecord.RESULT_DRAW;
+        long end = gameEndTime == null ? System.currentTimeMillis() : toMillis(gameEndTime);
+        return new GameRecord(gameId, roomId == null ? 0L : roomId, redCards.clone(), blueCards.clone(), resultCode,
+                winner, loser, toMillis(startTime), end);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     // Explicitly add getters to fix compilation issues
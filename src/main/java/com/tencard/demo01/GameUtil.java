@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.websocket.Session;
+import java.nio.ByteBuffer;
 
 @Slf4j
 public class GameUtil {
@@ -45,18 +46,60 @@ public class GameUtil {
         blueSide,redSide
     }
 
-    // 发送消息给玩家
+    // 共享的序列化器，Gson 实例线程安全，无需每次发送都新建
+    private static final Gson GSON = new Gson();
+
+    // 出站消息管道，由 Spring 初始化后注入；未注入时退回同步发送
+    private static OutboundPipeline outboundPipeline;
+
+    static void setOutboundPipeline(OutboundPipeline pipeline) {
+        outboundPipeline = pipeline;
+    }
+
+    public static String toJson(Object message) {
+        return GSON.toJson(message);
+    }
+
+    // 发送消息给玩家（入队后异步发送，不阻塞调用线程）
     public static void sendMessage(Session session, Object message) {
-        Gson gson = new Gson();
+        sendText(session, GSON.toJson(message));
+    }
 
-        String jsonMessage = gson.toJson(message);
+    // 发送已编码好的文本帧，常量消息直接复用 OutboundMessages 中的帧
+    public static void sendText(Session session, String jsonMessage) {
         try {
             if (session != null && session.isOpen()) {
                 log.info("************** GameUtil 发送消息 sessionid为 ：{} || 消息为：{} ************** ", session.getId(),jsonMessage);
-                session.getBasicRemote().sendText(jsonMessage);
+                if (outboundPipeline != null) {
+                    outboundPipeline.send(session, jsonMessage);
+                } else {
+                    session.getBasicRemote().sendText(jsonMessage);
+                }
             }
         } catch (Exception e) {
             log.error("/GameUtil sendMessage error!:", e);
         }
     }
+
+    // 发送二进制帧（仅协商了二进制协议的会话）
+    public static void sendBinary(Session session, ByteBuffer frame) {
+        try {
+            if (session != null && session.isOpen()) {
+                if (outboundPipeline != null) {
+                    outboundPipeline.send(session, frame);
+                } else {
+                    session.getBasicRemote().sendBinary(frame);
+                }
+            }
+        } catch (Exception e) {
+            log.error("/GameUtil sendBinary error!:", e);
+        }
+    }
+
+    // 会话关闭后释放其发送队列
+    public static void releaseSession(Session session) {
+        if (outboundPipeline != null) {
+            outboundPipeline.release(session);
+        }
+    }
 }
@@ -0,0 +1,253 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮：一个工作线程按 tick 推进，所有定时任务挂在对应的槽位链表上。
+ * 新建和取消都是 O(1)，成千上万个房间的出牌计时、空闲检查、心跳共用一个线程，
+ * 不再为每个房间开线程或 ScheduledFuture。精度为一个 tick。
+ * 到期任务在时间轮线程上执行，必须很快返回（通常只是投递到房间信箱）。
+ */
+public class HashedWheelTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    // 每个 tick 最多从待加入队列搬运的任务数，防止大量新任务饿死到期处理
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+
+    /**
+     * @param name 工作线程名
+     * @param tick tick 间隔
+     * @param unit tick 间隔单位
+     * @param ticksPerWheel 槽位数，向上取整为 2 的幂
+     */
+    public HashedWheelTimer(String name, long tick, TimeUnit unit, int ticksPerWheel) {
+        this.tickNanos = Math.max(unit.toNanos(tick), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 在 delay 之后执行 task，返回可取消的句柄
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("timer stopped");
+        }
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+        WheelTimeout timeout = new WheelTimeout(task, deadline);
+        pending.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * 尚未到期也未取消的任务数
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    public long expired() {
+        return expiredCount.get();
+    }
+
+    public long cancelled() {
+        return cancelledCount.get();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+                continue;
+            }
+            transferPending(tick);
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * 把新任务挂到对应槽位，圈数 = 还要转几整圈才到期
+     */
+    private void transferPending(long currentTick) {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            WheelTimeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == WheelTimeout.ST_CANCELLED) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            // 已经过期的任务放到当前槽位，本 tick 就执行
+            long ticks = Math.max(calculated, currentTick);
+            timeout.remainingRounds = (calculated - currentTick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public interface Timeout {
+        /**
+         * 取消任务，已执行或已取消返回 false
+         */
+        boolean cancel();
+
+        boolean isExpired();
+
+        boolean isCancelled();
+    }
+
+    private final class WheelTimeout implements Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        // 以下字段只由时间轮线程访问
+        private long remainingRounds;
+        private WheelTimeout next;
+        private WheelTimeout prev;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            // 不跨线程摘链，等时间轮扫到这个槽位时再移除
+            pending.decrementAndGet();
+            cancelledCount.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+            expiredCount.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Timer task failed", t);
+            }
+        }
+    }
+
+    /**
+     * 槽位：双向链表，只由时间轮线程访问
+     */
+    private static final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
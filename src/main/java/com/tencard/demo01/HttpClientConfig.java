@@ -0,0 +1,63 @@
+package com.tencard.demo01;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微信接口共用的出站 HTTP 客户端：一个长连接池 + 连接/读取/取连接超时，
+ * 登录、access_token、内容安全检查都走这个 RestTemplate，经过按接口的舱壁限流。
+ */
+@Component
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public PoolingHttpClientConnectionManager httpConnectionManager(
+            @Value("${xcards.http.max-total:200}") int maxTotal,
+            @Value("${xcards.http.max-per-route:50}") int maxPerRoute) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // 空闲超过 2 秒的连接复用前先检查，避免拿到对端已关闭的连接
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+                                          @Value("${xcards.http.connect-timeout-ms:2000}") int connectTimeoutMs,
+                                          @Value("${xcards.http.read-timeout-ms:3000}") int readTimeoutMs,
+                                          @Value("${xcards.http.pool-wait-ms:1000}") int poolWaitMs,
+                                          @Value("${xcards.http.idle-evict-seconds:30}") long idleEvictSeconds) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolWaitMs)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 共享的 RestTemplate，线程安全，各处直接注入使用，不要再自己 new
+     */
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient httpClient, HttpEndpointBulkhead bulkhead) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.setInterceptors(Collections.singletonList(bulkhead));
+        return restTemplate;
+    }
+}
@@ -0,0 +1,183 @@
+package com.tencard.demo01;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 出站 HTTP 舱壁：按接口（host + path，不含带密钥的查询串）限制并发调用数，
+ * 某个微信接口变慢时只会占满它自己的名额，不会拖住登录、审核等其他调用。
+ * 同时记录每个接口的耗时直方图和错误数。作为共享 RestTemplate 的拦截器使用。
+ */
+@Component
+public class HttpEndpointBulkhead implements ClientHttpRequestInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpEndpointBulkhead.class);
+
+    private final int maxConcurrent;
+    private final long waitMillis;
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public HttpEndpointBulkhead(@Value("${xcards.http.bulkhead.max-concurrent:32}") int maxConcurrent,
+                                @Value("${xcards.http.bulkhead.wait-ms:200}") long waitMillis,
+                                PoolingHttpClientConnectionManager connectionManager) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.waitMillis = waitMillis;
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String key = request.getURI().getHost() + request.getURI().getPath();
+        Endpoint endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(maxConcurrent));
+        if (!acquire(endpoint.permits)) {
+            endpoint.rejected.incrementAndGet();
+            log.warn("HTTP bulkhead full for {}, maxConcurrent={}", key, maxConcurrent);
+            throw new ResourceAccessException("Too many concurrent calls to " + key);
+        }
+        long start = System.currentTimeMillis();
+        ClientHttpResponse response = null;
+        try {
+            response = execution.execute(request, body);
+            if (response.getRawStatusCode() >= 400) {
+                endpoint.errors.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            endpoint.errors.incrementAndGet();
+            if (response != null) {
+                response.close();
+            }
+            endpoint.finish(start);
+            throw e;
+        }
+        // RestTemplate 读完响应体后才关闭响应，名额和耗时都到那时才结算
+        return new GuardedResponse(response, endpoint, start);
+    }
+
+    private boolean acquire(Semaphore permits) {
+        try {
+            return permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 各接口的在途数、拒绝数、错误数和耗时直方图，以及连接池状态
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> perEndpoint = new TreeMap<>();
+        endpoints.forEach((key, endpoint) -> {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("inFlight", maxConcurrent - endpoint.permits.availablePermits());
+            metrics.put("rejected", endpoint.rejected.get());
+            metrics.put("errors", endpoint.errors.get());
+            metrics.put("latency", endpoint.latency.snapshot());
+            perEndpoint.put(key, metrics);
+        });
+        PoolStats stats = connectionManager.getTotalStats();
+        Map<String, Object> pool = new HashMap<>();
+        pool.put("leased", stats.getLeased());
+        pool.put("available", stats.getAvailable());
+        pool.put("pending", stats.getPending());
+        pool.put("max", stats.getMax());
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("maxConcurrentPerEndpoint", maxConcurrent);
+        metrics.put("pool", pool);
+        metrics.put("endpoints", perEndpoint);
+        return metrics;
+    }
+
+    private static final class Endpoint {
+        private final Semaphore permits;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        Endpoint(int maxConcurrent) {
+            this.permits = new Semaphore(maxConcurrent);
+        }
+
+        void finish(long start) {
+            latency.record(System.currentTimeMillis() - start);
+            permits.release();
+        }
+    }
+
+    /**
+     * 关闭时归还名额并记录耗时，只结算一次
+     */
+    private static final class GuardedResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final Endpoint endpoint;
+        private final long start;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        GuardedResponse(ClientHttpResponse delegate, Endpoint endpoint, long start) {
+            this.delegate = delegate;
+            this.endpoint = endpoint;
+            this.start = start;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return delegate.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (finished.compareAndSet(false, true)) {
+                    endpoint.finish(start);
+                }
+            }
+        }
+    }
+}
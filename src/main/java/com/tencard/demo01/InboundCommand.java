@@ -0,0 +1,115 @@
+package com.tencard.demo01;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * /match 入站指令。每个文本帧只解析一次，由 InboundCommandDecoder 转成下列固定的几种指令之一，
+ * 构造器私有，外部无法再扩展出新的子类。
+ */
+@Getter
+@ToString
+public abstract class InboundCommand {
+
+    public enum Type {
+        JOIN_ROOM, QUICK_MATCH, QUICK_MATCH_CANCEL, PLAY_CARD, ACK, LEAVE_ROOM, REMATCH_REQUEST, REMATCH_ACCEPT,
+        REMATCH_REJECT, INVALID
+    }
+
+    // 不带参数的指令，全局复用
+    public static final InboundCommand LEAVE_ROOM = new Signal(Type.LEAVE_ROOM);
+    public static final InboundCommand REMATCH_REQUEST = new Signal(Type.REMATCH_REQUEST);
+    public static final InboundCommand REMATCH_ACCEPT = new Signal(Type.REMATCH_ACCEPT);
+    public static final InboundCommand REMATCH_REJECT = new Signal(Type.REMATCH_REJECT);
+    public static final InboundCommand QUICK_MATCH_CANCEL = new Signal(Type.QUICK_MATCH_CANCEL);
+
+    private final Type type;
+
+    private InboundCommand(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * 加入房间：携带玩家信息（openId、roomCode、nickName 等）。
+     * 已在该房间的玩家重连时带上 lastSeq（最后收到的消息序号），服务端从这里开始补发
+     */
+    @Getter
+    @ToString(callSuper = true)
+    public static final class JoinRoom extends InboundCommand {
+        private final PlayerVO player;
+        private final Long lastSeq;
+
+        public JoinRoom(PlayerVO player, Long lastSeq) {
+            super(Type.JOIN_ROOM);
+            this.player = player;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+    /**
+     * 快速匹配：携带玩家信息（openId、nickName 等），房间号由服务端分配
+     */
+    @Getter
+    @ToString(callSuper = true)
+    public static final class QuickMatch extends InboundCommand {
+        private final PlayerVO player;
+
+        public QuickMatch(PlayerVO player) {
+            super(Type.QUICK_MATCH);
+            this.player = player;
+        }
+    }
+
+    /**
+     * 出牌。不携带 openId，出牌人一律是会话绑定的玩家
+     */
+    @Getter
+    @ToString(callSuper = true)
+    public static final class PlayCard extends InboundCommand {
+        private final Integer card;
+
+        public PlayCard(Integer card) {
+            super(Type.PLAY_CARD);
+            this.card = card;
+        }
+    }
+
+    /**
+     * 确认收到了 seq 及之前的消息，服务端可以释放这部分重放缓冲
+     */
+    @Getter
+    @ToString(callSuper = true)
+    public static final class Ack extends InboundCommand {
+        private final long seq;
+
+        public Ack(long seq) {
+            super(Type.ACK);
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * 离开房间 / 再战请求 / 接受 / 拒绝 / 取消匹配，这几种指令没有参数
+     */
+    public static final class Signal extends InboundCommand {
+        private Signal(Type type) {
+            super(type);
+        }
+    }
+
+    /**
+     * 无法识别的帧：JSON 格式错误或未知的 type
+     */
+    @Getter
+    @ToString(callSuper = true)
+    public static final class Invalid extends InboundCommand {
+        private final String rawType;
+        private final String reason;
+
+        public Invalid(String rawType, String reason) {
+            super(Type.INVALID);
+            this.rawType = rawType;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import javax.websocket.Decoder;
+import javax.websocket.EndpointConfig;
+
+/**
+ * /match 文本帧解码器：只做一次 JSON 解析，按 type 直接构造对应的 InboundCommand。
+ * 格式错误的帧解码为 Invalid，而不是抛 DecodeException，避免走到 @OnError 把玩家踢出房间。
+ */
+public class InboundCommandDecoder implements Decoder.Text<InboundCommand> {
+
+    @Override
+    public InboundCommand decode(String message) {
+        JSONObject json;
+        try {
+            json = JSON.parseObject(message);
+        } catch (Exception e) {
+            return new InboundCommand.Invalid(null, "malformed json");
+        }
+        if (json == null) {
+            return new InboundCommand.Invalid(null, "empty frame");
+        }
+
+        String type = json.getString("type");
+        if (type == null) {
+            return new InboundCommand.Invalid(null, "missing type");
+        }
+        try {
+            return toCommand(type, json);
+        } catch (Exception e) {
+            return new InboundCommand.Invalid(type, "bad field: " + e.getMessage());
+        }
+    }
+
+    private InboundCommand toCommand(String type, JSONObject json) {
+        switch (type) {
+            case "join_room":
+                // 直接从已解析的 JSONObject 映射，不再重新解析原始字符串
+                return new InboundCommand.JoinRoom(json.toJavaObject(PlayerVO.class), json.getLong("lastSeq"));
+            case "quick_match":
+                return new InboundCommand.QuickMatch(json.toJavaObject(PlayerVO.class));
+            case "quick_match_cancel":
+                return InboundCommand.QUICK_MATCH_CANCEL;
+            case "play_card":
+                return new InboundCommand.PlayCard(json.getInteger("card"));
+            case "ack":
+                return new InboundCommand.Ack(json.getLongValue("seq"));
+            case "leave_room":
+                return InboundCommand.LEAVE_ROOM;
+            case "rematch_request":
+                return InboundCommand.REMATCH_REQUEST;
+            case "rematch_accept":
+                return InboundCommand.REMATCH_ACCEPT;
+            case "rematch_reject":
+                return InboundCommand.REMATCH_REJECT;
+            default:
+                return new InboundCommand.Invalid(type, "unknown type");
+        }
+    }
+
+    @Override
+    public boolean willDecode(String message) {
+        return message != null;
+    }
+
+    @Override
+    public void init(EndpointConfig config) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
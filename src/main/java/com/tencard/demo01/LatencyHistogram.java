@@ -0,0 +1,78 @@
+package com.tencard.demo01;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定分桶的耗时直方图（毫秒），只做原子累加，记录时不加锁也不分配对象。
+ * 分位数按桶上界估算，精度取决于分桶。
+ */
+final class LatencyHistogram {
+
+    // 各桶上界（毫秒），最后一个桶收纳所有更大的值
+    private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long millis) {
+        int index = 0;
+        while (index < BOUNDS.length && millis > BOUNDS[index]) {
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long current;
+        while (millis > (current = max.get()) && !max.compareAndSet(current, millis)) {
+            // 重试直到写入更大的值
+        }
+    }
+
+    /**
+     * 计数、平均、最大值、p50 / p90 / p99 估算值以及各桶计数（key 为 "le_上界"）
+     */
+    Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("avg", total == 0 ? 0 : sum.get() / Math.max(1, count.get()));
+        snapshot.put("max", max.get());
+        snapshot.put("p50", percentile(counts, total, 50));
+        snapshot.put("p90", percentile(counts, total, 90));
+        snapshot.put("p99", percentile(counts, total, 99));
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            histogram.put(i < BOUNDS.length ? "le_" + BOUNDS[i] : "gt_" + BOUNDS[BOUNDS.length - 1], counts[i]);
+        }
+        snapshot.put("buckets", histogram);
+        return snapshot;
+    }
+
+    /**
+     * 第 p 百分位落在的桶的上界；落在最后一个桶时返回最大值
+     */
+    private long percentile(long[] counts, long total, int p) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BOUNDS.length ? BOUNDS[i] : max.get();
+            }
+        }
+        return max.get();
+    }
+}
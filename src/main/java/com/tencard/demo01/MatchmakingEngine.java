@@ -0,0 +1,312 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 快速匹配：按（豆子档位，胜率档位）把等待的玩家分桶，每个桶一个无锁队列。
+ * 入队时先在本桶找对手，找不到就排队；定时扫描时按等待时间逐步放宽可接受的档位差。
+ * 每张匹配票的状态用 CAS 推进，只会被认领一次，并发入队、扫描、取消之间不需要全局锁。
+ */
+@Component
+public class MatchmakingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchmakingEngine.class);
+
+    // 最近多少次匹配耗时用于计算分位数
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final long beanBandWidth;
+    private final int winRateBandPercent;
+    private final long widenEveryMillis;
+    private final int maxTolerance;
+    private final long minBean;
+
+    // (豆子档位, 胜率档位) -> 该桶中等待的票
+    private final Map<Long, Queue<Ticket>> buckets = new ConcurrentHashMap<>();
+    // openId -> 当前有效的票
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    private volatile BiConsumer<PlayerVO, PlayerVO> matchListener;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    // 匹配耗时环形采样（毫秒）
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    public MatchmakingEngine(@Value("${xcards.matchmaking.bean-band-width:1000}") long beanBandWidth,
+                             @Value("${xcards.matchmaking.win-rate-band-percent:10}") int winRateBandPercent,
+                             @Value("${xcards.matchmaking.widen-every-ms:5000}") long widenEveryMillis,
+                             @Value("${xcards.matchmaking.max-tolerance:5}") int maxTolerance,
+                             @Value("${xcards.matchmaking.min-bean:200}") long minBean) {
+        this.beanBandWidth = Math.max(1, beanBandWidth);
+        this.winRateBandPercent = Math.max(1, winRateBandPercent);
+        this.widenEveryMillis = Math.max(1, widenEveryMillis);
+        this.maxTolerance = maxTolerance;
+        this.minBean = minBean;
+    }
+
+    /**
+     * 匹配成功回调，参数依次为先排队（建房）和后排队的玩家
+     */
+    public void setMatchListener(BiConsumer<PlayerVO, PlayerVO> matchListener) {
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * 加入匹配队列，同一玩家重复加入时替换旧票。
+     * 豆子不够一局赌注的玩家直接拒绝，不让他占着队列配到对手后再因豆子不足开不了局
+     * @param bean 当前可用豆子
+     * @return 是否已入队；豆子不足返回 false，此时该玩家原有的票也一并取消
+     */
+    public boolean enqueue(PlayerVO player, long bean, int wins, int losses) {
+        if (bean < minBean) {
+            Ticket previous = tickets.remove(player.getOpenId());
+            if (previous != null) {
+                previous.close();
+            }
+            refused.incrementAndGet();
+            return false;
+        }
+        int games = wins + losses;
+        // 没打过几局的玩家按 50% 胜率处理
+        int winRate = games < 10 ? 50 : wins * 100 / games;
+        Ticket ticket = new Ticket(player, (int) Math.min(Integer.MAX_VALUE, Math.max(0, bean) / beanBandWidth),
+                winRate / winRateBandPercent);
+        Ticket previous = tickets.put(player.getOpenId(), ticket);
+        if (previous != null) {
+            previous.close();
+        }
+        enqueued.incrementAndGet();
+        if (!tryMatch(ticket, 0)) {
+            buckets.computeIfAbsent(ticket.bucketKey(), k -> new ConcurrentLinkedQueue<>()).add(ticket);
+        }
+        return true;
+    }
+
+    public long getMinBean() {
+        return minBean;
+    }
+
+    /**
+     * 取消匹配
+     * @return 是否确实取消了一张等待中的票
+     */
+    public boolean cancel(String openId) {
+        Ticket ticket = tickets.remove(openId);
+        if (ticket != null && ticket.close()) {
+            cancelled.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isWaiting(String openId) {
+        Ticket ticket = tickets.get(openId);
+        return ticket != null && !ticket.isDone();
+    }
+
+    /**
+     * 按等待时长放宽档位差，为还在等待的票找对手，同时清掉已失效的票
+     */
+    @Scheduled(fixedDelayString = "${xcards.matchmaking.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (Ticket ticket : tickets.values()) {
+            if (ticket.isDone()) {
+                continue;
+            }
+            int tolerance = (int) Math.min(maxTolerance, (now - ticket.enqueuedAt) / widenEveryMillis);
+            tryMatch(ticket, tolerance);
+        }
+        for (Queue<Ticket> queue : buckets.values()) {
+            queue.removeIf(Ticket::isDone);
+        }
+    }
+
+    /**
+     * 在档位差不超过 tolerance 的桶中由近到远寻找对手
+     */
+    private boolean tryMatch(Ticket ticket, int tolerance) {
+        for (int d = 0; d <= tolerance; d++) {
+            for (int db = -d; db <= d; db++) {
+                for (int dr = -d; dr <= d; dr++) {
+                    // 只扫描距离正好为 d 的一圈
+                    if (Math.max(Math.abs(db), Math.abs(dr)) != d) {
+                        continue;
+                    }
+                    int beanBand = ticket.beanBand + db;
+                    int rateBand = ticket.rateBand + dr;
+                    if (beanBand < 0 || rateBand < 0) {
+                        continue;
+                    }
+                    Queue<Ticket> queue = buckets.get(key(beanBand, rateBand));
+                    if (queue != null && matchFrom(ticket, queue)) {
+                        return true;
+                    }
+                    if (ticket.isDone()) {
+                        // 本票已被别的线程配走或取消
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchFrom(Ticket ticket, Queue<Ticket> queue) {
+        Iterator<Ticket> it = queue.iterator();
+        while (it.hasNext()) {
+            Ticket other = it.next();
+            if (other == ticket) {
+                continue;
+            }
+            if (other.isDone()) {
+                it.remove();
+                continue;
+            }
+            // 先锁定自己再认领对手；对手被抢走时释放自己，保证不会一人配两局
+            if (!ticket.beginMatch()) {
+                return false;
+            }
+            boolean taken = other.take();
+            ticket.finishMatch(taken);
+            if (!taken) {
+                continue;
+            }
+            it.remove();
+            onMatched(other, ticket);
+            return true;
+        }
+        return false;
+    }
+
+    private void onMatched(Ticket first, Ticket second) {
+        tickets.remove(first.player.getOpenId(), first);
+        tickets.remove(second.player.getOpenId(), second);
+        matched.incrementAndGet();
+        long now = System.currentTimeMillis();
+        recordLatency(now - first.enqueuedAt);
+        recordLatency(now - second.enqueuedAt);
+        log.info("Quick match: {} vs {}", first.player.getOpenId(), second.player.getOpenId());
+        BiConsumer<PlayerVO, PlayerVO> listener = matchListener;
+        if (listener != null) {
+            listener.accept(first.player, second.player);
+        }
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[(int) (latencyCount % LATENCY_SAMPLES)] = millis;
+        latencyCount++;
+    }
+
+    /**
+     * 匹配指标：排队人数、计数以及最近匹配耗时的 p50 / p90 / p99（毫秒）
+     */
+    public Map<String, Object> metrics() {
+        long[] samples;
+        synchronized (this) {
+            samples = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+        }
+        Arrays.sort(samples);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("waiting", tickets.size());
+        metrics.put("buckets", buckets.size());
+        metrics.put("enqueued", enqueued.get());
+        metrics.put("matched", matched.get());
+        metrics.put("cancelled", cancelled.get());
+        metrics.put("refused", refused.get());
+        metrics.put("minBean", minBean);
+        metrics.put("timeToMatchP50", percentile(samples, 50));
+        metrics.put("timeToMatchP90", percentile(samples, 90));
+        metrics.put("timeToMatchP99", percentile(samples, 99));
+        return metrics;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static long key(int beanBand, int rateBand) {
+        return ((long) beanBand << 32) | rateBand;
+    }
+
+    private static final class Ticket {
+        private final PlayerVO player;
+        private final int beanBand;
+        private final int rateBand;
+        private static final int WAITING = 0;
+        private static final int MATCHING = 1;
+        private static final int DONE = 2;
+
+        private final long enqueuedAt = System.currentTimeMillis();
+        // WAITING 等待中；MATCHING 正在认领对手；DONE 已匹配或已取消
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Ticket(PlayerVO player, int beanBand, int rateBand) {
+            this.player = player;
+            this.beanBand = beanBand;
+            this.rateBand = rateBand;
+        }
+
+        boolean isDone() {
+            return state.get() == DONE;
+        }
+
+        boolean beginMatch() {
+            return state.compareAndSet(WAITING, MATCHING);
+        }
+
+        void finishMatch(boolean matched) {
+            state.set(matched ? DONE : WAITING);
+        }
+
+        /**
+         * 被别的票认领为对手
+         */
+        boolean take() {
+            return state.compareAndSet(WAITING, DONE);
+        }
+
+        /**
+         * 取消或被新票替换；正在认领对手时等它出结果
+         * @return 是否由本次调用关闭了等待中的票
+         */
+        boolean close() {
+            while (true) {
+                if (state.compareAndSet(WAITING, DONE)) {
+                    return true;
+                }
+                if (state.get() == DONE) {
+                    return false;
+                }
+                Thread.yield();
+            }
+        }
+
+        long bucketKey() {
+            return key(beanBand, rateBand);
+        }
+    }
+}
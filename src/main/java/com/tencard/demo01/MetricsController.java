@@ -0,0 +1,162 @@
+package com.tencard.demo01;
+
+import com.tencard.demo01.saveData.GameSettlementService;
+import com.tencard.demo01.saveData.SessionTokenService;
+import com.tencard.demo01.saveData.UserCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 运行指标查询接口
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    @Autowired
+    private OutboundPipeline outboundPipeline;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private GameHistoryStore gameHistoryStore;
+
+    @Autowired
+    private RoomTimers roomTimers;
+
+    @Autowired
+    private MatchmakingEngine matchmakingEngine;
+
+    @Autowired
+    private ReconnectManager reconnectManager;
+
+    @Autowired
+    private SessionHeartbeat sessionHeartbeat;
+
+    @Autowired
+    private SensitiveWordFilter sensitiveWordFilter;
+
+    @Autowired
+    private WechatAccessTokenManager wechatAccessTokenManager;
+
+    @Autowired
+    private NicknameModerator nicknameModerator;
+
+    @Autowired
+    private HttpEndpointBulkhead httpEndpointBulkhead;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @Autowired
+    private GameSettlementService gameSettlementService;
+
+    /**
+     * 出站消息管道指标：发送/丢弃计数、各会话队列深度
+     */
+    @GetMapping("/outbound")
+    public Map<String, Object> outbound() {
+        return outboundPipeline.metrics();
+    }
+
+    /**
+     * 用户缓存指标：命中、未命中、淘汰
+     */
+    @GetMapping("/user-cache")
+    public Map<String, Object> userCache() {
+        return userCache.metrics();
+    }
+
+    /**
+     * 对局历史指标：玩家数、记录数、淘汰与溢出写盘计数
+     */
+    @GetMapping("/history")
+    public Map<String, Object> history() {
+        return gameHistoryStore.metrics();
+    }
+
+    /**
+     * 房间定时指标：出牌超时、自动出牌、空闲回收次数
+     */
+    @GetMapping("/timers")
+    public Map<String, Object> timers() {
+        return roomTimers.metrics();
+    }
+
+    /**
+     * 快速匹配指标：排队人数、匹配次数、匹配耗时分位数
+     */
+    @GetMapping("/matchmaking")
+    public Map<String, Object> matchmaking() {
+        return matchmakingEngine.metrics();
+    }
+
+    /**
+     * 断线重连指标：保留的座位数、恢复次数、补发帧数、宽限期到期次数
+     */
+    @GetMapping("/reconnect")
+    public Map<String, Object> reconnect() {
+        return reconnectManager.metrics();
+    }
+
+    /**
+     * 心跳指标：跟踪的会话数、ping/pong 次数、因心跳超时淘汰的会话数
+     */
+    @GetMapping("/heartbeat")
+    public Map<String, Object> heartbeat() {
+        return sessionHeartbeat.metrics();
+    }
+
+    /**
+     * 敏感词过滤指标：词数、自动机节点数、重新加载次数、检查与命中次数
+     */
+    @GetMapping("/sensitive-words")
+    public Map<String, Object> sensitiveWords() {
+        return sensitiveWordFilter.metrics();
+    }
+
+    /**
+     * 微信 access_token 缓存指标：命中、换取次数、失败次数、剩余有效期
+     */
+    @GetMapping("/wechat-token")
+    public Map<String, Object> wechatToken() {
+        return wechatAccessTokenManager.metrics();
+    }
+
+    /**
+     * 昵称审核指标：各结果计数、结论缓存命中、微信调用耗时分位数、超时与熔断状态
+     */
+    @GetMapping("/moderation")
+    public Map<String, Object> moderation() {
+        return nicknameModerator.metrics();
+    }
+
+    /**
+     * 出站 HTTP 指标：各微信接口的在途数、限流拒绝、错误数、耗时直方图，以及连接池状态
+     */
+    @GetMapping("/http")
+    public Map<String, Object> http() {
+        return httpEndpointBulkhead.metrics();
+    }
+
+    /**
+     * 会话令牌指标：签发、校验通过、格式错误/签名不符/过期次数，以及仍按裸 openId 接入的次数
+     */
+    @GetMapping("/session-token")
+    public Map<String, Object> sessionToken() {
+        return sessionTokenService.metrics();
+    }
+
+    /**
+     * 对局结算指标：待刷盘、重试、死信、日志重放
+     */
+    @GetMapping("/settlement")
+    public Map<String, Object> settlement() {
+        return gameSettlementService.metrics();
+    }
+}
@@ -0,0 +1,282 @@
+package com.tencard.demo01;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 昵称审核：先过本地敏感词，再异步调用微信 msg_sec_check，不占用 Tomcat 工作线程。
+ * 远程调用有严格超时，明确的结论（pass / risky / review）按规范化后的昵称缓存，
+ * 同一昵称并发审核只发一次请求。微信连续失败或超时时熔断，熔断期间直接按本地结果降级放行。
+ */
+@Component
+public class NicknameModerator {
+
+    private static final Logger log = LoggerFactory.getLogger(NicknameModerator.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    /**
+     * 审核结果
+     */
+    public enum Outcome {
+        // 本地敏感词命中
+        LOCAL_BLOCKED,
+        PASS,
+        RISKY,
+        // 需要人工审核，暂时放行
+        REVIEW,
+        // 微信超时、失败、熔断或结论不明确，只有本地检查结果
+        DEGRADED
+    }
+
+    private enum Verdict { PASS, RISKY, REVIEW }
+
+    private final SensitiveWordFilter sensitiveWordFilter;
+    private final WechatAccessTokenManager tokenManager;
+    private final HashedWheelTimer timer;
+    private final long timeoutMillis;
+    private final RestTemplate restTemplate;
+    private final ThreadPoolExecutor executor;
+    private final CircuitBreaker breaker;
+    // 规范化昵称 -> 微信结论，结论不明确或失败时不缓存
+    private final AsyncCache<String, Verdict> verdicts;
+
+    private final Map<Outcome, AtomicLong> outcomes = new EnumMap<>(Outcome.class);
+    private final AtomicLong remoteCalls = new AtomicLong();
+    private final AtomicLong remoteFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    public NicknameModerator(SensitiveWordFilter sensitiveWordFilter,
+                             WechatAccessTokenManager tokenManager,
+                             HashedWheelTimer timer,
+                             RestTemplate restTemplate,
+                             @Value("${xcards.moderation.timeout-ms:1500}") long timeoutMillis,
+                             @Value("${xcards.moderation.pool-size:8}") int poolSize,
+                             @Value("${xcards.moderation.queue-capacity:256}") int queueCapacity,
+                             @Value("${xcards.moderation.cache-size:10000}") long cacheSize,
+                             @Value("${xcards.moderation.cache-ttl-seconds:3600}") long cacheTtlSeconds,
+                             @Value("${xcards.moderation.breaker.failure-threshold:5}") int failureThreshold,
+                             @Value("${xcards.moderation.breaker.open-seconds:30}") long openSeconds) {
+        this.sensitiveWordFilter = sensitiveWordFilter;
+        this.tokenManager = tokenManager;
+        this.timer = timer;
+        this.timeoutMillis = timeoutMillis;
+        this.restTemplate = restTemplate;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "nickname-moderation-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.breaker = new CircuitBreaker(failureThreshold, TimeUnit.SECONDS.toMillis(openSeconds));
+        this.verdicts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .buildAsync();
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new AtomicLong());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 审核昵称，返回的 future 不会异常结束，远程失败一律得到 DEGRADED。
+     * 后续回调可能在审核线程上执行（超时时在时间轮线程上），不要在回调里做耗时很长的事
+     */
+    public CompletableFuture<Outcome> moderate(String nickname, String openId) {
+        if (sensitiveWordFilter.containsSensitiveWord(nickname)) {
+            return CompletableFuture.completedFuture(record(Outcome.LOCAL_BLOCKED));
+        }
+        String key = SensitiveWordFilter.normalize(nickname);
+        return verdicts.get(key, (k, ignored) -> remoteCheck(nickname, openId))
+                .handle((verdict, error) -> {
+                    if (error != null || verdict == null) {
+                        return record(Outcome.DEGRADED);
+                    }
+                    switch (verdict) {
+                        case PASS:
+                            return record(Outcome.PASS);
+                        case RISKY:
+                            return record(Outcome.RISKY);
+                        default:
+                            return record(Outcome.REVIEW);
+                    }
+                });
+    }
+
+    private Outcome record(Outcome outcome) {
+        outcomes.get(outcome).incrementAndGet();
+        return outcome;
+    }
+
+    /**
+     * 在审核线程池上调用微信，timeoutMillis 后未完成即按超时结束。
+     * 熔断、失败、超时或结论不明确时以 null 完成，不会被缓存；结论不明确不计入熔断失败
+     */
+    private CompletableFuture<Verdict> remoteCheck(String nickname, String openId) {
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Verdict> future = new CompletableFuture<>();
+        remoteCalls.incrementAndGet();
+        long start = System.currentTimeMillis();
+        HashedWheelTimer.Timeout timeout = scheduleTimeout(future);
+        future.whenComplete((verdict, error) -> {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            if (error == null) {
+                breaker.onSuccess();
+            } else {
+                remoteFailures.incrementAndGet();
+                breaker.onFailure();
+            }
+        });
+        try {
+            executor.execute(() -> {
+                try {
+                    Verdict verdict = callWechat(nickname, openId);
+                    // 耗时在调用返回时记录，不包含后续回调的执行时间
+                    recordLatency(System.currentTimeMillis() - start);
+                    future.complete(verdict);
+                } catch (Exception e) {
+                    recordLatency(System.currentTimeMillis() - start);
+                    log.warn("msg_sec_check failed: {}", e.getMessage());
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满说明微信调用已经积压，按失败处理
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        // 失败也以 null 交给缓存：不缓存，也避免 Caffeine 为每次失败打印异常堆栈
+        return future.exceptionally(error -> null);
+    }
+
+    private HashedWheelTimer.Timeout scheduleTimeout(CompletableFuture<Verdict> future) {
+        try {
+            return timer.newTimeout(() -> {
+                // 已完成时不再调用 completeExceptionally，否则时间轮线程会帮忙执行后续回调（如写库）
+                if (!future.isDone() && future.completeExceptionally(new TimeoutException("msg_sec_check timed out"))) {
+                    timeouts.incrementAndGet();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 时间轮已停止，应用正在关闭，只靠 HTTP 读取超时兜底
+            return null;
+        }
+    }
+
+    private Verdict callWechat(String nickname, String openId) {
+        String accessToken = tokenManager.getAccessToken();
+        String checkUrl = tokenManager.getApiBaseUrl() + "/wxa/msg_sec_check?access_token=" + accessToken;
+
+        Map<String, Object> checkRequest = new HashMap<>();
+        checkRequest.put("content", nickname);
+        checkRequest.put("version", 2);
+        checkRequest.put("scene", 1);
+        checkRequest.put("openid", openId);
+        Map checkResult = restTemplate.postForObject(checkUrl, checkRequest, Map.class);
+        if (checkResult == null) {
+            throw new IllegalStateException("empty msg_sec_check response");
+        }
+
+        Integer errcode = (Integer) checkResult.get("errcode");
+        if (errcode == null || errcode != 0) {
+            // token 失效或过期，丢弃缓存，下次重新换取
+            if (errcode != null && (errcode == 40001 || errcode == 42001)) {
+                tokenManager.invalidate(accessToken);
+            }
+            throw new IllegalStateException("errcode=" + errcode + ", errmsg=" + checkResult.get("errmsg"));
+        }
+        Map result = (Map) checkResult.get("result");
+        String suggest = result == null ? null : (String) result.get("suggest");
+        if ("pass".equals(suggest)) {
+            return Verdict.PASS;
+        } else if ("risky".equals(suggest)) {
+            return Verdict.RISKY;
+        } else if ("review".equals(suggest)) {
+            return Verdict.REVIEW;
+        }
+        log.warn("Unknown msg_sec_check suggest: {}", suggest);
+        return null;
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[(int) (latencyCount % LATENCY_SAMPLES)] = millis;
+        latencyCount++;
+    }
+
+    /**
+     * 审核指标：各结果计数、缓存命中、远程调用耗时 p50 / p90 / p99（毫秒）、熔断状态
+     */
+    public Map<String, Object> metrics() {
+        long[] samples;
+        synchronized (this) {
+            samples = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+        }
+        Arrays.sort(samples);
+        CacheStats stats = verdicts.synchronous().stats();
+        Map<String, Object> metrics = new HashMap<>();
+        for (Map.Entry<Outcome, AtomicLong> entry : outcomes.entrySet()) {
+            metrics.put("outcome." + entry.getKey().name().toLowerCase(), entry.getValue().get());
+        }
+        metrics.put("cacheSize", verdicts.synchronous().estimatedSize());
+        metrics.put("cacheHits", stats.hitCount());
+        metrics.put("cacheMisses", stats.missCount());
+        metrics.put("cacheHitRate", stats.hitRate());
+        metrics.put("remoteCalls", remoteCalls.get());
+        metrics.put("remoteFailures", remoteFailures.get());
+        metrics.put("timeouts", timeouts.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("timeoutMillis", timeoutMillis);
+        metrics.put("latencyP50", percentile(samples, 50));
+        metrics.put("latencyP90", percentile(samples, 90));
+        metrics.put("latencyP99", percentile(samples, 99));
+        metrics.put("breakerState", breaker.state().name());
+        metrics.put("breakerConsecutiveFailures", breaker.consecutiveFailures());
+        metrics.put("breakerOpened", breaker.openedCount());
+        metrics.put("shortCircuited", breaker.shortCircuitedCount());
+        metrics.put("poolActive", executor.getActiveCount());
+        metrics.put("poolQueued", executor.getQueue().size());
+        return metrics;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
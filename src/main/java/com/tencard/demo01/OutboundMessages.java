@@ -0,0 +1,35 @@
+package com.tencard.demo01;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内容固定的出站消息，启动时编码一次，发送时直接复用同一个文本帧。
+ */
+public final class OutboundMessages {
+
+    public static final String PLEASE_TAKE_CARD = encode(GameState.MSG_TYPE_PLEASE_TAKE_CARD, null);
+    public static final String OPPONENT_LEAVE = encode("opponent_leave", "对方离开了房间");
+    public static final String OPPONENT_LEFT_ROOM = encode("opponent_leave", "玩家离开了房间");
+    public static final String OPPONENT_OFFLINE = encode("opponent_offline", "对方网络断开，等待重连");
+    public static final String OPPONENT_BACK = encode("opponent_back", "对方已重新连接");
+    public static final String REMATCH_REJECT = encode("rematch_reject", null);
+    public static final String BEAN_NOT_ENOUGH_FOR_GAME = encode("bean_not_enough", "有玩家豆子不足，无法开始游戏");
+    public static final String BEAN_NOT_ENOUGH_FOR_REMATCH = encode("bean_not_enough", "有玩家豆子不足，无法开始连战");
+    public static final String BEAN_NOT_ENOUGH_FOR_MATCH = encode("bean_not_enough", "豆子不足，无法快速匹配");
+    public static final String QUICK_MATCH_WAITING = encode("quick_match_waiting", "正在匹配对手");
+    public static final String QUICK_MATCH_CANCELLED = encode("quick_match_cancelled", null);
+    public static final String ROOM_EXPIRED = encode("room_expired", "房间长时间无操作，已关闭");
+
+    private OutboundMessages() {
+    }
+
+    private static String encode(String type, String message) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", type);
+        if (message != null) {
+            payload.put("message", message);
+        }
+        return GameUtil.toJson(payload);
+    }
+}
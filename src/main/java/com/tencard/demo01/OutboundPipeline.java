@@ -0,0 +1,366 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 出站消息管道：每个会话一个有界发送队列，通过 getAsyncRemote 异步逐条发送。
+ * 调用方线程只负责入队，慢客户端不会拖住处理对手出牌的线程。
+ * 队列满时按 xcards.outbound.overflow-policy 处理（默认 DISCONNECT 断开慢客户端）：
+ * DROP 丢弃新消息；COALESCE 用新消息替换队列中同类型的旧消息、只保留最新状态。
+ * 两者都只作用于不带 seq 的非终局 JSON 消息（大厅类消息）：带 seq 的帧（含全部二进制帧）和对局结束类消息
+ * 一旦丢失客户端状态就对不上，放不下时一律断开，让客户端重连补发。
+ */
+@Component
+public class OutboundPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundPipeline.class);
+
+    public enum OverflowPolicy {
+        DROP, COALESCE, DISCONNECT
+    }
+
+    // 终局或一次性通知，不参与合并
+    private static final Set<String> TERMINAL_TYPES = new HashSet<>(Arrays.asList(
+            GameState.MSG_TYPE_GAME_RESULT, "opponent_leave", "room_expired", "rematch_reject",
+            "bean_not_enough", "quick_match_cancelled", "resumed", "nickname_error"));
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    // sessionId -> 发送队列
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public OutboundPipeline(@Value("${xcards.outbound.queue-capacity:64}") int queueCapacity,
+                            @Value("${xcards.outbound.overflow-policy:DISCONNECT}") OverflowPolicy overflowPolicy) {
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @PostConstruct
+    public void init() {
+        GameUtil.setOutboundPipeline(this);
+        log.info("Outbound pipeline ready, queueCapacity={}, overflowPolicy={}", queueCapacity, overflowPolicy);
+    }
+
+    /**
+     * 将文本帧放入会话的发送队列。
+     */
+    public void send(Session session, String text) {
+        enqueue(session, text);
+    }
+
+    /**
+     * 将二进制帧放入会话的发送队列。
+     */
+    public void send(Session session, ByteBuffer binary) {
+        enqueue(session, binary);
+    }
+
+    private void enqueue(Session session, Object frame) {
+        if (session == null) {
+            return;
+        }
+        if (!session.isOpen()) {
+            release(session);
+            return;
+        }
+        outboxes.computeIfAbsent(session.getId(), id -> new SessionOutbox(session)).offer(frame);
+    }
+
+    /**
+     * 会话是否有发送在途或排队中的帧。
+     * 在途期间容器的阻塞发送（如 sendPing）要等它结束，心跳据此跳过这些会话
+     */
+    public boolean isBusy(Session session) {
+        SessionOutbox outbox = session == null ? null : outboxes.get(session.getId());
+        return outbox != null && outbox.isBusy();
+    }
+
+    /**
+     * 会话关闭时释放其发送队列。
+     */
+    public void release(Session session) {
+        if (session != null) {
+            outboxes.remove(session.getId());
+        }
+    }
+
+    /**
+     * 出站指标：全局计数以及队列最深的若干会话。
+     */
+    public Map<String, Object> metrics() {
+        List<SessionOutbox> snapshot = new ArrayList<>(outboxes.values());
+        snapshot.sort(Comparator.comparingInt(SessionOutbox::depth).reversed());
+
+        List<Map<String, Object>> deepest = new ArrayList<>();
+        long totalDepth = 0;
+        for (SessionOutbox outbox : snapshot) {
+            int depth = outbox.depth();
+            totalDepth += depth;
+            if (deepest.size() < 20 && depth > 0) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("sessionId", outbox.session.getId());
+                item.put("depth", depth);
+                item.put("maxDepth", outbox.maxDepth);
+                item.put("dropped", outbox.dropped);
+                deepest.add(item);
+            }
+        }
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("overflowPolicy", overflowPolicy);
+        metrics.put("sessions", snapshot.size());
+        metrics.put("queuedFrames", totalDepth);
+        metrics.put("sent", sentCount.get());
+        metrics.put("dropped", droppedCount.get());
+        metrics.put("failed", failedCount.get());
+        metrics.put("disconnected", disconnectedCount.get());
+        metrics.put("coalesced", coalescedCount.get());
+        metrics.put("deepestSessions", deepest);
+        return metrics;
+    }
+
+    /**
+     * 单个会话的发送队列。同一时刻只有一条异步发送在途，发送完成回调里再取下一条。
+     */
+    private final class SessionOutbox implements SendHandler {
+        private final Session session;
+        // 待发帧：String 文本帧或 ByteBuffer 二进制帧
+        private final ArrayDeque<QueuedFrame> queue = new ArrayDeque<>();
+        private boolean sending;
+        // sendNext 正在把一帧交给容器；期间的完成回调只做标记，由 sendNext 循环继续发，不递归
+        private boolean dispatching;
+        private boolean completedInline;
+        private volatile int maxDepth;
+        private volatile long dropped;
+
+        SessionOutbox(Session session) {
+            this.session = session;
+        }
+
+        synchronized int depth() {
+            return queue.size();
+        }
+
+        synchronized boolean isBusy() {
+            return sending || !queue.isEmpty();
+        }
+
+        void offer(Object frame) {
+            synchronized (this) {
+                if (queue.size() >= queueCapacity) {
+                    if (!handleOverflow(frame)) {
+                        return;
+                    }
+                } else {
+                    queue.add(new QueuedFrame(frame));
+                }
+                if (queue.size() > maxDepth) {
+                    maxDepth = queue.size();
+                }
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            sendNext();
+        }
+
+        /**
+         * 队列已满时按策略处理，返回是否需要继续触发发送。
+         */
+        private boolean handleOverflow(Object frame) {
+            dropped++;
+            droppedCount.incrementAndGet();
+            switch (overflowPolicy) {
+                case COALESCE:
+                    QueuedFrame latest = new QueuedFrame(frame);
+                    if (replaceSameType(latest)) {
+                        coalescedCount.incrementAndGet();
+                        return true;
+                    }
+                    // 没有可合并的旧消息，新帧又不能丢，按 DISCONNECT 处理
+                    queue.clear();
+                    disconnect();
+                    return false;
+                case DISCONNECT:
+                    queue.clear();
+                    disconnect();
+                    return false;
+                case DROP:
+                default:
+                    if (new QueuedFrame(frame).coalesceType() != null) {
+                        return false;
+                    }
+                    // 带 seq 或终局的帧不能丢
+                    queue.clear();
+                    disconnect();
+                    return false;
+            }
+        }
+
+        /**
+         * 移除队列中最早一条与 latest 同类型的可合并消息，把 latest 排到队尾
+         * @return latest 本身不可合并或队列中没有同类型消息时返回 false
+         */
+        private boolean replaceSameType(QueuedFrame latest) {
+            String type = latest.coalesceType();
+            if (type == null) {
+                return false;
+            }
+            Iterator<QueuedFrame> it = queue.iterator();
+            while (it.hasNext()) {
+                if (type.equals(it.next().coalesceType())) {
+                    it.remove();
+                    queue.add(latest);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void disconnect() {
+            disconnectedCount.incrementAndGet();
+            outboxes.remove(session.getId(), this);
+            log.warn("Outbound queue full for session {}, disconnecting slow consumer", session.getId());
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+            } catch (Exception e) {
+                log.error("Error closing slow session {}", session.getId(), e);
+            }
+        }
+
+        /**
+         * 逐条发送，直到队列为空或有一帧还在途。
+         * 容器在 sendText 内部就完成回调时不递归调用，而是在这里循环发下一条，栈深度不随队列长度增长
+         */
+        private void sendNext() {
+            while (true) {
+                Object frame;
+                synchronized (this) {
+                    QueuedFrame next = queue.poll();
+                    if (next == null) {
+                        sending = false;
+                        return;
+                    }
+                    frame = next.frame;
+                    dispatching = true;
+                    completedInline = false;
+                }
+                try {
+                    if (frame instanceof ByteBuffer) {
+                        session.getAsyncRemote().sendBinary((ByteBuffer) frame, this);
+                    } else {
+                        session.getAsyncRemote().sendText((String) frame, this);
+                    }
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    log.error("Async send failed for session {}", session.getId(), e);
+                    synchronized (this) {
+                        queue.clear();
+                        sending = false;
+                        dispatching = false;
+                    }
+                    release(session);
+                    return;
+                }
+                synchronized (this) {
+                    dispatching = false;
+                    if (!completedInline) {
+                        // 还在途，由完成回调接着发
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onResult(SendResult result) {
+            if (result.isOK()) {
+                sentCount.incrementAndGet();
+            } else {
+                failedCount.incrementAndGet();
+                log.error("Async send failed for session {}", session.getId(), result.getException());
+            }
+            synchronized (this) {
+                if (dispatching) {
+                    completedInline = true;
+                    return;
+                }
+            }
+            sendNext();
+        }
+    }
+
+    /**
+     * 队列中的一帧，合并类型只在队列满时才解析并缓存，正常发送路径不解析 JSON
+     */
+    private static final class QueuedFrame {
+        private final Object frame;
+        private boolean classified;
+        private String coalesceType;
+
+        QueuedFrame(Object frame) {
+            this.frame = frame;
+        }
+
+        /**
+         * 可合并时返回消息类型：不带 seq 的非终局 JSON 消息；其余返回 null
+         */
+        String coalesceType() {
+            if (!classified) {
+                classified = true;
+                coalesceType = classify(frame);
+            }
+            return coalesceType;
+        }
+
+        private static String classify(Object frame) {
+            if (!(frame instanceof String)) {
+                return null;
+            }
+            JSONObject json;
+            try {
+                json = JSON.parseObject((String) frame);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (json == null || json.containsKey("seq")) {
+                return null;
+            }
+            String type = json.getString("type");
+            return type == null || TERMINAL_TYPES.contains(type) ? null : type;
+        }
+    }
+}
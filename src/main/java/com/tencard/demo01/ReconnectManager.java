@@ -0,0 +1,82 @@
+package com.tencard.demo01;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 断线重连：掉线后座位保留一段宽限期，期间发给该座位的消息留在重放缓冲里，
+ * 重连后按客户端最后收到的序号补发。宽限期为 0 时恢复为掉线立即离开房间。
+ */
+@Component
+public class ReconnectManager {
+
+    private final HashedWheelTimer timer;
+    private final long graceMillis;
+    private final int replayBufferSize;
+
+    private final AtomicLong seatsHeld = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong framesReplayed = new AtomicLong();
+    private final AtomicLong snapshotOnly = new AtomicLong();
+    private final AtomicLong graceExpired = new AtomicLong();
+
+    public ReconnectManager(HashedWheelTimer timer,
+                            @Value("${xcards.reconnect.grace-seconds:30}") long graceSeconds,
+                            @Value("${xcards.reconnect.replay-buffer-size:64}") int replayBufferSize) {
+        this.timer = timer;
+        this.graceMillis = TimeUnit.SECONDS.toMillis(graceSeconds);
+        this.replayBufferSize = replayBufferSize;
+    }
+
+    public boolean isEnabled() {
+        return graceMillis > 0;
+    }
+
+    /**
+     * 座位保留宽限期，到期执行 onExpire
+     */
+    public HashedWheelTimer.Timeout holdSeat(Runnable onExpire) {
+        seatsHeld.incrementAndGet();
+        return timer.newTimeout(onExpire, graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    /**
+     * @param replayed 补发的帧数，-1 表示无法补发、只发了快照
+     */
+    public void recordResume(int replayed) {
+        resumed.incrementAndGet();
+        if (replayed < 0) {
+            snapshotOnly.incrementAndGet();
+        } else {
+            framesReplayed.addAndGet(replayed);
+        }
+    }
+
+    public void recordGraceExpired() {
+        graceExpired.incrementAndGet();
+    }
+
+    /**
+     * 重连指标
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("graceMillis", graceMillis);
+        metrics.put("replayBufferSize", replayBufferSize);
+        metrics.put("seatsHeld", seatsHeld.get());
+        metrics.put("resumed", resumed.get());
+        metrics.put("framesReplayed", framesReplayed.get());
+        metrics.put("snapshotOnly", snapshotOnly.get());
+        metrics.put("graceExpired", graceExpired.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,100 @@
+package com.tencard.demo01;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 座位的出站重放缓冲：发往该座位的每一帧按顺序编号，保留最近 capacity 帧。
+ * JSON 帧在对象最前面拼上 "seq" 字段，发给座位的 JSON 帧必须是对象；
+ * 二进制帧在操作码后面带上 4 字节大端 seq，见 {@link BinaryProtocol#withSeq}。
+ * 房间内发给座位的消息都要经过这里，否则客户端的序号会和缓冲对不上。
+ * 断线重连时按客户端最后收到的序号补发之后的帧，客户端 ack 过的帧可以提前释放。
+ * 只在房间信箱内访问。
+ */
+class ReplayBuffer {
+
+    private final Object[] frames;
+    // 该缓冲对应会话的协议，二进制帧不能补发给 JSON 客户端，反之亦然
+    private final boolean binary;
+    // 最近分配的序号，第一帧为 1
+    private long lastSeq;
+    // 客户端已确认的序号
+    private long ackedSeq;
+
+    ReplayBuffer(int capacity, boolean binary, long startSeq) {
+        this.frames = new Object[Math.max(1, capacity)];
+        this.binary = binary;
+        this.lastSeq = startSeq;
+        this.ackedSeq = startSeq;
+    }
+
+    /**
+     * 给一帧编号并保留下来
+     * @return 实际要发送的帧（已带上 seq）
+     */
+    Object append(Object frame) {
+        long seq = ++lastSeq;
+        Object stamped = frame instanceof ByteBuffer
+                ? BinaryProtocol.withSeq((ByteBuffer) frame, seq)
+                : stamp((String) frame, seq);
+        frames[slot(seq)] = stamped;
+        return stamped;
+    }
+
+    /**
+     * 客户端确认收到了 seq 及之前的帧
+     */
+    void ack(long seq) {
+        long upTo = Math.min(seq, lastSeq);
+        for (long s = Math.max(ackedSeq + 1, lastSeq - frames.length + 1); s <= upTo; s++) {
+            frames[slot(s)] = null;
+        }
+        if (upTo > ackedSeq) {
+            ackedSeq = upTo;
+        }
+    }
+
+    /**
+     * seq 之后的所有帧，按顺序返回
+     * @return 中间有帧已经被覆盖或释放、或者 seq 超出已发送范围时返回 null
+     */
+    List<Object> since(long seq) {
+        if (seq > lastSeq || seq < lastSeq - frames.length) {
+            return null;
+        }
+        List<Object> missed = new ArrayList<>((int) (lastSeq - seq));
+        for (long s = seq + 1; s <= lastSeq; s++) {
+            Object frame = frames[slot(s)];
+            if (frame == null) {
+                return null;
+            }
+            missed.add(frame instanceof ByteBuffer ? ((ByteBuffer) frame).duplicate() : frame);
+        }
+        return missed;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % frames.length);
+    }
+
+    /**
+     * 房间内的 JSON 帧都是 GameUtil.toJson 或 OutboundMessages 预编码好的紧凑对象，
+     * 直接在开头的 { 后面插入 seq，不重新解析、不重新序列化，广播时仍然只编码一次
+     */
+    static String stamp(String json, long seq) {
+        if (json.length() < 2 || json.charAt(0) != '{') {
+            throw new IllegalArgumentException("Seat frames must be JSON objects: " + json);
+        }
+        String head = "{\"seq\":" + seq;
+        return json.charAt(1) == '}' ? head + "}" : head + "," + json.substring(1);
+    }
+}
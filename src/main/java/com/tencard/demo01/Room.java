@@ -0,0 +1,249 @@
+package com.tencard.demo01;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class Room {
+    // 整副牌 1-10 的位掩码，第 card-1 位为 1 表示这张牌还在手里
+    static final int FULL_DECK = (1 << GameState.TEN) - 1;
+
+    private final Long id;
+    private final String code;
+    // 玩家列表由 RoomRegistry 在锁内修改，其他线程只读遍历
+    private final List<PlayerVO> players = new CopyOnWriteArrayList<>();
+    private final GameState gameState = new GameState();
+    // 红蓝双方手里剩余的牌，只在房间信箱内读写；开局前为 0，任何出牌都会被拒绝
+    private int redDeck;
+    private int blueDeck;
+    // 房间信箱：本房间的所有游戏事件都在这里串行执行
+    private final SerialExecutor mailbox;
+    // 出牌计时：每开始一个回合递增，过期的定时任务据此识别并忽略；只在房间信箱内读写
+    private int turnSeq;
+    private volatile HashedWheelTimer.Timeout turnTimeout;
+    // 最近一次玩家操作的时间，空闲回收据此判断
+    private volatile long lastActivity = System.currentTimeMillis();
+    private final AtomicBoolean idleCheckArmed = new AtomicBoolean();
+    // openId -> 座位的出站重放缓冲
+    private final Map<String, ReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+    // openId -> 掉线后保留座位的宽限期计时
+    private final Map<String, HashedWheelTimer.Timeout> seatHolds = new ConcurrentHashMap<>();
+
+    public Room(Long id, String code, Executor executor) {
+        this.id = id;
+        this.code = code;
+        this.mailbox = new SerialExecutor(executor);
+    }
+
+    /**
+     * 将事件投递到房间信箱，按到达顺序逐个执行。
+     */
+    public void execute(Runnable event) {
+        mailbox.execute(event);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public List<PlayerVO> getPlayers() {
+        return players;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    /**
+     * 开始新回合的计时：作废旧的计时任务并返回新的回合序号
+     */
+    public int nextTurn() {
+        cancelTurnTimer();
+        return ++turnSeq;
+    }
+
+    public void setTurnTimeout(HashedWheelTimer.Timeout timeout) {
+        turnTimeout = timeout;
+    }
+
+    public int getTurnSeq() {
+        return turnSeq;
+    }
+
+    public void cancelTurnTimer() {
+        HashedWheelTimer.Timeout timeout = turnTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            turnTimeout = null;
+        }
+    }
+
+    /**
+     * 记录一次玩家操作
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * 空闲检查只需挂一次，之后由检查任务自己续期
+     * @return 本次调用是否需要挂上检查任务
+     */
+    public boolean armIdleCheck() {
+        return idleCheckArmed.compareAndSet(false, true);
+    }
+
+    public ReplayBuffer getReplayBuffer(String openId) {
+        return replayBuffers.get(openId);
+    }
+
+    /**
+     * 为座位新建重放缓冲，序号接着旧缓冲继续编号
+     */
+    public ReplayBuffer openReplayBuffer(String openId, boolean binary, int capacity) {
+        ReplayBuffer previous = replayBuffers.get(openId);
+        ReplayBuffer buffer = new ReplayBuffer(capacity, binary, previous == null ? 0 : previous.getLastSeq());
+        replayBuffers.put(openId, buffer);
+        return buffer;
+    }
+
+    /**
+     * 玩家掉线，座位保留到 timeout 到期
+     */
+    public void holdSeat(String openId, HashedWheelTimer.Timeout timeout) {
+        HashedWheelTimer.Timeout previous = seatHolds.put(openId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * 结束座位保留（玩家重连或宽限期到期）
+     * @return 座位之前是否处于保留中
+     */
+    public boolean releaseHold(String openId) {
+        HashedWheelTimer.Timeout timeout = seatHolds.remove(openId);
+        if (timeout == null) {
+            return false;
+        }
+        timeout.cancel();
+        return true;
+    }
+
+    public boolean isSeatHeld(String openId) {
+        return seatHolds.containsKey(openId);
+    }
+
+    /**
+     * 玩家离开房间，释放座位的重放缓冲和保留计时
+     */
+    public void releaseSeat(String openId) {
+        releaseHold(openId);
+        replayBuffers.remove(openId);
+    }
+
+    public void releaseAllSeats() {
+        for (String openId : seatHolds.keySet()) {
+            releaseHold(openId);
+        }
+        replayBuffers.clear();
+    }
+
+    public void addPlayer(PlayerVO player) {
+        players.add(player);
+    }
+
+    /**
+     * 开局时双方都拿满 10 张牌
+     */
+    public void resetPlayerDecks() {
+        redDeck = FULL_DECK;
+        blueDeck = FULL_DECK;
+    }
+
+    /**
+     * 校验一次出牌：对局进行中、本回合还没出过、牌面合法且还在手里。只在房间信箱内调用
+     * @return 拒绝原因（CardRejectedMessage.REASON_*），可以出牌时返回 null
+     */
+    public String checkPlay(String role, int card) {
+        if (gameState.isGameCompleted()) {
+            return CardRejectedMessage.REASON_INVALID_CARD;
+        }
+        int current = isRed(role) ? gameState.getCurrentRedCard() : gameState.getCurrentBlueCard();
+        if (current != 0) {
+            return CardRejectedMessage.REASON_ALREADY_PLAYED;
+        }
+        if (card < 1 || card > GameState.TEN) {
+            return CardRejectedMessage.REASON_INVALID_CARD;
+        }
+        return validateCard(role, card) ? null : CardRejectedMessage.REASON_CARD_USED;
+    }
+
+    /**
+     * 出牌：从手里拿掉并记入本回合，调用前先 checkPlay
+     */
+    public void play(String role, int card) {
+        removeCard(role, card);
+        gameState.addCard(role, card);
+    }
+
+    /**
+     * 该角色手里是否还有这张牌，牌面不在 1-10 之间一律返回 false
+     */
+    public boolean validateCard(String role, int card) {
+        if (card < 1 || card > GameState.TEN) {
+            return false;
+        }
+        return (deckOf(role) & (1 << (card - 1))) != 0;
+    }
+
+    public void removeCard(String role, int card) {
+        int mask = ~(1 << (card - 1));
+        if (isRed(role)) {
+            redDeck &= mask;
+        } else {
+            blueDeck &= mask;
+        }
+    }
+
+    /**
+     * 该角色手里最小的一张牌，手里没牌返回 0
+     */
+    public int lowestCard(String role) {
+        int deck = deckOf(role);
+        return deck == 0 ? 0 : Integer.numberOfTrailingZeros(deck) + 1;
+    }
+
+    /**
+     * 该角色手里剩下的牌，从小到大
+     */
+    public List<Integer> hand(String role) {
+        int deck = deckOf(role);
+        List<Integer> cards = new ArrayList<>(Integer.bitCount(deck));
+        while (deck != 0) {
+            cards.add(Integer.numberOfTrailingZeros(deck) + 1);
+            deck &= deck - 1;
+        }
+        return cards;
+    }
+
+    private int deckOf(String role) {
+        return isRed(role) ? redDeck : blueDeck;
+    }
+
+    private static boolean isRed(String role) {
+        return GameUtil.RoleEnum.redSide.name().equals(role);
+    }
+}
@@ -0,0 +1,139 @@
+package com.tencard.demo01;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * 房间注册表：统一维护 房间ID -> Room、房间Code -> 房间ID、openId -> 房间ID 三个索引。
+ * 读操作无锁；创建/加入/离开/销毁在同一把锁内完成，保证三个索引始终一致。
+ * Room 自己持有 code，销毁房间是 O(1)，不再遍历所有房间。
+ */
+public class RoomRegistry {
+
+    // 房间ID -> Room 对象映射
+    private final Map<Long, Room> rooms = new ConcurrentHashMap<>();
+    // 房间Code -> 房间ID 映射
+    private final Map<String, Long> roomCode2RoomIdMap = new ConcurrentHashMap<>();
+    // openId -> 房间ID 映射
+    private final Map<String, Long> openId2RoomIdMap = new ConcurrentHashMap<>();
+    // 房间信箱共用的线程池
+    private final Executor roomExecutor;
+
+    public RoomRegistry(Executor roomExecutor) {
+        this.roomExecutor = roomExecutor;
+    }
+
+    public Room getRoom(Long roomId) {
+        return roomId == null ? null : rooms.get(roomId);
+    }
+
+    public Room findByOpenId(String openId) {
+        return getRoom(openId2RoomIdMap.get(openId));
+    }
+
+    public boolean isInRoom(String openId) {
+        return openId2RoomIdMap.containsKey(openId);
+    }
+
+    /**
+     * 按房间号加入房间，房间不存在则创建。
+     * 创建者为蓝方，后加入者为红方；同一 openId 再次加入视为重连，只替换会话。
+     * @return 加入后的房间；房间已满时返回 null
+     */
+    public synchronized Room join(String roomCode, PlayerVO player) {
+        String openId = player.getOpenId();
+        Long roomId = roomCode2RoomIdMap.get(roomCode);
+        Room room = getRoom(roomId);
+        if (roomId != null) {
+            if (room == null || room.getPlayers().size() >= 2) {
+                return null;
+            }
+            PlayerVO existing = findPlayer(room, openId);
+            if (existing == null) {
+                player.setRole(GameUtil.RoleEnum.redSide.toString());
+                player.setMsgCode(GameUtil.RED_JOIN_GAME);
+                room.addPlayer(player);
+            } else {
+                existing.setSession(player.getSession());
+                existing.setSessionId(player.getSessionId());
+            }
+        } else {
+            room = new Room(GameUtil.getNextRomeId(), roomCode, roomExecutor);
+            player.setRole(GameUtil.RoleEnum.blueSide.toString());
+            player.setMsgCode(GameUtil.BlUE_JOIN_GAME);
+            room.addPlayer(player);
+            rooms.put(room.getId(), room);
+            roomCode2RoomIdMap.put(roomCode, room.getId());
+        }
+        bindPlayer(openId, room);
+        return room;
+    }
+
+    /**
+     * 玩家离开房间：解除 openId 绑定并从房间玩家列表移除。
+     * @return 玩家原来所在的房间，不在任何房间时返回 null
+     */
+    public synchronized Room leave(String openId) {
+        Room room = getRoom(openId2RoomIdMap.remove(openId));
+        if (room != null) {
+            room.getPlayers().removeIf(p -> p.getOpenId().equals(openId));
+            room.releaseSeat(openId);
+        }
+        return room;
+    }
+
+    /**
+     * 房间里已没有在线玩家时销毁房间。
+     * @return 是否销毁了房间
+     */
+    public synchronized boolean destroyIfAbandoned(Room room, Predicate<String> isOnline) {
+        boolean hasOtherPlayers = room.getPlayers().stream()
+                .anyMatch(p -> isOnline.test(p.getOpenId()));
+        if (hasOtherPlayers) {
+            return false;
+        }
+        destroy(room);
+        return true;
+    }
+
+    /**
+     * 销毁房间，同时移除房间号和仍绑定在该房间的玩家索引。
+     */
+    public synchronized void destroy(Room room) {
+        if (!rooms.remove(room.getId(), room)) {
+            return;
+        }
+        room.cancelTurnTimer();
+        room.releaseAllSeats();
+        roomCode2RoomIdMap.remove(room.getCode(), room.getId());
+        for (PlayerVO player : room.getPlayers()) {
+            openId2RoomIdMap.remove(player.getOpenId(), room.getId());
+        }
+    }
+
+    private void bindPlayer(String openId, Room room) {
+        Long previous = openId2RoomIdMap.put(openId, room.getId());
+        if (previous != null && !previous.equals(room.getId())) {
+            // 玩家换了房间，从旧房间中移除，避免留下幽灵座位
+            Room oldRoom = rooms.get(previous);
+            if (oldRoom != null) {
+                oldRoom.getPlayers().removeIf(p -> p.getOpenId().equals(openId));
+                oldRoom.releaseSeat(openId);
+                if (oldRoom.getPlayers().isEmpty()) {
+                    destroy(oldRoom);
+                }
+            }
+        }
+    }
+
+    private static PlayerVO findPlayer(Room room, String openId) {
+        for (PlayerVO p : room.getPlayers()) {
+            if (p.getOpenId().equals(openId)) {
+                return p;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,78 @@
+package com.tencard.demo01;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 房间定时：出牌超时与空闲房间回收，都挂在共享时间轮上，每个房间最多各一个待触发任务。
+ */
+@Component
+public class RoomTimers {
+
+    private final HashedWheelTimer timer;
+    private final long turnTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private final AtomicLong turnsExpired = new AtomicLong();
+    private final AtomicLong cardsAutoPlayed = new AtomicLong();
+    private final AtomicLong roomsReaped = new AtomicLong();
+
+    public RoomTimers(HashedWheelTimer timer,
+                      @Value("${xcards.room.turn-timeout-seconds:30}") long turnTimeoutSeconds,
+                      @Value("${xcards.room.idle-timeout-seconds:600}") long idleTimeoutSeconds) {
+        this.timer = timer;
+        this.turnTimeoutMillis = TimeUnit.SECONDS.toMillis(turnTimeoutSeconds);
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+    }
+
+    /**
+     * 开始一个回合的出牌计时
+     */
+    public HashedWheelTimer.Timeout scheduleTurn(Runnable onExpire) {
+        return timer.newTimeout(onExpire, turnTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * delayMillis 之后检查房间是否空闲
+     */
+    public HashedWheelTimer.Timeout scheduleIdleCheck(Runnable check, long delayMillis) {
+        return timer.newTimeout(check, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void recordTurnExpired() {
+        turnsExpired.incrementAndGet();
+    }
+
+    public void recordAutoPlay() {
+        cardsAutoPlayed.incrementAndGet();
+    }
+
+    public void recordRoomReaped() {
+        roomsReaped.incrementAndGet();
+    }
+
+    /**
+     * 超时指标
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("turnTimeoutMillis", turnTimeoutMillis);
+        metrics.put("idleTimeoutMillis", idleTimeoutMillis);
+        metrics.put("turnsExpired", turnsExpired.get());
+        metrics.put("cardsAutoPlayed", cardsAutoPlayed.get());
+        metrics.put("roomsReaped", roomsReaped.get());
+        metrics.put("timerPending", timer.pending());
+        metrics.put("timerExpired", timer.expired());
+        metrics.put("timerCancelled", timer.cancelled());
+        return metrics;
+    }
+}
@@ -0,0 +1,24 @@
+package com.tencard.demo01;
+
+import lombok.Data;
+
+/**
+ * 回合结算消息 round_complete，按接收方视角填写 myCard / oppCard。
+ */
+@Data
+public class RoundCompleteMessage {
+
+    // 没有出牌时的牌面，与 GameState 中空位的取值一致
+    public static final int NO_CARD = 0;
+
+    private String type = GameState.MSG_TYPE_ROUND_COMPLETE;
+    private int round;   // 回合数（1-10）
+    private int myCard;  // 接收方本回合出的牌，未出为 NO_CARD
+    private int oppCard; // 对手本回合出的牌，未出为 NO_CARD
+
+    public RoundCompleteMessage(int round, int myCard, int oppCard) {
+        this.round = round;
+        this.myCard = myCard;
+        this.oppCard = oppCard;
+    }
+}
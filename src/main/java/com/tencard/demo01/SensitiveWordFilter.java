@@ -0,0 +1,171 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 昵称敏感词过滤：内置词 + 本地词库文件编译成一个 Aho-Corasick 自动机，
+ * 昵称检查接口和进房检查共用。匹配前把全角转半角、大写转小写并去掉空白，
+ * "Ａｄ ｍｉｎ" 和 "admin" 视为同一个词。
+ * 词库文件按 reload-interval 检查修改时间，变了就重新编译并整体替换，不需要重启。
+ */
+@Component
+public class SensitiveWordFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(SensitiveWordFilter.class);
+
+    // 内置词，词库文件加载失败时至少还有这些
+    private static final List<String> BUILT_IN_WORDS = Arrays.asList(
+            "管理员", "客服", "草", "艹", "系统", "政府", "admin", "fuck", "shit");
+
+    private final Path wordFile;
+
+    private volatile AhoCorasick automaton;
+    private volatile long loadedModified = -1;
+    private volatile long loadedSize = -1;
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    public SensitiveWordFilter(@Value("${xcards.sensitive-words.file:}") String wordFile) {
+        this.wordFile = wordFile == null || wordFile.trim().isEmpty() ? null : Paths.get(wordFile.trim());
+        this.automaton = compile(BUILT_IN_WORDS);
+    }
+
+    @PostConstruct
+    public void init() {
+        reloadIfChanged();
+        log.info("Sensitive word filter ready, words={}, file={}", automaton.wordCount(), wordFile);
+    }
+
+    /**
+     * 词库文件有变化时重新加载
+     */
+    @Scheduled(fixedDelayString = "${xcards.sensitive-words.reload-interval-ms:10000}")
+    public void reloadIfChanged() {
+        if (wordFile == null) {
+            return;
+        }
+        try {
+            if (!Files.isRegularFile(wordFile)) {
+                return;
+            }
+            long modified = Files.getLastModifiedTime(wordFile).toMillis();
+            long size = Files.size(wordFile);
+            if (modified == loadedModified && size == loadedSize) {
+                return;
+            }
+            Set<String> words = new LinkedHashSet<>(BUILT_IN_WORDS);
+            for (String line : Files.readAllLines(wordFile, StandardCharsets.UTF_8)) {
+                String word = line.trim();
+                // 空行和 # 开头的注释行跳过
+                if (!word.isEmpty() && !word.startsWith("#")) {
+                    words.add(word);
+                }
+            }
+            automaton = compile(words);
+            loadedModified = modified;
+            loadedSize = size;
+            reloads.incrementAndGet();
+            log.info("Loaded {} sensitive words from {}", automaton.wordCount(), wordFile);
+        } catch (IOException e) {
+            log.error("Failed to load sensitive words from {}, keeping current list", wordFile, e);
+        }
+    }
+
+    /**
+     * 查找文本中第一个敏感词
+     * @return 命中的词（规范化后的形式），没有命中返回 null
+     */
+    public String findFirst(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        checks.incrementAndGet();
+        char[] normalized = new char[text.length()];
+        int length = normalize(text, normalized);
+        String word = automaton.findFirst(normalized, length);
+        if (word != null) {
+            hits.incrementAndGet();
+        }
+        return word;
+    }
+
+    public boolean containsSensitiveWord(String text) {
+        return findFirst(text) != null;
+    }
+
+    /**
+     * 敏感词过滤指标
+     */
+    public Map<String, Object> metrics() {
+        AhoCorasick current = automaton;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("file", wordFile == null ? null : wordFile.toString());
+        metrics.put("words", current.wordCount());
+        metrics.put("nodes", current.nodeCount());
+        metrics.put("reloads", reloads.get());
+        metrics.put("checks", checks.get());
+        metrics.put("hits", hits.get());
+        return metrics;
+    }
+
+    /**
+     * 规范化后的文本，与敏感词匹配时使用同一规则，可作为按内容缓存的 key
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        char[] buffer = new char[text.length()];
+        return new String(buffer, 0, normalize(text, buffer));
+    }
+
+    private static AhoCorasick compile(Iterable<String> words) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String word : words) {
+            normalized.add(normalize(word));
+        }
+        return new AhoCorasick(normalized);
+    }
+
+    /**
+     * 规范化写入 out，返回写入的字符数：全角转半角、转小写、去掉各种空白和零宽字符
+     */
+    private static int normalize(String text, char[] out) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '\uFF01' && c <= '\uFF5E') {
+                c = (char) (c - 0xFEE0);
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c) || isZeroWidth(c)) {
+                continue;
+            }
+            out[length++] = Character.toLowerCase(c);
+        }
+        return length;
+    }
+
+    private static boolean isZeroWidth(char c) {
+        return (c >= '\u200B' && c <= '\u200D') || c == '\uFEFF';
+    }
+}
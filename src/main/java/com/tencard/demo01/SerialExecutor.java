@@ -0,0 +1,68 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 串行执行器（房间信箱）：提交的任务按顺序逐个执行，但不独占线程，
+ * 而是借用共享线程池。每个房间一个实例，房间之间可以在多核上并行推进，
+ * 同一房间内的事件不需要任何锁。
+ */
+public class SerialExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+    // 每次占用线程最多处理的任务数，避免繁忙房间长期霸占共享线程
+    private static final int MAX_BATCH = 64;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Executor delegate;
+
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("SerialExecutor task failed", t);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
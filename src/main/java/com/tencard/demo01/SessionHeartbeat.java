@@ -0,0 +1,198 @@
+package com.tencard.demo01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * /match 心跳：服务端定时给每个会话发 WebSocket ping，收到 pong（或任何消息）即视为存活。
+ * 移动端断网后 TCP 连接可能长时间不报错、isOpen() 仍为 true，超过 timeout 没有回应的会话
+ * 一批交给 evictor 走正常的断线流程，会话表和房间表里只留下真正在线的玩家。
+ * 扫描由共享时间轮按 interval 触发，在单独的心跳线程上执行，不占用时间轮线程。
+ * Tomcat 的 sendPing 是阻塞发送，会等同一会话在途的异步发送完成（最长为阻塞发送超时），
+ * 所以出站管道里还有帧在途或排队的会话本轮不发 ping，只记为可疑，真卡住了由超时淘汰，
+ * 一个卡住的会话不会拖住整轮扫描。
+ */
+@Component
+public class SessionHeartbeat {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionHeartbeat.class);
+
+    private final HashedWheelTimer timer;
+    private final OutboundPipeline outboundPipeline;
+    private final long intervalMillis;
+    private final long timeoutMillis;
+
+    // sessionId -> 存活状态
+    private final Map<String, Liveness> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService sweeper = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "session-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Consumer<List<Session>> evictor;
+    private volatile boolean running = true;
+
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong pingsFailed = new AtomicLong();
+    private final AtomicLong pingsSkipped = new AtomicLong();
+    private final AtomicLong pongsReceived = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public SessionHeartbeat(HashedWheelTimer timer,
+                            OutboundPipeline outboundPipeline,
+                            @Value("${xcards.heartbeat.interval-seconds:20}") long intervalSeconds,
+                            @Value("${xcards.heartbeat.timeout-seconds:60}") long timeoutSeconds) {
+        this.timer = timer;
+        this.outboundPipeline = outboundPipeline;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalMillis > 0) {
+            timer.newTimeout(this::tick, intervalMillis, TimeUnit.MILLISECONDS);
+            log.info("Session heartbeat started, interval={}ms, timeout={}ms", intervalMillis, timeoutMillis);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 失联会话的处理方，参数为本轮扫描发现的所有失联会话
+     */
+    public void setEvictor(Consumer<List<Session>> evictor) {
+        this.evictor = evictor;
+    }
+
+    public void register(Session session) {
+        sessions.put(session.getId(), new Liveness(session));
+    }
+
+    public void release(Session session) {
+        if (session != null) {
+            sessions.remove(session.getId());
+        }
+    }
+
+    /**
+     * 收到 pong
+     */
+    public void onPong(Session session) {
+        pongsReceived.incrementAndGet();
+        markAlive(session);
+    }
+
+    /**
+     * 收到任何消息都说明连接还活着
+     */
+    public void markAlive(Session session) {
+        Liveness liveness = sessions.get(session.getId());
+        if (liveness != null) {
+            liveness.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    private void tick() {
+        if (!running) {
+            return;
+        }
+        sweeper.execute(this::sweep);
+        try {
+            timer.newTimeout(this::tick, intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 时间轮已停止，应用正在关闭
+        }
+    }
+
+    void sweep() {
+        long now = System.currentTimeMillis();
+        List<Session> dead = new ArrayList<>();
+        for (Liveness liveness : sessions.values()) {
+            Session session = liveness.session;
+            if (!session.isOpen()) {
+                sessions.remove(session.getId(), liveness);
+            } else if (now - liveness.lastSeen > timeoutMillis) {
+                sessions.remove(session.getId(), liveness);
+                dead.add(session);
+            } else if (outboundPipeline.isBusy(session)) {
+                // 发送在途，ping 会阻塞在这个会话上；不 ping，靠超时判断
+                pingsSkipped.incrementAndGet();
+            } else {
+                ping(session, now);
+            }
+        }
+        if (dead.isEmpty()) {
+            return;
+        }
+        evicted.addAndGet(dead.size());
+        log.info("Evicting {} sessions without heartbeat for {}ms", dead.size(), timeoutMillis);
+        Consumer<List<Session>> handler = evictor;
+        if (handler != null) {
+            try {
+                handler.accept(dead);
+            } catch (Exception e) {
+                log.error("Heartbeat eviction failed", e);
+            }
+        }
+    }
+
+    private void ping(Session session, long now) {
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES);
+        payload.putLong(now).flip();
+        try {
+            session.getAsyncRemote().sendPing(payload);
+            pingsSent.incrementAndGet();
+        } catch (Exception e) {
+            // 发送失败不立即判死，超时后统一淘汰
+            pingsFailed.incrementAndGet();
+            log.debug("Ping failed for session {}", session.getId(), e);
+        }
+    }
+
+    /**
+     * 心跳指标
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("intervalMillis", intervalMillis);
+        metrics.put("timeoutMillis", timeoutMillis);
+        metrics.put("sessions", sessions.size());
+        metrics.put("pingsSent", pingsSent.get());
+        metrics.put("pingsFailed", pingsFailed.get());
+        metrics.put("pingsSkipped", pingsSkipped.get());
+        metrics.put("pongsReceived", pongsReceived.get());
+        metrics.put("evicted", evicted.get());
+        return metrics;
+    }
+
+    private static final class Liveness {
+        private final Session session;
+        private volatile long lastSeen = System.currentTimeMillis();
+
+        Liveness(Session session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tencard.demo01;
+
+import javax.websocket.Session;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * /match 会话注册表：openId <-> Session 双向索引。
+ * 两个方向都是 O(1) 查询，替代原来按 session 遍历 openId2SessionMap 的做法。
+ */
+public class SessionRegistry {
+
+    // openId -> 会话
+    private final Map<String, Session> openId2Session = new ConcurrentHashMap<>();
+    // sessionId -> openId
+    private final Map<String, String> sessionId2OpenId = new ConcurrentHashMap<>();
+
+    /**
+     * 绑定 openId 与会话，返回被替换掉的旧会话（没有则为 null）。
+     * 旧会话的反向索引会一并移除，保证两个方向一致。
+     */
+    public synchronized Session register(String openId, Session session) {
+        Session oldSession = openId2Session.put(openId, session);
+        if (oldSession != null && !oldSession.getId().equals(session.getId())) {
+            sessionId2OpenId.remove(oldSession.getId());
+        }
+        sessionId2OpenId.put(session.getId(), openId);
+        return oldSession;
+    }
+
+    /**
+     * 按会话反查 openId，O(1)。
+     */
+    public String findOpenId(Session session) {
+        return sessionId2OpenId.get(session.getId());
+    }
+
+    public Session getSession(String openId) {
+        return openId2Session.get(openId);
+    }
+
+    public boolean isOnline(String openId) {
+        return openId2Session.containsKey(openId);
+    }
+
+    /**
+     * 解除 openId 的当前会话绑定。
+     */
+    public synchronized Session unregister(String openId) {
+        Session session = openId2Session.remove(openId);
+        if (session != null) {
+            sessionId2OpenId.remove(session.getId());
+        }
+        return session;
+    }
+
+    /**
+     * 仅当 openId 当前绑定的仍是该会话时才解除绑定，
+     * 避免旧连接的 @OnClose 把刚建立的新连接清掉。
+     */
+    public synchronized boolean unregister(String openId, Session session) {
+        Session current = openId2Session.get(openId);
+        if (current == null || !current.getId().equals(session.getId())) {
+            sessionId2OpenId.remove(session.getId(), openId);
+            return false;
+        }
+        openId2Session.remove(openId);
+        sessionId2OpenId.remove(session.getId());
+        return true;
+    }
+}
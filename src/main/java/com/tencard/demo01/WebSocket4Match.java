@@ -1,8 +1,10 @@
 package com.tencard.demo01;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.tencard.demo01.saveData.GameSettlementService;
+import com.tencard.demo01.saveData.SessionTokenService;
 import com.tencard.demo01.saveData.UserService;
+import com.tencard.demo01.saveData.WinStreakTracker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -10,16 +12,21 @@ import org.springframework.stereotype.Component;
 import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component
-@ServerEndpoint("/match")
+@ServerEndpoint(value = "/match", decoders = InboundCommandDecoder.class,
+        subprotocols = BinaryProtocol.SUBPROTOCOL)
 // @Slf4j // Keep this commented out to ensure manual logger is used
 public class WebSocket4Match {
 
@@ -28,44 +35,129 @@ public class WebSocket4Match {
     // Service needs to be static to be accessed from a non-Spring-managed WebSocket endpoint
     private static UserService userService;
 
+    private static GameSettlementService settlementService;
+
+    private static GameHistoryStore gameHistoryStore;
+
+    private static WinStreakTracker winStreakTracker;
+
+    private static RoomTimers roomTimers;
+
+    private static MatchmakingEngine matchmakingEngine;
+
+    private static ReconnectManager reconnectManager;
+
+    private static SessionHeartbeat sessionHeartbeat;
+
+    private static SensitiveWordFilter sensitiveWordFilter;
+
+    private static SessionTokenService sessionTokenService;
+
     @Autowired
     public void setUserService(UserService userService) {
         WebSocket4Match.userService = userService;
     }
 
-    // openId -> 会话映射
-    private static final Map<String, Session> openId2SessionMap = new ConcurrentHashMap<>();
-    // 房间ID -> Room 对象映射
-    private static final Map<Long, Room> rooms = new ConcurrentHashMap<>();
-    // openId -> 房间ID 映射
-    private static final Map<String, Long> openId2RoomIdMap = new ConcurrentHashMap<>();
-    // 房间Code -> 房间ID 映射
-    private static final Map<String, Long> roomCode2RoomIdMap = new ConcurrentHashMap<>();
-    // 玩家游戏记录：openId -> List<GameState>
-    private static final Map<String, List<GameState>> playerGameRecords = new ConcurrentHashMap<>();
+    @Autowired
+    public void setSettlementService(GameSettlementService settlementService) {
+        WebSocket4Match.settlementService = settlementService;
+    }
+
+    @Autowired
+    public void setGameHistoryStore(GameHistoryStore gameHistoryStore) {
+        WebSocket4Match.gameHistoryStore = gameHistoryStore;
+    }
+
+    @Autowired
+    public void setWinStreakTracker(WinStreakTracker winStreakTracker) {
+        WebSocket4Match.winStreakTracker = winStreakTracker;
+    }
+
+    @Autowired
+    public void setRoomTimers(RoomTimers roomTimers) {
+        WebSocket4Match.roomTimers = roomTimers;
+    }
+
+    @Autowired
+    public void setMatchmakingEngine(MatchmakingEngine matchmakingEngine) {
+        WebSocket4Match.matchmakingEngine = matchmakingEngine;
+        matchmakingEngine.setMatchListener(this::onQuickMatched);
+    }
+
+    @Autowired
+    public void setReconnectManager(ReconnectManager reconnectManager) {
+        WebSocket4Match.reconnectManager = reconnectManager;
+    }
+
+    @Autowired
+    public void setSessionHeartbeat(SessionHeartbeat sessionHeartbeat) {
+        WebSocket4Match.sessionHeartbeat = sessionHeartbeat;
+        sessionHeartbeat.setEvictor(this::evictDeadSessions);
+    }
+
+    @Autowired
+    public void setSensitiveWordFilter(SensitiveWordFilter sensitiveWordFilter) {
+        WebSocket4Match.sensitiveWordFilter = sensitiveWordFilter;
+    }
+
+    @Autowired
+    public void setSessionTokenService(SessionTokenService sessionTokenService) {
+        WebSocket4Match.sessionTokenService = sessionTokenService;
+    }
+
+    // openId <-> 会话 双向映射
+    private static final SessionRegistry sessionRegistry = new SessionRegistry();
+    // 房间事件共享线程池：各房间通过自己的信箱串行使用，房间之间并行
+    private static final ExecutorService roomExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors() * 2, new RoomThreadFactory());
+    // 房间注册表：房间ID / 房间Code / openId 三个索引
+    private static final RoomRegistry roomRegistry = new RoomRegistry(roomExecutor);
+    // 快速匹配房间号序号
+    private static final AtomicLong quickMatchSeq = new AtomicLong();
     // 正在处理离开房间的openId集合，防止重复处理
     private static final Set<String> leavingOpenIds = ConcurrentHashMap.newKeySet();
 
     @OnOpen
     public void onOpen(Session session) {
+        // 优先用登录时签发的会话令牌确认身份，校验不查库；没有令牌时按配置决定是否接受裸 openId
+        String token = firstParam(session, "token");
         String openId = null;
-        try {
-            openId = session.getRequestParameterMap().get("openId").get(0);
-        } catch (Exception e) {
-            log.error("/match - Could not get openId from session, closing connection", e);
-            try {
-                session.close();
-            } catch (IOException ioException) {
-                log.error("Error closing session", ioException);
+        if (token != null) {
+            openId = sessionTokenService.verify(token);
+            if (openId == null) {
+                log.warn("/match - Invalid or expired session token, closing connection");
+                closeWithPolicyViolation(session, "invalid session token");
+                return;
             }
+            session.getUserProperties().put(SessionTokenService.OPEN_ID_ATTRIBUTE, openId);
+        } else if (!sessionTokenService.isRawOpenIdAllowed()) {
+            log.warn("/match - Session token required, closing connection");
+            closeWithPolicyViolation(session, "session token required");
             return;
+        } else {
+            try {
+                openId = session.getRequestParameterMap().get("openId").get(0);
+            } catch (Exception e) {
+                log.error("/match - Could not get openId from session, closing connection", e);
+                try {
+                    session.close();
+                } catch (IOException ioException) {
+                    log.error("Error closing session", ioException);
+                }
+                return;
+            }
+            openId = cleanOpenId(openId);
+            sessionTokenService.recordRawOpenId();
         }
 
-        openId = cleanOpenId(openId);
-        log.info("/match - Open ID: {} connected with session ID: {}", openId, session.getId());
+        BinaryProtocol.negotiate(session);
+        log.info("/match - Open ID: {} connected with session ID: {}, binary: {}, token: {}",
+                openId, session.getId(), BinaryProtocol.isBinary(session), token != null);
 
-        // ✅ 关键修复：在连接建立时，确保用户在数据库中存在
-        if (userService != null) {
+        // ✅ 关键修复：在连接建立时，确保用户在数据库中存在（令牌登录时已经建过用户，不再查库）
+        if (token != null) {
+            log.debug("User {} authenticated by session token, skipping database check", openId);
+        } else if (userService != null) {
             try {
                 userService.findOrCreateUserByOpenId(openId);
                 log.info("✅ User ensured in database for openId: {}", openId);
@@ -76,7 +168,8 @@ public class WebSocket4Match {
             log.error("❌ UserService is not injected. Cannot ensure user existence on connect.");
         }
 
-        Session oldSession = openId2SessionMap.put(openId, session);
+        sessionHeartbeat.register(session);
+        Session oldSession = sessionRegistry.register(openId, session);
         if (oldSession != null && !oldSession.equals(session)) {
             try {
                 oldSession.close();
@@ -85,110 +178,243 @@ public class WebSocket4Match {
                 log.error("Error closing old session for openId: {}", openId, e);
             }
         }
+
+        // 带着 lastSeq 重连且座位还在：直接恢复对局，不用重新进房
+        Long lastSeq = lastSeqParam(session);
+        Room room = roomRegistry.findByOpenId(openId);
+        if (room != null && lastSeq != null) {
+            String seatOpenId = openId;
+            room.execute(() -> resumeSeat(room, seatOpenId, session, lastSeq));
+        }
     }
 
     @OnClose
     public void onClose(Session session) {
+        GameUtil.releaseSession(session);
+        sessionHeartbeat.release(session);
         String openId = findOpenIdBySession(session);
         if (openId == null) {
             log.warn("/match - No openId found in the close request");
             return;
         }
-        Session currentSession = openId2SessionMap.get(openId);
-        if (session.equals(currentSession)) {
+        // 只处理连接层清理，不直接调用handleLeaveRoom
+        // 这样可以避免正常的连接断开（如页面刷新）触发不必要的业务逻辑
+        if (sessionRegistry.unregister(openId, session)) {
             log.info("/match - Open ID: {} disconnected", openId);
-            
-            // 只处理连接层清理，不直接调用handleLeaveRoom
-            // 这样可以避免正常的连接断开（如页面刷新）触发不必要的业务逻辑
-            openId2SessionMap.remove(openId);
-            
-            // 检查是否真的需要处理离开房间逻辑
-            Long roomId = openId2RoomIdMap.get(openId);
-            if (roomId != null) {
-                Room room = rooms.get(roomId);
-                if (room != null && room.getPlayers().size() == 2) {
-                    // 只在游戏进行中或等待状态下才通知对方离开
-                    // 避免在正常游戏流程中的连接波动造成误报
-                    handlePlayerDisconnect(openId);
-                } else {
-                    // 单人房间或房间不存在，直接清理
-                    cleanupPlayerData(openId);
-                }
-            }
+            onDisconnected(openId, session);
         }
     }
 
     @OnError
     public void onError(Session session, Throwable throwable) {
         log.error("/match - WebSocket error", throwable);
+        GameUtil.releaseSession(session);
+        sessionHeartbeat.release(session);
         String openId = findOpenIdBySession(session);
-        if (openId != null) {
-            openId2SessionMap.remove(openId);
-            handleLeaveRoom(openId);
+        // 传输层出错和正常断开一样处理：对局中的座位先保留，等待重连
+        if (openId != null && sessionRegistry.unregister(openId, session)) {
+            onDisconnected(openId, session);
+        }
+    }
+
+    private void onDisconnected(String openId, Session session) {
+        matchmakingEngine.cancel(openId);
+        Room room = roomRegistry.findByOpenId(openId);
+        if (room == null) {
+            return;
+        }
+        room.execute(() -> {
+            if (room.getPlayers().size() != 2) {
+                // 单人房间，直接清理
+                cleanupPlayerData(openId);
+            } else if (reconnectManager.isEnabled()) {
+                holdSeat(room, openId, session);
+            } else {
+                handlePlayerDisconnect(openId);
+            }
+        });
+    }
+
+    private static Long lastSeqParam(Session session) {
+        String value = firstParam(session, "lastSeq");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
+    private static String firstParam(Session session, String name) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static void closeWithPolicyViolation(Session session, String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, reason));
+        } catch (IOException e) {
+            log.error("Error closing session", e);
+        }
+    }
+
+    @OnMessage
+    public void onMessage(InboundCommand command, Session session) {
+        sessionHeartbeat.markAlive(session);
+        dispatch(command, session);
+    }
+
+    /**
+     * 协商了二进制协议的客户端发来的定长帧
+     */
     @OnMessage
-    public void onMessage(String message, Session session) {
+    public void onBinaryMessage(ByteBuffer frame, Session session) {
+        sessionHeartbeat.markAlive(session);
+        dispatch(BinaryProtocol.decode(frame), session);
+    }
+
+    /**
+     * 客户端对心跳 ping 的回应
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, Session session) {
+        sessionHeartbeat.onPong(session);
+    }
+
+    /**
+     * 心跳超时的会话按断线处理（对局中的座位照常保留等待重连），再关闭底层连接
+     */
+    private void evictDeadSessions(List<Session> dead) {
+        for (Session session : dead) {
+            GameUtil.releaseSession(session);
+            String openId = sessionRegistry.findOpenId(session);
+            if (openId != null && sessionRegistry.unregister(openId, session)) {
+                log.info("/match - Open ID: {} heartbeat timed out", openId);
+                onDisconnected(openId, session);
+            }
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "heartbeat timeout"));
+            } catch (Exception e) {
+                log.warn("/match - Error closing dead session {}", session.getId(), e);
+            }
+        }
+    }
+
+    private void dispatch(InboundCommand command, Session session) {
         String openId = findOpenIdBySession(session);
         if (openId == null) {
             log.warn("/match - No openId found in the message request");
             return;
         }
-        log.info("/match - 收到消息：{}", message);
+        log.info("/match - 收到消息：{}", command);
         try {
-            JSONObject jsonMessage = JSON.parseObject(message);
-            String type = jsonMessage.getString("type");
-
-            switch (type) {
-                case "join_room":
-                    PlayerVO user = JSON.parseObject(message, PlayerVO.class);
-                    if (user.getOpenId() == null || user.getRoomCode() == null) {
-                        log.error("/match - Invalid join_room message: openId or roomCode is null");
+            switch (command.getType()) {
+                case JOIN_ROOM:
+                    PlayerVO user = ((InboundCommand.JoinRoom) command).getPlayer();
+                    // 以会话绑定的 openId 为准，不信任消息里带的 openId
+                    user.setOpenId(openId);
+                    if (user.getRoomCode() == null) {
+                        log.error("/match - Invalid join_room message: roomCode is null");
                         return;
                     }
-                    // Ensure openId is cleaned before use
-                    user.setOpenId(cleanOpenId(user.getOpenId()));
                     user.setSession(session);
                     user.setSessionId(session.getId());
-                    handleJoinRoom(user);
+                    matchmakingEngine.cancel(user.getOpenId());
+                    handleJoinRoom(user, ((InboundCommand.JoinRoom) command).getLastSeq());
                     break;
-                case "play_card":
-                    if (jsonMessage.getString("openId") == null || jsonMessage.getInteger("card") == null) {
-                        log.error("/match - Invalid play_card message: openId or card is null");
+                case QUICK_MATCH:
+                    PlayerVO player = ((InboundCommand.QuickMatch) command).getPlayer();
+                    // 以会话绑定的 openId 为准，房间号由匹配结果决定
+                    player.setOpenId(openId);
+                    player.setRoomCode(null);
+                    player.setSession(session);
+                    player.setSessionId(session.getId());
+                    handleQuickMatch(player);
+                    break;
+                case QUICK_MATCH_CANCEL:
+                    if (matchmakingEngine.cancel(openId)) {
+                        GameUtil.sendText(session, OutboundMessages.QUICK_MATCH_CANCELLED);
+                    }
+                    break;
+                case PLAY_CARD:
+                    InboundCommand.PlayCard playCard = (InboundCommand.PlayCard) command;
+                    if (playCard.getCard() == null) {
+                        log.error("/match - Invalid play_card message: card is null");
                         return;
                     }
-                    handlePlayCard(cleanOpenId(jsonMessage.getString("openId")), jsonMessage.getInteger("card"));
+                    // 只能出自己的牌：出牌人一律是会话绑定的 openId，不看消息内容
+                    runInRoom(openId, () -> handlePlayCard(openId, playCard.getCard()));
+                    break;
+                case ACK:
+                    // 确认不算玩家操作，不刷新房间活跃时间
+                    long seq = ((InboundCommand.Ack) command).getSeq();
+                    Room ackRoom = roomRegistry.findByOpenId(openId);
+                    if (ackRoom != null) {
+                        ackRoom.execute(() -> {
+                            ReplayBuffer buffer = ackRoom.getReplayBuffer(openId);
+                            if (buffer != null) {
+                                buffer.ack(seq);
+                            }
+                        });
+                    }
                     break;
-                case "leave_room":
-                    handleLeaveRoom(openId);
+                case LEAVE_ROOM:
+                    runInRoom(openId, () -> handleLeaveRoom(openId));
                     break;
-                case "rematch_request":
-                    handleRematchRequest(openId);
+                case REMATCH_REQUEST:
+                    runInRoom(openId, () -> handleRematchRequest(openId));
                     break;
-                case "rematch_accept":
-                    handleRematchAccept(openId);
+                case REMATCH_ACCEPT:
+                    runInRoom(openId, () -> handleRematchAccept(openId));
                     break;
-                case "rematch_reject":
-                    handleRematchReject(openId);
+                case REMATCH_REJECT:
+                    runInRoom(openId, () -> handleRematchReject(openId));
                     break;
                 default:
-                    log.warn("/match - Unknown message type: {}", type);
+                    log.warn("/match - Unknown message: {}", command);
             }
         } catch (Exception e) {
-            log.error("/match - Error processing message: {}", message, e);
+            log.error("/match - Error processing message: {}", command, e);
         }
     }
 
-    private String findOpenIdBySession(Session session) {
-        for (Map.Entry<String, Session> entry : openId2SessionMap.entrySet()) {
-            if (entry.getValue().equals(session)) {
-                log.debug("/match - Found openId: {} for session: {}", entry.getKey(), session.getId());
-                return entry.getKey();
+    /**
+     * 连接是否通过会话令牌确认了身份；只有这样的连接才允许写豆子、战绩和昵称
+     */
+    private static boolean isVerified(Session session) {
+        return session != null && session.getUserProperties().containsKey(SessionTokenService.OPEN_ID_ATTRIBUTE);
+    }
+
+    private static boolean isVerified(List<PlayerVO> players) {
+        for (PlayerVO player : players) {
+            if (!isVerified(player.getSession())) {
+                return false;
             }
         }
-        log.warn("/match - No openId found for session: {}", session.getId());
-        return null;
+        return true;
+    }
+
+    private String findOpenIdBySession(Session session) {
+        String openId = sessionRegistry.findOpenId(session);
+        if (openId == null) {
+            log.warn("/match - No openId found for session: {}", session.getId());
+        }
+        return openId;
+    }
+
+    /**
+     * 将事件投递到玩家所在房间的信箱串行执行；玩家不在房间内时直接在当前线程处理。
+     */
+    private void runInRoom(String openId, Runnable event) {
+        Room room = roomRegistry.findByOpenId(openId);
+        if (room != null) {
+            room.touch();
+            room.execute(event);
+        } else {
+            event.run();
+        }
     }
 
     // 清洗 openId，去掉可能的查询参数格式
@@ -202,9 +428,74 @@ public class WebSocket4Match {
         return openId;
     }
 
-    private void handleJoinRoom(PlayerVO user) {
+    private void handleJoinRoom(PlayerVO user, Long lastSeq) {
+        // 已经坐在这个对局里的玩家是断线重连，恢复座位而不是重新进房
+        Room seated = roomRegistry.findByOpenId(user.getOpenId());
+        if (seated != null && seated.getCode().equals(user.getRoomCode()) && seated.getPlayers().size() == 2) {
+            seated.execute(() -> resumeSeat(seated, user.getOpenId(), user.getSession(), lastSeq));
+            return;
+        }
+        if (preparePlayer(user)) {
+            enterRoom(user);
+        }
+    }
+
+    private void handleQuickMatch(PlayerVO user) {
+        if (!preparePlayer(user)) {
+            return;
+        }
+        // 豆子不够一局的直接拒绝，不先回复等待中
+        if (settlementService.availableBean(user.getOpenId()) < matchmakingEngine.getMinBean()) {
+            GameUtil.sendText(user.getSession(), OutboundMessages.BEAN_NOT_ENOUGH_FOR_MATCH);
+            return;
+        }
+        GameUtil.sendText(user.getSession(), OutboundMessages.QUICK_MATCH_WAITING);
+        enqueueForMatch(user);
+    }
+
+    private void enqueueForMatch(PlayerVO user) {
+        com.tencard.demo01.saveData.UserVO stats = userService.findOrCreateUserByOpenId(user.getOpenId());
+        boolean queued = matchmakingEngine.enqueue(user, settlementService.availableBean(user.getOpenId()),
+                stats.getWins() == null ? 0 : stats.getWins(), stats.getLosses() == null ? 0 : stats.getLosses());
+        if (!queued) {
+            GameUtil.sendText(user.getSession(), OutboundMessages.BEAN_NOT_ENOUGH_FOR_MATCH);
+        }
+    }
+
+    /**
+     * 匹配成功：两人进入同一个新房间，先排队的一方建房为蓝方。
+     * 有一方已经断线时，另一方重新排队。
+     */
+    private void onQuickMatched(PlayerVO first, PlayerVO second) {
+        boolean firstOnline = isCurrentSession(first);
+        boolean secondOnline = isCurrentSession(second);
+        if (!firstOnline || !secondOnline) {
+            if (firstOnline) {
+                enqueueForMatch(first);
+            }
+            if (secondOnline) {
+                enqueueForMatch(second);
+            }
+            return;
+        }
+        String roomCode = "qm" + quickMatchSeq.incrementAndGet();
+        first.setRoomCode(roomCode);
+        second.setRoomCode(roomCode);
+        enterRoom(first);
+        enterRoom(second);
+    }
+
+    private boolean isCurrentSession(PlayerVO player) {
+        Session session = sessionRegistry.getSession(player.getOpenId());
+        return session != null && session == player.getSession() && session.isOpen();
+    }
+
+    /**
+     * 进房前的准备：确保用户存在、检查并保存昵称、分配 userCode
+     * @return 是否可以进房（或进入匹配队列）
+     */
+    private boolean preparePlayer(PlayerVO user) {
         String openId = user.getOpenId();
-        String roomCode = user.getRoomCode();
         String nickname = user.getNickName();
 
         // ✅ 关键修复：在加入房间时，再次确保用户存在，作为双重保障
@@ -225,24 +516,23 @@ public class WebSocket4Match {
         if (nickname == null || nickname.trim().isEmpty()) {
             log.warn("🔥 昵称为空，拒绝加入房间");
             sendErrorMessage(user.getSession(), "昵称不能为空");
-            return;
+            return false;
         }
 
-        // 简单的敏感词检查
-        String[] sensitiveWords = {"系统", "管理员", "admin", "fuck", "shit", "政府"};
-        String lowerNickname = nickname.toLowerCase();
-        for (String word : sensitiveWords) {
-            if (lowerNickname.contains(word.toLowerCase())) {
-                log.warn("🔥 昵称包含敏感词，拒绝加入房间: {}", nickname);
-                sendErrorMessage(user.getSession(), "昵称包含敏感词，请重新输入");
-                return;
-            }
+        // 敏感词检查
+        String sensitiveWord = sensitiveWordFilter.findFirst(nickname);
+        if (sensitiveWord != null) {
+            log.warn("🔥 昵称包含敏感词 {}，拒绝加入房间: {}", sensitiveWord, nickname);
+            sendErrorMessage(user.getSession(), "昵称包含敏感词，请重新输入");
+            return false;
         }
 
         log.info("🔥 昵称检查通过: {}", nickname);
 
-        // Persist the nickname to the database
-        if (userService != null) {
+        // Persist the nickname to the database（裸 openId 连接身份未经校验，昵称只在本局使用，不落库）
+        if (!isVerified(user.getSession())) {
+            log.info("Session for openId {} is not token-verified, nickname is not persisted", openId);
+        } else if (userService != null) {
             try {
                 userService.updateUserNickname(openId, nickname);
                 log.info("✅ Nickname updated successfully for openId: {}", openId);
@@ -256,87 +546,63 @@ public class WebSocket4Match {
 
         user.setWinRate(49);
         user.setUserCode(GameUtil.getNextUserCode());
+        return true;
+    }
 
-        if (roomCode2RoomIdMap.containsKey(roomCode)) {
-            Long roomId = roomCode2RoomIdMap.get(roomCode);
-            Room room = rooms.get(roomId);
-            if (room == null || room.getPlayers().size() >= 2) {
-                PlayerVO response = new PlayerVO();
-                response.setType("room_full");
-                GameUtil.sendMessage(user.getSession(), response);
-                return;
-            }
+    /**
+     * 按 user.roomCode 进入房间
+     */
+    private void enterRoom(PlayerVO user) {
+        Room room = roomRegistry.join(user.getRoomCode(), user);
+        if (room == null) {
+            PlayerVO response = new PlayerVO();
+            response.setType("room_full");
+            GameUtil.sendMessage(user.getSession(), response);
+            return;
+        }
+        room.touch();
+        if (room.armIdleCheck()) {
+            scheduleIdleCheck(room, roomTimers.getIdleTimeoutMillis());
+        }
+        room.execute(() -> onPlayerJoined(room));
+    }
 
-            boolean isReconnect = room.getPlayers().stream()
-                    .anyMatch(p -> p.getOpenId().equals(openId));
-            if (!isReconnect) {
-                user.setRole(GameUtil.RoleEnum.redSide.toString());
-                user.setMsgCode(GameUtil.RED_JOIN_GAME);
-                room.addPlayer(user);
-            } else {
-                room.getPlayers().stream()
-                        .filter(p -> p.getOpenId().equals(openId))
-                        .forEach(p -> {
-                            p.setSession(user.getSession());
-                            p.setSessionId(user.getSessionId());
-                        });
+    /**
+     * 玩家加入后的房间逻辑，在房间信箱中执行。
+     */
+    private void onPlayerJoined(Room room) {
+        Long roomId = room.getId();
+
+        // 房间满员时发送统一的game_ready消息
+        if (room.getPlayers().size() == 2) {
+            // 检查双方豆子是否充足
+            if (!hasEnoughBean(room)) {
+                broadcastToRoom(room, OutboundMessages.BEAN_NOT_ENOUGH_FOR_GAME);
+                log.warn("Game start failed for room {}: bean not enough.", roomId);
+                return; // 阻止游戏开始
             }
-            openId2RoomIdMap.put(openId, roomId);
-
-            // 房间满员时发送统一的game_ready消息
-            if (room.getPlayers().size() == 2) {
-                // 检查双方豆子是否充足
-                PlayerVO player1 = room.getPlayers().get(0);
-                PlayerVO player2 = room.getPlayers().get(1);
-                com.tencard.demo01.saveData.UserVO user1 = userService.findOrCreateUserByOpenId(player1.getOpenId());
-                com.tencard.demo01.saveData.UserVO user2 = userService.findOrCreateUserByOpenId(player2.getOpenId());
-
-                Integer betAmount = room.getGameState().getBet();
-                if (user1.getBean() < betAmount || user2.getBean() < betAmount) {
-                    JSONObject errorMsg = new JSONObject();
-                    errorMsg.put("type", "bean_not_enough");
-                    errorMsg.put("message", "有玩家豆子不足，无法开始游戏");
-                    broadcastToRoom(room, errorMsg);
-                    log.warn("Game start failed for room {}: bean not enough.", roomId);
-                    return; // 阻止游戏开始
-                }
 
-                // 准备游戏状态
-                room.getGameState().setRoomId(room.getId());
-                room.resetPlayerDecks();
-                
-                // 发送游戏准备消息，包含所有玩家信息和游戏开始指令
-                JSONObject gameReadyMessage = new JSONObject();
-                gameReadyMessage.put("type", "game_ready");
-                gameReadyMessage.put("players", room.getPlayers());
-                gameReadyMessage.put("roomId", room.getId());
-                broadcastToRoom(room, gameReadyMessage);
-                
-                log.info("/match - Game ready for room {}, 2 players joined", roomId);
-            } else {
-                // 只有一个玩家时发送等待状态
-                broadcastRoomState(room);
-            }
+            // 准备游戏状态
+            room.getGameState().setRoomId(room.getId());
+            room.resetPlayerDecks();
+
+            // 发送游戏准备消息，包含所有玩家信息和游戏开始指令
+            JSONObject gameReadyMessage = new JSONObject();
+            gameReadyMessage.put("type", "game_ready");
+            gameReadyMessage.put("players", room.getPlayers());
+            gameReadyMessage.put("roomId", room.getId());
+            broadcastToRoom(room, gameReadyMessage);
+            startTurnTimer(room);
+
+            log.info("/match - Game ready for room {}, 2 players joined", roomId);
         } else {
-            Long roomId = GameUtil.getNextRomeId();
-            Room room = new Room(roomId);
-            user.setRole(GameUtil.RoleEnum.blueSide.toString());
-            user.setMsgCode(GameUtil.BlUE_JOIN_GAME);
-            room.addPlayer(user);
-            rooms.put(roomId, room);
-            roomCode2RoomIdMap.put(roomCode, roomId);
-            openId2RoomIdMap.put(openId, roomId);
-            
-            // 只有一个玩家，发送等待状态
+            // 只有一个玩家时发送等待状态
             broadcastRoomState(room);
         }
     }
 
-    private void handlePlayCard(String openId, Integer card) {
-        Long roomId = openId2RoomIdMap.get(openId);
-        if (roomId == null) return;
-
-        Room room = rooms.get(roomId);
+    private void handlePlayCard(String openId, int card) {
+        Room room = roomRegistry.findByOpenId(openId);
         if (room == null || room.getGameState().isGameCompleted()) return;
 
         String role = room.getPlayers().stream()
@@ -346,27 +612,36 @@ public class WebSocket4Match {
                 .orElse(null);
         if (role == null) return;
 
-        room.getGameState().addCard(role, card);
+        // 服务端校验出牌：牌面合法、手里还有、本回合还没出过
+        String rejection = room.checkPlay(role, card);
+        if (rejection != null) {
+            String message = CardRejectedMessage.REASON_ALREADY_PLAYED.equals(rejection) ? "本回合已经出过牌了"
+                    : CardRejectedMessage.REASON_CARD_USED.equals(rejection) ? "这张牌已经出过了" : "无效的牌";
+            rejectCard(room, openId, card, rejection, message);
+            return;
+        }
+        room.play(role, card);
 
         if (room.getGameState().isCurrentRoundComplete()) {
-            JSONObject roundInfo = new JSONObject();
-            roundInfo.put("type", "round_complete");
-            roundInfo.put("round", room.getGameState().getRoundNumber());
+            GameState gameState = room.getGameState();
             for (PlayerVO player : room.getPlayers()) {
+                RoundCompleteMessage roundInfo;
                 if (GameUtil.RoleEnum.redSide.toString().equals(player.getRole())) {
-                    roundInfo.put("myCard", room.getGameState().getCurrentRedCard());
-                    roundInfo.put("oppCard", room.getGameState().getCurrentBlueCard());
+                    roundInfo = new RoundCompleteMessage(gameState.getRoundNumber(),
+                            gameState.getCurrentRedCard(), gameState.getCurrentBlueCard());
                 } else {
-                    roundInfo.put("myCard", room.getGameState().getCurrentBlueCard());
-                    roundInfo.put("oppCard", room.getGameState().getCurrentRedCard());
+                    roundInfo = new RoundCompleteMessage(gameState.getRoundNumber(),
+                            gameState.getCurrentBlueCard(), gameState.getCurrentRedCard());
                 }
-                GameUtil.sendMessage(player.getSession(), roundInfo);
+                sendRoundComplete(room, player, roundInfo);
             }
 
             String result = room.getGameState().determineRoundResult();
             if (GameState.RESULT_CONTINUE.equals(result)) {
                 room.getGameState().nextRound();
+                startTurnTimer(room);
             } else {
+                room.cancelTurnTimer();
                 PlayerVO redPlayer = room.getPlayers().stream()
                         .filter(p -> GameUtil.RoleEnum.redSide.toString().equals(p.getRole()))
                         .findFirst().orElse(null);
@@ -376,24 +651,19 @@ public class WebSocket4Match {
                 if (redPlayer == null || bluePlayer == null) return;
 
                 if (GameState.RESULT_RED_WIN.equals(result)) {
-                    recordGame(roomId, redPlayer.getOpenId(), bluePlayer.getOpenId());
+                    recordGame(room, result, redPlayer.getOpenId(), bluePlayer.getOpenId());
                 } else if (GameState.RESULT_BLUE_WIN.equals(result)) {
-                    recordGame(roomId, bluePlayer.getOpenId(), redPlayer.getOpenId());
+                    recordGame(room, result, bluePlayer.getOpenId(), redPlayer.getOpenId());
                 }
 
-                JSONObject resultInfo = new JSONObject();
-                resultInfo.put("type", "game_result");
-                resultInfo.put("result", result);
-                broadcastToRoom(room, resultInfo);
+                broadcastGameResult(room, result);
             }
         } else {
             PlayerVO opponent = room.getPlayers().stream()
                     .filter(p -> !p.getOpenId().equals(openId))
                     .findFirst().orElse(null);
             if (opponent != null) {
-                JSONObject takeTurnInfo = new JSONObject();
-                takeTurnInfo.put("type", "please_take_card");
-                GameUtil.sendMessage(opponent.getSession(), takeTurnInfo);
+                sendPleaseTakeCard(room, opponent);
             }
         }
     }
@@ -406,42 +676,27 @@ public class WebSocket4Match {
         }
         
         try {
-            Long roomId = openId2RoomIdMap.get(openId);
-            if (roomId == null) {
-                log.info("/match - openId {} not in any room, cleaning up", openId);
-                return;
-            }
-
-            Room room = rooms.get(roomId);
+            Room room = roomRegistry.findByOpenId(openId);
             if (room == null) {
-                log.info("/match - Room {} not found for openId {}, cleaning up", roomId, openId);
+                log.info("/match - openId {} not in any room, cleaning up", openId);
                 return;
             }
+            Long roomId = room.getId();
 
             // 找到对方玩家
             PlayerVO opponent = room.getPlayers().stream()
                     .filter(p -> !p.getOpenId().equals(openId))
                     .findFirst().orElse(null);
             
-            // 只给对方发送离开消息，不要关闭对方连接
+            // 只给对方发送离开消息，不要关闭对方连接；对方掉线中则留在重放缓冲里
             if (opponent != null) {
-                JSONObject response = new JSONObject();
-                response.put("type", "opponent_leave");
-                response.put("message", "对方离开了房间");
-                try {
-                    if (opponent.getSession() != null && opponent.getSession().isOpen()) {
-                        GameUtil.sendMessage(opponent.getSession(), response);
-                        log.info("/match - Sent opponent_leave message to openId: {}", opponent.getOpenId());
-                        // 重要：不要关闭对方连接！让对方自己决定是否离开
-                        // opponent.getSession().close(); // 删除这行，避免触发对方的@OnClose
-                    }
-                } catch (Exception e) {
-                    log.error("Error sending opponent_leave message to openId: {}", opponent.getOpenId(), e);
-                }
+                sendToSeat(room, opponent, OutboundMessages.OPPONENT_LEAVE);
+                log.info("/match - Sent opponent_leave message to openId: {}", opponent.getOpenId());
+                // 重要：不要关闭对方连接！让对方自己决定是否离开
             }
 
             // 只关闭离开者自己的连接
-            Session leaverSession = openId2SessionMap.get(openId);
+            Session leaverSession = sessionRegistry.getSession(openId);
             if (leaverSession != null && leaverSession.isOpen()) {
                 try {
                     leaverSession.close();
@@ -452,26 +707,13 @@ public class WebSocket4Match {
             }
 
             // 清理离开者的数据
-            openId2SessionMap.remove(openId);
-            openId2RoomIdMap.remove(openId);
-            
+            sessionRegistry.unregister(openId);
             // ✅ 关键修复：从房间玩家列表中移除离开的玩家
-            room.getPlayers().removeIf(p -> p.getOpenId().equals(openId));
-            
-            // 检查房间是否还有其他在线玩家
-            boolean hasOtherPlayers = room.getPlayers().stream()
-                    .anyMatch(p -> openId2SessionMap.containsKey(p.getOpenId()));
-            
-            if (!hasOtherPlayers) {
-                // 房间里没有其他在线玩家，完全清理房间
-                String roomCode = roomCode2RoomIdMap.entrySet().stream()
-                        .filter(entry -> entry.getValue().equals(roomId))
-                        .map(Map.Entry::getKey)
-                        .findFirst().orElse(null);
-                if (roomCode != null) {
-                    roomCode2RoomIdMap.remove(roomCode);
-                }
-                rooms.remove(roomId);
+            roomRegistry.leave(openId);
+            winStreakTracker.reset(openId);
+
+            // 房间里没有其他在线玩家，完全清理房间
+            if (roomRegistry.destroyIfAbandoned(room, sessionRegistry::isOnline)) {
                 log.info("/match - Room {} cleaned up completely, openId {} left", roomId, openId);
             } else {
                 log.info("/match - Player {} left room {}, room still has {} online players", 
@@ -485,15 +727,14 @@ public class WebSocket4Match {
 
     private void handleRematchRequest(String requesterId) {
         log.info("/match - Handling rematch request for openId: {}", requesterId);
-        Long roomId = openId2RoomIdMap.get(requesterId);
-        if (roomId == null) {
+        Room room = roomRegistry.findByOpenId(requesterId);
+        if (room == null) {
             log.warn("/match - No room found for requesterId: {}", requesterId);
             return;
         }
 
-        Room room = rooms.get(roomId);
-        if (room == null || room.getPlayers().size() != 2) {
-            log.warn("/match - Invalid room state for rematch, roomId: {}, players: {}", roomId, room == null ? 0 : room.getPlayers().size());
+        if (room.getPlayers().size() != 2) {
+            log.warn("/match - Invalid room state for rematch, roomId: {}, players: {}", room.getId(), room.getPlayers().size());
             handleLeaveRoom(requesterId); // 清理房间
             return;
         }
@@ -510,14 +751,12 @@ public class WebSocket4Match {
             return;
         }
 
+        // 对方掉线但座位还在保留期内时照常发送，等对方重连后补发
         Session opponentSession = opponent.getSession();
-        if (opponentSession == null || !opponentSession.isOpen()) {
+        if ((opponentSession == null || !opponentSession.isOpen()) && !room.isSeatHeld(opponent.getOpenId())) {
             log.warn("/match - Opponent session not available for openId: {}", opponent.getOpenId());
             // 通知请求方对方已离开
-            JSONObject response = new JSONObject();
-            response.put("type", "opponent_leave");
-            response.put("message", "玩家离开了房间");
-            GameUtil.sendMessage(requester.getSession(), response);
+            sendToSeat(room, requester, OutboundMessages.OPPONENT_LEFT_ROOM);
             handleLeaveRoom(requesterId); // 清理房间
             return;
         }
@@ -525,40 +764,18 @@ public class WebSocket4Match {
         JSONObject rematchRequest = new JSONObject();
         rematchRequest.put("type", "rematch_request");
         rematchRequest.put("from", requesterId);
-        try {
-            GameUtil.sendMessage(opponentSession, rematchRequest);
-            log.info("/match - Sent rematch_request to opponent openId: {}", opponent.getOpenId());
-        } catch (Exception e) {
-            log.error("/match - Failed to send rematch_request to opponent openId: {}", opponent.getOpenId(), e);
-            // 通知请求方对方已离开
-            JSONObject response = new JSONObject();
-            response.put("type", "opponent_leave");
-            response.put("message", "玩家离开了房间");
-            GameUtil.sendMessage(requester.getSession(), response);
-            handleLeaveRoom(requesterId); // 清理房间
-        }
+        sendToSeat(room, opponent, GameUtil.toJson(rematchRequest));
+        log.info("/match - Sent rematch_request to opponent openId: {}", opponent.getOpenId());
     }
 
     private void handleRematchAccept(String openId) {
-        Long roomId = openId2RoomIdMap.get(openId);
-        if (roomId == null) return;
-
-        Room room = rooms.get(roomId);
+        Room room = roomRegistry.findByOpenId(openId);
         if (room == null || room.getPlayers().size() != 2) return;
 
         // 检查双方豆子是否充足
-        PlayerVO player1 = room.getPlayers().get(0);
-        PlayerVO player2 = room.getPlayers().get(1);
-        com.tencard.demo01.saveData.UserVO user1 = userService.findOrCreateUserByOpenId(player1.getOpenId());
-        com.tencard.demo01.saveData.UserVO user2 = userService.findOrCreateUserByOpenId(player2.getOpenId());
-
-        Integer betAmount = room.getGameState().getBet();
-        if (user1.getBean() < betAmount || user2.getBean() < betAmount) {
-            JSONObject errorMsg = new JSONObject();
-            errorMsg.put("type", "bean_not_enough");
-            errorMsg.put("message", "有玩家豆子不足，无法开始连战");
-            broadcastToRoom(room, errorMsg);
-            log.warn("Rematch failed for room {}: bean not enough.", roomId);
+        if (!hasEnoughBean(room)) {
+            broadcastToRoom(room, OutboundMessages.BEAN_NOT_ENOUGH_FOR_REMATCH);
+            log.warn("Rematch failed for room {}: bean not enough.", room.getId());
             return; // 阻止连战开始
         }
 
@@ -572,18 +789,18 @@ public class WebSocket4Match {
         gameReadyMessage.put("players", room.getPlayers());
         gameReadyMessage.put("roomId", room.getId());
         broadcastToRoom(room, gameReadyMessage);
+        startTurnTimer(room);
     }
 
     private void handleRematchReject(String openId) {
-        Long roomId = openId2RoomIdMap.get(openId);
-        if (roomId == null) {
+        Room room = roomRegistry.findByOpenId(openId);
+        if (room == null) {
             log.warn("/match - No room found for openId: {}", openId);
             return;
         }
 
-        Room room = rooms.get(roomId);
-        if (room == null || room.getPlayers().size() != 2) {
-            log.warn("/match - Invalid room state for rematch reject, roomId: {}, players: {}", roomId, room == null ? 0 : room.getPlayers().size());
+        if (room.getPlayers().size() != 2) {
+            log.warn("/match - Invalid room state for rematch reject, roomId: {}, players: {}", room.getId(), room.getPlayers().size());
             return;
         }
 
@@ -603,7 +820,8 @@ public class WebSocket4Match {
         log.info("/match - Processing rematch reject: rejecter={}, requester={}", rejecter.getOpenId(), requester.getOpenId());
 
         // 检查请求方的连接状态
-        if (requester.getSession() == null || !requester.getSession().isOpen()) {
+        if ((requester.getSession() == null || !requester.getSession().isOpen())
+                && !room.isSeatHeld(requester.getOpenId())) {
             log.info("/match - Requester {} session is not available, no need to send reject message", requester.getOpenId());
             // 对方已经断开连接，不需要发送任何消息
             // 拒绝方留在游戏界面，进入复盘模式
@@ -611,16 +829,8 @@ public class WebSocket4Match {
         }
 
         // 只给请求方发送拒绝消息
-        JSONObject response = new JSONObject();
-        response.put("type", "rematch_reject");
-        try {
-            GameUtil.sendMessage(requester.getSession(), response);
-            log.info("/match - Sent rematch_reject to requester openId: {}", requester.getOpenId());
-        } catch (Exception e) {
-            log.error("/match - Failed to send rematch_reject to requester openId: {}", requester.getOpenId(), e);
-            // 发送失败，说明对方连接有问题，但不需要做任何处理
-            // 拒绝方仍然留在游戏界面
-        }
+        sendToSeat(room, requester, OutboundMessages.REMATCH_REJECT);
+        log.info("/match - Sent rematch_reject to requester openId: {}", requester.getOpenId());
         
         // 重要：不调用handleLeaveRoom！
         // 拒绝方留在游戏界面进入复盘模式
@@ -629,9 +839,54 @@ public class WebSocket4Match {
     }
 
     private void notifyTakeCard(Room room) {
-        JSONObject takeTurnInfo = new JSONObject();
-        takeTurnInfo.put("type", "please_take_card");
-        broadcastToRoom(room, takeTurnInfo);
+        for (PlayerVO player : room.getPlayers()) {
+            sendPleaseTakeCard(room, player);
+        }
+    }
+
+    // 对局高频消息按会话协商的协议发送：二进制帧或 JSON 文本帧
+    private void sendRoundComplete(Room room, PlayerVO player, RoundCompleteMessage message) {
+        if (isBinarySeat(room, player)) {
+            sendToSeat(room, player, BinaryProtocol.roundComplete(message));
+        } else {
+            sendToSeat(room, player, GameUtil.toJson(message));
+        }
+    }
+
+    private void rejectCard(Room room, String openId, int card, String reason, String message) {
+        log.warn("/match - Rejected card {} from openId {}: {}", card, openId, reason);
+        PlayerVO player = findSeat(room, openId);
+        if (player == null) {
+            return;
+        }
+        CardRejectedMessage rejected = new CardRejectedMessage(card, reason, message);
+        if (isBinarySeat(room, player)) {
+            sendToSeat(room, player, BinaryProtocol.cardRejected(rejected));
+        } else {
+            sendToSeat(room, player, GameUtil.toJson(rejected));
+        }
+    }
+
+    private void sendPleaseTakeCard(Room room, PlayerVO player) {
+        if (isBinarySeat(room, player)) {
+            sendToSeat(room, player, BinaryProtocol.pleaseTakeCard());
+        } else {
+            sendToSeat(room, player, OutboundMessages.PLEASE_TAKE_CARD);
+        }
+    }
+
+    private void broadcastGameResult(Room room, String result) {
+        String jsonFrame = null;
+        for (PlayerVO player : room.getPlayers()) {
+            if (isBinarySeat(room, player)) {
+                sendToSeat(room, player, BinaryProtocol.gameResult(result));
+            } else {
+                if (jsonFrame == null) {
+                    jsonFrame = GameUtil.toJson(new GameResultMessage(result));
+                }
+                sendToSeat(room, player, jsonFrame);
+            }
+        }
     }
 
     private void broadcastRoomState(Room room) {
@@ -643,42 +898,181 @@ public class WebSocket4Match {
     }
 
     private void broadcastToRoom(Room room, Object message) {
+        // 只序列化一次，房间内所有玩家共用同一个文本帧
+        broadcastToRoom(room, GameUtil.toJson(message));
+    }
+
+    private void broadcastToRoom(Room room, String frame) {
         for (PlayerVO player : room.getPlayers()) {
-            Session session = player.getSession();
-            if (session != null && session.isOpen()) {
-                GameUtil.sendMessage(session, message);
-            } else {
-                log.warn("/match - Skipping message broadcast to unavailable session for openId: {}", player.getOpenId());
-            }
+            sendToSeat(room, player, frame);
         }
     }
 
-    private void recordGame(Long roomId, String winner, String loser) {
-        Room room = rooms.get(roomId);
-        if (room == null) return;
+    /**
+     * 发给房间里的某个座位：编号后放进重放缓冲，在线就立即发送，掉线期间的消息等重连后补发。
+     * 只在房间信箱内调用
+     * @param frame JSON 文本帧或二进制帧
+     */
+    private void sendToSeat(Room room, PlayerVO player, Object frame) {
+        sendFrame(player.getSession(), seatBuffer(room, player).append(frame));
+    }
 
-        // Update user stats in the database
-        if (userService != null) {
-            userService.updateUserStats(winner, true);
-            userService.updateUserStats(loser, false);
-
-            // 结算豆子
-            Integer betAmount = room.getGameState().getBet();
-            userService.updateUserBean(winner, betAmount);
-            userService.updateUserBean(loser, -betAmount);
-            log.info("Bean settlement: winner {} +{}, loser {} -{}", winner, betAmount, loser, betAmount);
+    private ReplayBuffer seatBuffer(Room room, PlayerVO player) {
+        ReplayBuffer buffer = room.getReplayBuffer(player.getOpenId());
+        if (buffer == null) {
+            buffer = room.openReplayBuffer(player.getOpenId(), BinaryProtocol.isBinary(player.getSession()),
+                    reconnectManager.getReplayBufferSize());
+        }
+        return buffer;
+    }
+
+    // 座位的协议以重放缓冲为准：掉线期间旧会话已关闭，不能再从会话上读取
+    private boolean isBinarySeat(Room room, PlayerVO player) {
+        return seatBuffer(room, player).isBinary();
+    }
+
+    private void sendFrame(Session session, Object frame) {
+        if (frame instanceof ByteBuffer) {
+            // 缓冲里的帧还要留着补发，发送用副本
+            GameUtil.sendBinary(session, ((ByteBuffer) frame).duplicate());
         } else {
-            log.error("UserService is not injected. Cannot update user stats.");
+            GameUtil.sendText(session, (String) frame);
+        }
+    }
+
+    /**
+     * 掉线后保留座位：通知对手等待，宽限期内重连可以接着打，到期再按离开处理
+     */
+    private void holdSeat(Room room, String openId, Session lostSession) {
+        PlayerVO seat = findSeat(room, openId);
+        if (seat == null || seat.getSession() != lostSession) {
+            return;
+        }
+        room.holdSeat(openId, reconnectManager.holdSeat(
+                () -> room.execute(() -> onGraceExpired(room, openId, lostSession))));
+        log.info("/match - Holding seat of openId {} in room {} for reconnect", openId, room.getId());
+        for (PlayerVO player : room.getPlayers()) {
+            if (player != seat) {
+                sendToSeat(room, player, OutboundMessages.OPPONENT_OFFLINE);
+            }
+        }
+    }
+
+    private void onGraceExpired(Room room, String openId, Session lostSession) {
+        PlayerVO seat = findSeat(room, openId);
+        // 已经重连过（座位换了会话）或房间已经关闭
+        if (roomRegistry.getRoom(room.getId()) != room || seat == null || seat.getSession() != lostSession) {
+            return;
+        }
+        reconnectManager.recordGraceExpired();
+        room.releaseHold(openId);
+        log.info("/match - Reconnect grace expired for openId {} in room {}", openId, room.getId());
+        handlePlayerDisconnect(openId);
+    }
+
+    /**
+     * 断线重连：座位换上新会话，先发房间快照，再补发 lastSeq 之后缺失的消息。
+     * 缺失的消息已经不在缓冲里（或协议变了）时只发快照，客户端以快照为准
+     */
+    private void resumeSeat(Room room, String openId, Session session, Long lastSeq) {
+        PlayerVO seat = findSeat(room, openId);
+        if (roomRegistry.getRoom(room.getId()) != room || seat == null
+                || sessionRegistry.getSession(openId) != session || !session.isOpen()) {
+            return;
+        }
+        boolean wasHeld = room.releaseHold(openId);
+        seat.setSession(session);
+        seat.setSessionId(session.getId());
+        room.touch();
+
+        boolean binary = BinaryProtocol.isBinary(session);
+        ReplayBuffer buffer = room.getReplayBuffer(openId);
+        List<Object> missed = null;
+        if (buffer == null || buffer.isBinary() != binary) {
+            buffer = room.openReplayBuffer(openId, binary, reconnectManager.getReplayBufferSize());
+        } else if (lastSeq != null) {
+            missed = buffer.since(lastSeq);
+        }
+        reconnectManager.recordResume(missed == null ? -1 : missed.size());
+
+        JSONObject resumed = roomSnapshot(room, seat);
+        resumed.put("type", "resumed");
+        resumed.put("lastSeq", buffer.getLastSeq());
+        resumed.put("replayed", missed == null ? -1 : missed.size());
+        // 快照本身不编号，客户端按其中的 lastSeq 校准，之后的补发帧都带 seq
+        GameUtil.sendMessage(session, resumed);
+        if (missed != null) {
+            for (Object frame : missed) {
+                sendFrame(session, frame);
+            }
+        }
+        log.info("/match - openId {} resumed in room {} from seq {}, replayed {}",
+                openId, room.getId(), lastSeq, missed == null ? -1 : missed.size());
+
+        if (wasHeld) {
+            for (PlayerVO player : room.getPlayers()) {
+                if (player != seat) {
+                    sendToSeat(room, player, OutboundMessages.OPPONENT_BACK);
+                }
+            }
+        }
+    }
+
+    /**
+     * 座位视角的房间快照：双方已出的牌（对手本回合的牌在回合结束前不公开）和自己的剩余手牌
+     */
+    private JSONObject roomSnapshot(Room room, PlayerVO seat) {
+        GameState state = room.getGameState();
+        String role = seat.getRole();
+        String opponentRole = GameUtil.RoleEnum.redSide.name().equals(role)
+                ? GameUtil.RoleEnum.blueSide.name() : GameUtil.RoleEnum.redSide.name();
+        int[] opponentCards = state.playedCards(opponentRole);
+        if (!state.isCurrentRoundComplete()) {
+            opponentCards[opponentCards.length - 1] = 0;
+        }
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("roomId", room.getId());
+        snapshot.put("roomCode", room.getCode());
+        snapshot.put("players", room.getPlayers());
+        snapshot.put("role", role);
+        snapshot.put("round", state.getRoundNumber());
+        snapshot.put("myCards", state.playedCards(role));
+        snapshot.put("oppCards", opponentCards);
+        snapshot.put("hand", room.hand(role));
+        snapshot.put("gameCompleted", state.isGameCompleted());
+        return snapshot;
+    }
+
+    private static PlayerVO findSeat(Room room, String openId) {
+        for (PlayerVO player : room.getPlayers()) {
+            if (player.getOpenId().equals(openId)) {
+                return player;
+            }
         }
+        return null;
+    }
+
+    private void recordGame(Room room, String result, String winner, String loser) {
+        Long roomId = room.getId();
 
         GameState gameState = room.getGameState();
-        gameState.recordGameResult(winner, loser);
-        GameState gameRecord = gameState.createRecord();
 
-        playerGameRecords.computeIfAbsent(winner, k -> new ArrayList<>()).add(gameRecord);
-        playerGameRecords.computeIfAbsent(loser, k -> new ArrayList<>()).add(gameRecord);
+        // 战绩和豆子结算：先记入内存账本，数据库异步批量写入。
+        // 任何一方是未经令牌校验的裸 openId 连接时不结算，避免冒用他人 openId 输赢豆子
+        if (!isVerified(room.getPlayers())) {
+            log.warn("Game {} has a player without a session token, skipping settlement", gameState.getGameId());
+        } else if (settlementService != null) {
+            settlementService.settle(gameState.getGameId(), winner, loser, gameState.getBet());
+        } else {
+            log.error("GameSettlementService is not injected. Cannot update user stats.");
+        }
 
-        long winStreak = calculateWinStreak(winner, roomId);
+        gameState.recordGameResult(winner, loser);
+        gameHistoryStore.add(gameState.toRecord(result));
+
+        // 连胜计数随结算更新，达到 3 连胜起发送分享消息
+        int winStreak = winStreakTracker.recordWin(winner, roomId);
+        winStreakTracker.recordLoss(loser);
         if (winStreak >= 3) {
             JSONObject shareMessage = new JSONObject();
             shareMessage.put("type", "share");
@@ -707,50 +1101,98 @@ public class WebSocket4Match {
                     break;
             }
 
-            Session winnerSession = openId2SessionMap.get(winner);
-            if (winnerSession != null && winnerSession.isOpen()) {
-                GameUtil.sendMessage(winnerSession, shareMessage);
+            PlayerVO winnerSeat = findSeat(room, winner);
+            if (winnerSeat != null) {
+                sendToSeat(room, winnerSeat, GameUtil.toJson(shareMessage));
             }
         }
     }
 
-//    private long calculateWinStreak(String playerId, Long roomId) {
-//        List<GameState> records = playerGameRecords.get(playerId);
-//        if (records == null) return 0;
-//
-//        return records.stream()
-//                .sorted((a, b) -> b.getGameEndTime().compareTo(a.getGameEndTime()))
-//                .takeWhile(record -> record.getRoomId().equals(roomId) && record.getWinner().equals(playerId))
-//                .count();
-//    }
-private long calculateWinStreak(String playerId, Long roomId) {
-    List<GameState> records = playerGameRecords.get(playerId);
-    if (records == null) return 0;
+    /**
+     * 开始当前回合的出牌计时，超时后在房间信箱中替未出牌的一方自动出牌
+     */
+    private void startTurnTimer(Room room) {
+        int turn = room.nextTurn();
+        room.setTurnTimeout(roomTimers.scheduleTurn(() -> room.execute(() -> onTurnTimeout(room, turn))));
+    }
 
-    // 按结束时间降序排序
-    records.sort((a, b) -> b.getGameEndTime().compareTo(a.getGameEndTime()));
+    private void onTurnTimeout(Room room, int turn) {
+        GameState state = room.getGameState();
+        if (room.getTurnSeq() != turn || state.isGameCompleted() || roomRegistry.getRoom(room.getId()) != room) {
+            return;
+        }
+        roomTimers.recordTurnExpired();
+        for (PlayerVO player : room.getPlayers()) {
+            // 前一位自动出牌可能已经结束本回合或整局
+            if (room.getTurnSeq() != turn || state.isGameCompleted()) {
+                return;
+            }
+            boolean red = GameUtil.RoleEnum.redSide.name().equals(player.getRole());
+            if ((red ? state.getCurrentRedCard() : state.getCurrentBlueCard()) != 0) {
+                continue;
+            }
+            int card = room.lowestCard(player.getRole());
+            if (card == 0) {
+                // 手里没牌却还要出牌，说明对局状态已经不一致，按平局结束，不让房间一直卡着
+                log.error("/match - Room {} has no cards left for openId {} in round {}, ending the game as a draw",
+                        room.getId(), player.getOpenId(), state.getRoundNumber());
+                room.cancelTurnTimer();
+                state.setGameCompleted(true);
+                broadcastGameResult(room, GameState.RESULT_DRAW);
+                return;
+            }
+            log.info("/match - Turn timed out in room {}, auto-playing card {} for openId {}",
+                    room.getId(), card, player.getOpenId());
+            roomTimers.recordAutoPlay();
+            handlePlayCard(player.getOpenId(), card);
+        }
+    }
 
-    long count = 0;
-    for (GameState record : records) {
-        if (record.getRoomId().equals(roomId) && record.getWinner().equals(playerId)) {
-            count++;
-        } else {
-            break;
+    private void scheduleIdleCheck(Room room, long delayMillis) {
+        roomTimers.scheduleIdleCheck(() -> room.execute(() -> checkIdle(room)), delayMillis);
+    }
+
+    /**
+     * 空闲回收：房间超过 idle-timeout 没有玩家操作就关闭，否则按剩余时间续期
+     */
+    private void checkIdle(Room room) {
+        if (roomRegistry.getRoom(room.getId()) != room) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - room.getLastActivity();
+        long timeout = roomTimers.getIdleTimeoutMillis();
+        if (idle < timeout) {
+            scheduleIdleCheck(room, timeout - idle);
+            return;
+        }
+        roomTimers.recordRoomReaped();
+        log.info("/match - Room {} idle for {} ms, closing", room.getId(), idle);
+        broadcastToRoom(room, OutboundMessages.ROOM_EXPIRED);
+        for (PlayerVO player : room.getPlayers()) {
+            winStreakTracker.reset(player.getOpenId());
         }
+        roomRegistry.destroy(room);
     }
-    return count;
-}
 
+    /**
+     * 检查房间内双方的豆子是否够本局赌注（含尚未落库的结算）
+     */
+    private boolean hasEnoughBean(Room room) {
+        Integer betAmount = room.getGameState().getBet();
+        for (PlayerVO player : room.getPlayers()) {
+            if (settlementService.availableBean(player.getOpenId()) < betAmount) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
      * 处理玩家断开连接（业务逻辑层）
      * 只在确实需要时通知对方离开
      */
     private void handlePlayerDisconnect(String openId) {
-        Long roomId = openId2RoomIdMap.get(openId);
-        if (roomId == null) return;
-
-        Room room = rooms.get(roomId);
+        Room room = roomRegistry.findByOpenId(openId);
         if (room == null) return;
 
         // 找到对方玩家
@@ -759,16 +1201,9 @@ private long calculateWinStreak(String playerId, Long roomId) {
                 .findFirst().orElse(null);
         
         // 只给对方发送离开消息，让对方知道连接已断开
-        if (opponent != null && opponent.getSession() != null && opponent.getSession().isOpen()) {
-            JSONObject response = new JSONObject();
-            response.put("type", "opponent_leave");
-            response.put("message", "对方离开了房间");
-            try {
-                GameUtil.sendMessage(opponent.getSession(), response);
-                log.info("/match - Sent opponent_leave message to openId: {}", opponent.getOpenId());
-            } catch (Exception e) {
-                log.error("Error sending opponent_leave message to openId: {}", opponent.getOpenId(), e);
-            }
+        if (opponent != null) {
+            sendToSeat(room, opponent, OutboundMessages.OPPONENT_LEAVE);
+            log.info("/match - Sent opponent_leave message to openId: {}", opponent.getOpenId());
         }
 
         // 清理断开连接玩家的数据
@@ -779,35 +1214,19 @@ private long calculateWinStreak(String playerId, Long roomId) {
      * 清理玩家数据（资源管理层）
      */
     private void cleanupPlayerData(String openId) {
-        Long roomId = openId2RoomIdMap.get(openId);
-        openId2RoomIdMap.remove(openId);
-        
-        if (roomId != null) {
-            Room room = rooms.get(roomId);
-            if (room != null) {
-                // ✅ 关键修复：先从房间玩家列表中移除离开的玩家
-                room.getPlayers().removeIf(p -> p.getOpenId().equals(openId));
-                
-                // 检查房间是否还有其他在线玩家
-                boolean hasOtherPlayers = room.getPlayers().stream()
-                        .anyMatch(p -> openId2SessionMap.containsKey(p.getOpenId()));
-                
-                if (!hasOtherPlayers) {
-                    // 房间里没有其他在线玩家，清理房间
-                    String roomCode = roomCode2RoomIdMap.entrySet().stream()
-                            .filter(entry -> entry.getValue().equals(roomId))
-                            .map(Map.Entry::getKey)
-                            .findFirst().orElse(null);
-                    if (roomCode != null) {
-                        roomCode2RoomIdMap.remove(roomCode);
-                    }
-                    rooms.remove(roomId);
-                    log.info("/match - Room {} cleaned up completely, openId {} left", roomId, openId);
-                } else {
-                    log.info("/match - Player {} left room {}, room still has {} online players", 
-                            openId, roomId, room.getPlayers().size());
-                }
-            }
+        // ✅ 关键修复：先从房间玩家列表中移除离开的玩家
+        Room room = roomRegistry.leave(openId);
+        winStreakTracker.reset(openId);
+        if (room == null) {
+            return;
+        }
+
+        // 检查房间是否还有其他在线玩家，没有则清理房间
+        if (roomRegistry.destroyIfAbandoned(room, sessionRegistry::isOnline)) {
+            log.info("/match - Room {} cleaned up completely, openId {} left", room.getId(), openId);
+        } else {
+            log.info("/match - Player {} left room {}, room still has {} online players",
+                    openId, room.getId(), room.getPlayers().size());
         }
     }
     
@@ -820,51 +1239,18 @@ private long calculateWinStreak(String playerId, Long roomId) {
         response.put("message", message);
         GameUtil.sendMessage(session, response);
     }
-}
-
-class Room {
-    private final Long id;
-    private final List<PlayerVO> players = new ArrayList<>();
-    private final GameState gameState = new GameState();
-    private final Map<String, List<Integer>> playerDecks = new HashMap<>();
-
-    public Room(Long id) {
-        this.id = id;
-    }
-
-    public Long getId() {
-        return id;
-    }
-
-    public List<PlayerVO> getPlayers() {
-        return players;
-    }
-
-    public GameState getGameState() {
-        return gameState;
-    }
 
-    public void addPlayer(PlayerVO player) {
-        players.add(player);
-    }
-
-    public void resetPlayerDecks() {
-        for (PlayerVO player : players) {
-            playerDecks.put(player.getOpenId(), new ArrayList<>(
-                    IntStream.rangeClosed(1, GameState.TEN).boxed().collect(Collectors.toList())
-            ));
-        }
-    }
-
-    public boolean validateCard(String openId, Integer card) {
-        List<Integer> deck = playerDecks.get(openId);
-        return deck != null && deck.contains(card);
-    }
-
-    public void removeCard(String openId, Integer card) {
-        List<Integer> deck = playerDecks.get(openId);
-        if (deck != null) {
-            deck.remove(card);
+    /**
+     * 房间线程池的线程工厂：守护线程 + 可读的线程名
+     */
+    private static class RoomThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "room-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
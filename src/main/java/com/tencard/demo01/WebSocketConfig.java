@@ -1,9 +1,12 @@
 package com.tencard.demo01;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
+import java.util.concurrent.TimeUnit;
+
 
 @Component
 public class WebSocketConfig {
@@ -12,4 +15,13 @@ public class WebSocketConfig {
 	public ServerEndpointExporter serverEndpointExporter() {
         return new ServerEndpointExporter();
     }
+
+    /**
+     * 全局共用的时间轮：出牌计时、空闲房间回收等定时任务都挂在这里
+     */
+    @Bean(destroyMethod = "stop")
+    public HashedWheelTimer wheelTimer(@Value("${xcards.timer.tick-ms:100}") long tickMs,
+                                       @Value("${xcards.timer.wheel-size:512}") int wheelSize) {
+        return new HashedWheelTimer("wheel-timer", tickMs, TimeUnit.MILLISECONDS, wheelSize);
+    }
 }
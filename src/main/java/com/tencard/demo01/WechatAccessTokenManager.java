@@ -0,0 +1,210 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 微信接口调用凭证 access_token 的缓存：拿到后一直用到 expires_in 前 refresh-ahead 秒，
+ * 到点由时间轮触发后台刷新，调用方始终拿缓存。
+ * 同一时刻最多一个刷新请求在途（single-flight），缓存失效时并发的调用方等同一个结果，不会各自去换 token。
+ */
+@Component
+public class WechatAccessTokenManager {
+
+    private static final Logger log = LoggerFactory.getLogger(WechatAccessTokenManager.class);
+
+    // 缓存为空时调用方等待刷新结果的上限
+    private static final long WAIT_SECONDS = 10;
+    // 后台刷新失败后的重试间隔
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final String appId;
+    private final String appSecret;
+    private final String apiBaseUrl;
+    private final long refreshAheadMillis;
+    private final HashedWheelTimer timer;
+    private final RestTemplate restTemplate;
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "wechat-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile CachedToken cached;
+    // 在途的刷新请求，没有时为 null
+    private final AtomicReference<CompletableFuture<CachedToken>> inflight = new AtomicReference<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchFailures = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public WechatAccessTokenManager(@Value("${wechat.appid}") String appId,
+                                    @Value("${wechat.secret}") String appSecret,
+                                    @Value("${wechat.api-base-url:https://api.weixin.qq.com}") String apiBaseUrl,
+                                    @Value("${wechat.token.refresh-ahead-seconds:300}") long refreshAheadSeconds,
+                                    HashedWheelTimer timer,
+                                    RestTemplate restTemplate) {
+        this.appId = appId;
+        this.appSecret = appSecret;
+        this.apiBaseUrl = apiBaseUrl.endsWith("/") ? apiBaseUrl.substring(0, apiBaseUrl.length() - 1) : apiBaseUrl;
+        this.refreshAheadMillis = TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+        this.timer = timer;
+        this.restTemplate = restTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 微信接口根地址，其他微信接口的 URL 也从这里拼，便于指向本地桩服务
+     */
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    /**
+     * 取当前有效的 access_token，缓存为空或已过期时等待刷新
+     * @throws IllegalStateException 换取 token 失败或超时
+     */
+    public String getAccessToken() {
+        CachedToken token = cached;
+        if (token != null && !token.isExpired()) {
+            cacheHits.incrementAndGet();
+            return token.value;
+        }
+        try {
+            return refresh().get(WAIT_SECONDS, TimeUnit.SECONDS).value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for access_token", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to get access_token: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("timed out waiting for access_token", e);
+        }
+    }
+
+    /**
+     * 微信返回 token 无效（40001 / 42001 等）时丢弃缓存，下次调用重新换取。
+     * 只丢弃与传入值相同的缓存，避免把别人刚刷新好的 token 清掉
+     */
+    public void invalidate(String accessToken) {
+        CachedToken token = cached;
+        if (token != null && token.value.equals(accessToken)) {
+            cached = null;
+            invalidations.incrementAndGet();
+            log.warn("WeChat access_token invalidated by API response");
+        }
+    }
+
+    /**
+     * 发起刷新；已有刷新在途时直接复用它的结果
+     */
+    private CompletableFuture<CachedToken> refresh() {
+        while (true) {
+            CompletableFuture<CachedToken> current = inflight.get();
+            if (current != null) {
+                return current;
+            }
+            CompletableFuture<CachedToken> future = new CompletableFuture<>();
+            if (inflight.compareAndSet(null, future)) {
+                refresher.execute(() -> runRefresh(future));
+                return future;
+            }
+        }
+    }
+
+    private void runRefresh(CompletableFuture<CachedToken> future) {
+        try {
+            CachedToken token = fetch();
+            cached = token;
+            // 有效期比 refresh-ahead 还短时在有效期过半时刷新，避免连续刷新
+            long lifetime = Math.max(0, token.expiresAt - System.currentTimeMillis());
+            scheduleRefresh(lifetime - Math.min(refreshAheadMillis, lifetime / 2));
+            future.complete(token);
+        } catch (Exception e) {
+            fetchFailures.incrementAndGet();
+            log.error("Failed to fetch WeChat access_token", e);
+            CachedToken token = cached;
+            // 旧 token 还没过期就继续用，稍后再试
+            if (token != null && !token.isExpired()) {
+                scheduleRefresh(RETRY_MILLIS);
+            }
+            future.completeExceptionally(e);
+        } finally {
+            inflight.compareAndSet(future, null);
+        }
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        try {
+            timer.newTimeout(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 时间轮已停止，应用正在关闭
+        }
+    }
+
+    private CachedToken fetch() {
+        fetches.incrementAndGet();
+        String url = apiBaseUrl + "/cgi-bin/token?grant_type=client_credential&appid=" + appId + "&secret=" + appSecret;
+        JSONObject response = JSONObject.parseObject(restTemplate.getForObject(url, String.class));
+        String value = response == null ? null : response.getString("access_token");
+        if (value == null) {
+            throw new IllegalStateException(response == null ? "empty response"
+                    : "errcode=" + response.getInteger("errcode") + ", errmsg=" + response.getString("errmsg"));
+        }
+        long expiresIn = response.getLongValue("expires_in");
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresIn > 0 ? expiresIn : 7200);
+        log.info("Fetched WeChat access_token, expires in {}s", expiresIn);
+        return new CachedToken(value, expiresAt);
+    }
+
+    /**
+     * access_token 指标，不包含 token 本身
+     */
+    public Map<String, Object> metrics() {
+        CachedToken token = cached;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("cached", token != null);
+        metrics.put("expiresInMillis", token == null ? 0 : Math.max(0, token.expiresAt - System.currentTimeMillis()));
+        metrics.put("refreshAheadMillis", refreshAheadMillis);
+        metrics.put("cacheHits", cacheHits.get());
+        metrics.put("fetches", fetches.get());
+        metrics.put("fetchFailures", fetchFailures.get());
+        metrics.put("invalidations", invalidations.get());
+        return metrics;
+    }
+
+    private static final class CachedToken {
+        private final String value;
+        private final long expiresAt;
+
+        CachedToken(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.tencard.demo01.saveData;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface GameSettlementRepository extends JpaRepository<GameSettlementVO, Long> {
+
+    /**
+     * 查询给定 gameId 中已经结算过的记录
+     */
+    List<GameSettlementVO> findByGameIdIn(Collection<String> gameIds);
+}
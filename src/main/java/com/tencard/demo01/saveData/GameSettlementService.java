@@ -0,0 +1,393 @@
+package com.tencard.demo01.saveData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对局结算（写后置）：
+ * 对局结束时先把胜负和豆子变化记入内存账本并立即生效，数据库写入由定时任务批量完成，
+ * 每次刷盘一个事务，每局一条原子 UPDATE。game_settlements 表的 gameId 唯一约束与结算写在同一事务里，
+ * 同一局无论重复提交还是刷盘重试都只会结算一次。
+ * 配置了 xcards.settlement.journal-dir 时，受理的结算先追加到本地日志，重启后重放尚未落库的结算；
+ * 日志由单独的写线程组提交，受理线程在账本锁外等待落盘，磁盘同步不会串行化所有房间的结算；
+ * 未配置时只在内存中等待刷盘，进程崩溃会丢失最近一个刷盘间隔内的结算。
+ * 整批写入失败时按指数退避重试，多次失败后拆成每局一个事务单独重试，单独仍失败的转入死信。
+ */
+@Service
+public class GameSettlementService {
+
+    private static final Logger log = LoggerFactory.getLogger(GameSettlementService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GameSettlementRepository settlementRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${xcards.settlement.batch-size:500}")
+    private int batchSize;
+
+    @Value("${xcards.settlement.retry-backoff-ms:1000}")
+    private long retryBackoffMillis;
+
+    @Value("${xcards.settlement.max-backoff-ms:30000}")
+    private long maxBackoffMillis;
+
+    @Value("${xcards.settlement.split-after-attempts:3}")
+    private int splitAfterAttempts;
+
+    @Value("${xcards.settlement.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${xcards.settlement.journal-dir:}")
+    private String journalDir;
+
+    @Value("${xcards.settlement.journal-sync:false}")
+    private boolean journalSync;
+
+    // 待刷盘的结算
+    private final Queue<Settlement> pending = new ConcurrentLinkedQueue<>();
+    // 写入失败、等待退避后重试的结算，只在 flush 内访问
+    private final Deque<Settlement> retrying = new ArrayDeque<>();
+    // 已受理的 gameId，防止同一局在内存中重复结算
+    private final Set<String> acceptedGameIds = ConcurrentHashMap.newKeySet();
+    // 内存账本：openId -> 尚未落库的豆子变化
+    private final Map<String, Long> pendingBean = new ConcurrentHashMap<>();
+    // 账本锁：受理、查询可用豆子、刷盘后“更新缓存 + 清账本”在同一把锁下，查询不会看到中间状态。
+    // 锁内只做内存操作，查库和日志落盘都在锁外
+    private final Object ledgerLock = new Object();
+
+    private SettlementJournal journal;
+    private long retryAt;
+    private int consecutiveFailures;
+
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong isolatedWrites = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong journalErrors = new AtomicLong();
+
+    /**
+     * 打开结算日志并重放上次未落库的结算
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        if (!StringUtils.hasLength(journalDir)) {
+            log.warn("xcards.settlement.journal-dir is not set, pending settlements are lost if the process dies");
+            return;
+        }
+        journal = new SettlementJournal(Paths.get(journalDir), journalSync);
+        List<String[]> entries = journal.open();
+        for (String[] e : entries) {
+            if (settle(e[0], e[1], e[2], Long.parseLong(e[3]))) {
+                replayed.incrementAndGet();
+            }
+        }
+        if (!entries.isEmpty()) {
+            log.info("Replayed {} settlements from journal {}", replayed.get(), journalDir);
+        }
+    }
+
+    /**
+     * 受理一局的结算，立即计入内存账本，稍后异步落库。
+     * @return 该局是否首次受理
+     */
+    public boolean settle(String gameId, String winner, String loser, long bet) {
+        SettlementJournal.Entry journaled = null;
+        synchronized (ledgerLock) {
+            if (!acceptedGameIds.add(gameId)) {
+                log.warn("Game {} already settled, ignoring", gameId);
+                return false;
+            }
+            if (journal != null) {
+                try {
+                    // 只交给写线程排队，和 pending 保持同样的先后顺序
+                    journaled = journal.append(gameId, winner, loser, bet);
+                } catch (UncheckedIOException e) {
+                    // 日志写不进去也照常结算，只是这一局失去崩溃保护
+                    journalErrors.incrementAndGet();
+                    log.error("Settlement journal append failed for game {}", gameId, e);
+                }
+            }
+            pendingBean.merge(winner, bet, Long::sum);
+            pendingBean.merge(loser, -bet, Long::sum);
+            pending.add(new Settlement(gameId, winner, loser, bet));
+        }
+        // 锁外等待组提交，同时结束的对局共用一次写入和刷盘
+        if (journaled != null && !journal.await(journaled)) {
+            journalErrors.incrementAndGet();
+            log.error("Settlement journal write failed for game {}, it is not crash-safe until flushed", gameId);
+        }
+        log.info("Bean settlement accepted for game {}: winner {} +{}, loser {} -{}", gameId, winner, bet, loser, bet);
+        return true;
+    }
+
+    /**
+     * 玩家当前可用豆子 = 缓存中的数据库余额 + 尚未落库的变化，两者在账本锁下一起读取
+     */
+    public long availableBean(String openId) {
+        // 缓存未命中时要查库，放在锁外
+        UserVO loaded = userService.findOrCreateUserByOpenId(openId);
+        synchronized (ledgerLock) {
+            // 加载之后可能已有刷盘同时改了缓存和账本，锁内取缓存里的当前值；已被淘汰时才用加载到的
+            UserVO user = userService.cachedUser(openId);
+            if (user == null) {
+                user = loaded;
+            }
+            long bean = user.getBean() == null ? 0L : user.getBean();
+            return bean + pendingBean.getOrDefault(openId, 0L);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${xcards.settlement.flush-interval-ms:200}")
+    public synchronized void flush() {
+        if (System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        sealJournal();
+        List<Settlement> retry = new ArrayList<>(retrying);
+        retrying.clear();
+        boolean healthy = retry.isEmpty() || writeBatch(retry);
+        while (healthy && !pending.isEmpty()) {
+            List<Settlement> batch = new ArrayList<>();
+            Settlement settlement;
+            while (batch.size() < batchSize && (settlement = pending.poll()) != null) {
+                batch.add(settlement);
+            }
+            healthy = writeBatch(batch);
+        }
+        if (retrying.isEmpty()) {
+            consecutiveFailures = 0;
+            retryAt = 0;
+            // 封存分段里的结算都已落库或转入死信
+            deleteSealedJournal();
+        } else {
+            consecutiveFailures++;
+            long backoff = Math.min(maxBackoffMillis, retryBackoffMillis << Math.min(consecutiveFailures - 1, 20));
+            retryAt = System.currentTimeMillis() + backoff;
+            log.warn("{} settlements waiting for retry in {} ms", retrying.size(), backoff);
+        }
+    }
+
+    /**
+     * 写入一批结算：重试次数已达 splitAfterAttempts 的逐局单独写，其余整批一个事务。
+     * @return 整批写入是否成功，失败时调用方停止本轮刷盘等待退避
+     */
+    private boolean writeBatch(List<Settlement> batch) {
+        List<Settlement> grouped = new ArrayList<>();
+        for (Settlement s : batch) {
+            if (s.attempts >= splitAfterAttempts) {
+                writeIsolated(s);
+            } else {
+                grouped.add(s);
+            }
+        }
+        if (grouped.isEmpty()) {
+            return true;
+        }
+        List<Settlement> written;
+        try {
+            written = transactionTemplate.execute(status -> write(grouped));
+        } catch (Exception e) {
+            // 整批回滚，退避后重试，内存账本保持不变
+            failedBatches.incrementAndGet();
+            log.error("Settlement flush failed, {} games will be retried", grouped.size(), e);
+            for (Settlement s : grouped) {
+                s.attempts++;
+                retrying.add(s);
+            }
+            return false;
+        }
+        applyWritten(grouped, written);
+        return true;
+    }
+
+    /**
+     * 单独一个事务写一局，把坏数据和其他结算隔离开；重试次数用完转入死信
+     */
+    private void writeIsolated(Settlement s) {
+        isolatedWrites.incrementAndGet();
+        List<Settlement> single = Collections.singletonList(s);
+        try {
+            applyWritten(single, transactionTemplate.execute(status -> write(single)));
+        } catch (Exception e) {
+            s.attempts++;
+            if (s.attempts < maxAttempts) {
+                log.warn("Settlement for game {} failed alone (attempt {}), will retry", s.gameId, s.attempts, e);
+                retrying.add(s);
+                return;
+            }
+            deadLettered.incrementAndGet();
+            log.error("Settlement for game {} dead-lettered after {} attempts: winner {}, loser {}, bet {}",
+                    s.gameId, s.attempts, s.winner, s.loser, s.bet, e);
+            if (journal != null) {
+                journal.deadLetter(s.gameId, s.winner, s.loser, s.bet, String.valueOf(e));
+            }
+            // 不会再落库，撤销它在内存账本里的影响
+            applyWritten(single, Collections.emptyList());
+        }
+    }
+
+    /**
+     * 事务提交后：先把已写入的结算同步到用户缓存和排行榜，再清掉账本里对应的待落库变化，
+     * 两步在账本锁下完成，availableBean 不会少算也不会重复计算
+     */
+    private void applyWritten(List<Settlement> batch, List<Settlement> written) {
+        synchronized (ledgerLock) {
+            for (Settlement s : written) {
+                userService.applySettlement(s.winner, s.loser, s.bet);
+            }
+            for (Settlement s : batch) {
+                pendingBean.computeIfPresent(s.winner, (k, v) -> v - s.bet == 0 ? null : v - s.bet);
+                pendingBean.computeIfPresent(s.loser, (k, v) -> v + s.bet == 0 ? null : v + s.bet);
+                acceptedGameIds.remove(s.gameId);
+            }
+        }
+        flushed.addAndGet(written.size());
+    }
+
+    private void sealJournal() {
+        if (journal == null) {
+            return;
+        }
+        synchronized (ledgerLock) {
+            try {
+                journal.seal();
+            } catch (IOException e) {
+                journalErrors.incrementAndGet();
+                log.error("Failed to seal settlement journal", e);
+            }
+        }
+    }
+
+    private void deleteSealedJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.deleteSealed();
+        } catch (IOException e) {
+            journalErrors.incrementAndGet();
+            log.error("Failed to delete settled journal segments", e);
+        }
+    }
+
+    /**
+     * 结算指标：待刷盘、等待重试、已落库、失败批次、单独重试、死信、重放数、日志组提交次数
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pending", pending.size());
+        synchronized (this) {
+            metrics.put("retrying", retrying.size());
+            metrics.put("consecutiveFailures", consecutiveFailures);
+        }
+        metrics.put("flushed", flushed.get());
+        metrics.put("failedBatches", failedBatches.get());
+        metrics.put("isolatedWrites", isolatedWrites.get());
+        metrics.put("deadLettered", deadLettered.get());
+        metrics.put("replayed", replayed.get());
+        metrics.put("journalEnabled", journal != null);
+        metrics.put("journalErrors", journalErrors.get());
+        metrics.put("journalGroupCommits", journal == null ? 0L : journal.groupCommits());
+        return metrics;
+    }
+
+    /**
+     * 在一个事务内写入一批结算：跳过已落库的 gameId，每局一条原子 UPDATE 同时结算双方。
+     * @return 本次实际写入的结算
+     */
+    private List<Settlement> write(List<Settlement> batch) {
+        Set<String> gameIds = new HashSet<>();
+        for (Settlement s : batch) {
+            gameIds.add(s.gameId);
+        }
+        Set<String> alreadySettled = new HashSet<>();
+        for (GameSettlementVO vo : settlementRepository.findByGameIdIn(gameIds)) {
+            alreadySettled.add(vo.getGameId());
+        }
+
+        List<GameSettlementVO> records = new ArrayList<>();
+        List<Settlement> written = new ArrayList<>();
+        for (Settlement s : batch) {
+            if (alreadySettled.contains(s.gameId)) {
+                log.warn("Game {} already persisted, skipping", s.gameId);
+                continue;
+            }
+            int updated = userRepository.settleGame(s.winner, s.loser, s.bet);
+            if (updated != 2) {
+                log.warn("Game {} settled {} of 2 players, winner {}, loser {}", s.gameId, updated, s.winner, s.loser);
+            }
+            records.add(new GameSettlementVO(s.gameId, s.winner, s.loser, s.bet));
+            written.add(s);
+        }
+        settlementRepository.saveAll(records);
+        log.info("Flushed {} game settlements", records.size());
+        return written;
+    }
+
+    /**
+     * 正常停机前把未落库的结算写完
+     */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        synchronized (this) {
+            // 停机时不再等待退避
+            retryAt = 0;
+        }
+        flush();
+        if (journal != null) {
+            synchronized (ledgerLock) {
+                journal.close();
+            }
+        }
+    }
+
+    private static final class Settlement {
+        private final String gameId;
+        private final String winner;
+        private final String loser;
+        private final long bet;
+        // 写入失败次数
+        private int attempts;
+
+        Settlement(String gameId, String winner, String loser, long bet) {
+            this.gameId = gameId;
+            this.winner = winner;
+            this.loser = loser;
+            this.bet = bet;
+        }
+    }
+}
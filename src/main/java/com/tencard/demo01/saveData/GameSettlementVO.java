@@ -0,0 +1,43 @@
+package com.tencard.demo01.saveData;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * 已结算的对局记录，gameId 唯一，保证同一局只结算一次。
+ */
+@Entity
+@Table(name = "game_settlements")
+@Data
+@NoArgsConstructor
+public class GameSettlementVO {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String gameId;
+
+    @Column(nullable = false)
+    private String winnerOpenId;
+
+    @Column(nullable = false)
+    private String loserOpenId;
+
+    @Column(nullable = false)
+    private Long bet;
+
+    @Column(name = "settle_time")
+    private java.time.LocalDateTime settleTime;
+
+    public GameSettlementVO(String gameId, String winnerOpenId, String loserOpenId, long bet) {
+        this.gameId = gameId;
+        this.winnerOpenId = winnerOpenId;
+        this.loserOpenId = loserOpenId;
+        this.bet = bet;
+        this.settleTime = java.time.LocalDateTime.now();
+    }
+}
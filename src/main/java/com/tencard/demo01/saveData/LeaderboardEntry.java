@@ -0,0 +1,18 @@
+package com.tencard.demo01.saveData;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 排行榜上公开展示的一行：名次、昵称和战绩。
+ * 不含 openId、用户 id、签到日期等个人信息，排行榜接口只返回这个。
+ */
+@Getter
+@AllArgsConstructor
+public class LeaderboardEntry {
+    private final int rank;
+    private final String nickName;
+    private final int wins;
+    private final int losses;
+    private final long bean;
+}
@@ -0,0 +1,414 @@
+package com.tencard.demo01.saveData;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存排行榜：启动时从数据库加载一次，之后随结算、签到、建号、改昵称增量更新。
+ * 胜场、胜率、豆子三个榜各一棵顺序统计树，同分按用户 id 升序，
+ * 分页与“我的名次”都是 O(log n + 返回条数)，不再每次请求全表排序。
+ * 加载期间读到的页可能早于或晚于并发结算的提交，增量无法正确叠加，
+ * 所以加载期间的变更只记下 openId，加载完再从数据库重读这些用户。
+ */
+@Service
+public class LeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    private static final int LOAD_PAGE_SIZE = 5000;
+
+    /**
+     * 榜单类型：胜场、胜率、豆子
+     */
+    public enum Board {
+        WINS, WIN_RATE, BEAN;
+
+        /**
+         * 解析请求参数，空值默认胜场榜，无法识别返回 null
+         */
+        public static Board of(String name) {
+            if (name == null || name.isEmpty()) {
+                return WINS;
+            }
+            switch (name.toLowerCase()) {
+                case "wins":
+                    return WINS;
+                case "winrate":
+                case "win_rate":
+                    return WIN_RATE;
+                case "bean":
+                    return BEAN;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static final Comparator<Standing> BY_ID = Comparator.comparingLong(s -> s.id);
+
+    private static final Comparator<Standing> BY_WINS = Comparator
+            .comparingInt((Standing s) -> s.wins).reversed()
+            .thenComparing(BY_ID);
+
+    // 胜率 wins / (wins + losses) 降序，交叉相乘比较避免浮点误差；同胜率按胜场、id
+    private static final Comparator<Standing> BY_WIN_RATE = ((Comparator<Standing>) (a, b) -> Long.compare(
+            (long) b.wins * Math.max(1, a.wins + a.losses),
+            (long) a.wins * Math.max(1, b.wins + b.losses)))
+            .thenComparing(BY_WINS);
+
+    private static final Comparator<Standing> BY_BEAN = Comparator
+            .comparingLong((Standing s) -> s.bean).reversed()
+            .thenComparing(BY_ID);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // openId -> 当前在榜上的快照
+    private final Map<String, Standing> standings = new ConcurrentHashMap<>();
+    private final Map<Board, RankedSet<Standing>> boards = new EnumMap<>(Board.class);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 任何一次榜单变化都递增，用作 ETag
+    private volatile long version;
+    // 正在从数据库加载；期间的变更不直接应用，只记入 dirty，由写锁保护
+    private boolean loading;
+    private Set<String> dirty = new HashSet<>();
+
+    public LeaderboardService() {
+        boards.put(Board.WINS, new RankedSet<>(BY_WINS));
+        boards.put(Board.WIN_RATE, new RankedSet<>(BY_WIN_RATE));
+        boards.put(Board.BEAN, new RankedSet<>(BY_BEAN));
+    }
+
+    /**
+     * 应用启动完成后分页加载全部用户，再重读加载期间有变更的用户，直到没有新的变更
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            loading = true;
+            dirty = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        int refreshed = 0;
+        try {
+            int page = 0;
+            Page<UserVO> users;
+            do {
+                users = userRepository.findAll(PageRequest.of(page++, LOAD_PAGE_SIZE, Sort.by("id")));
+                for (UserVO user : users) {
+                    if (isValid(user)) {
+                        replace(new Standing(user));
+                    }
+                }
+            } while (users.hasNext());
+            while (true) {
+                Set<String> batch;
+                lock.writeLock().lock();
+                try {
+                    if (dirty.isEmpty()) {
+                        loading = false;
+                        break;
+                    }
+                    batch = dirty;
+                    dirty = new HashSet<>();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                for (String openId : batch) {
+                    refresh(openId);
+                }
+                refreshed += batch.size();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // 加载失败也要恢复增量更新，榜单不完整总比永远不再变化好
+                loading = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.info("Leaderboard loaded {} users ({} refreshed after concurrent updates) in {} ms",
+                size(), refreshed, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 新玩家上榜。已在榜上的玩家只接受 adjust / rename 增量：
+     * 整行快照可能读于并发结算提交之前，用它覆盖会丢掉结算的增量
+     */
+    public void add(UserVO user) {
+        if (!isValid(user)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (deferDuringLoad(user.getOpenId()) || standings.containsKey(user.getOpenId())) {
+                return;
+            }
+            replace(new Standing(user));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 对局结算落库后更新双方战绩
+     */
+    public void applyGame(String winner, String loser, long bet) {
+        adjust(winner, 1, 0, bet);
+        adjust(loser, 0, 1, -bet);
+    }
+
+    /**
+     * 数据库原子累加成功后同步榜上的快照（豆子最低为 0），不在榜上则什么都不做
+     */
+    public void adjust(String openId, int winsDelta, int lossesDelta, long beanDelta) {
+        lock.writeLock().lock();
+        try {
+            if (deferDuringLoad(openId)) {
+                return;
+            }
+            Standing s = standings.get(openId);
+            if (s != null) {
+                replace(new Standing(s.id, s.openId, s.nickName, s.wins + winsDelta, s.losses + lossesDelta,
+                        Math.max(0L, s.bean + beanDelta)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 改昵称后同步榜上的展示名，不在榜上则什么都不做
+     */
+    public void rename(String openId, String nickName) {
+        lock.writeLock().lock();
+        try {
+            if (deferDuringLoad(openId)) {
+                return;
+            }
+            Standing s = standings.get(openId);
+            if (s != null && !nickName.equals(s.nickName)) {
+                replace(new Standing(s.id, s.openId, nickName, s.wins, s.losses, s.bean));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String openId) {
+        lock.writeLock().lock();
+        try {
+            if (deferDuringLoad(openId)) {
+                return;
+            }
+            removeStanding(openId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeStanding(String openId) {
+        lock.writeLock().lock();
+        try {
+            Standing old = standings.remove(openId);
+            if (old != null) {
+                for (RankedSet<Standing> board : boards.values()) {
+                    board.remove(old);
+                }
+                version++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 胜场榜前 n 名
+     */
+    public List<LeaderboardEntry> top(int n) {
+        return page(Board.WINS, 0, n);
+    }
+
+    /**
+     * 分页读取榜单，page 从 0 开始
+     */
+    public List<LeaderboardEntry> page(Board board, int page, int size) {
+        // page * size 可能超出 int，按 long 算，超过榜单长度直接返回空页
+        long offset = (long) page * size;
+        List<Standing> slice;
+        lock.readLock().lock();
+        try {
+            RankedSet<Standing> set = boards.get(board);
+            if (offset >= set.size()) {
+                return new ArrayList<>();
+            }
+            slice = set.range((int) offset, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return toEntries(slice, (int) offset + 1);
+    }
+
+    /**
+     * 玩家在胜场榜上的名次（从 1 开始），不在榜上返回 -1
+     */
+    public int rankOf(String openId) {
+        RankWindow window = around(Board.WINS, openId, 0);
+        return window == null ? -1 : window.getRank();
+    }
+
+    /**
+     * 玩家的名次以及前后各 window 名玩家，玩家不在榜上返回 null
+     */
+    public RankWindow around(Board board, String openId, int window) {
+        lock.readLock().lock();
+        try {
+            Standing s = standings.get(openId);
+            if (s == null) {
+                return null;
+            }
+            RankedSet<Standing> set = boards.get(board);
+            int index = set.rankOf(s);
+            int from = Math.max(0, index - window);
+            List<Standing> slice = set.range(from, index - from + window + 1);
+            return new RankWindow(board, index + 1, set.size(), toEntries(slice, from + 1), version);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return standings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 榜单版本号，任何名次或展示字段变化都会改变
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * 加载期间只记下变更的 openId，返回 true 表示本次变更推迟到加载结束后从数据库重读
+     */
+    private boolean deferDuringLoad(String openId) {
+        lock.writeLock().lock();
+        try {
+            if (!loading) {
+                return false;
+            }
+            dirty.add(openId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void refresh(String openId) {
+        UserVO user = userRepository.findByOpenId(openId);
+        if (isValid(user)) {
+            replace(new Standing(user));
+        } else {
+            removeStanding(openId);
+        }
+    }
+
+    private static boolean isValid(UserVO user) {
+        return user != null && user.getId() != null && user.getOpenId() != null;
+    }
+
+    private void replace(Standing standing) {
+        lock.writeLock().lock();
+        try {
+            Standing old = standings.put(standing.openId, standing);
+            for (RankedSet<Standing> board : boards.values()) {
+                if (old != null) {
+                    board.remove(old);
+                }
+                board.add(standing);
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static List<LeaderboardEntry> toEntries(List<Standing> standings, int firstRank) {
+        List<LeaderboardEntry> result = new ArrayList<>(standings.size());
+        int rank = firstRank;
+        for (Standing s : standings) {
+            result.add(new LeaderboardEntry(rank++, s.nickName, s.wins, s.losses, s.bean));
+        }
+        return result;
+    }
+
+    /**
+     * “我的名次”查询结果：rank 为本人名次，entries 按名次连续排列
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class RankWindow {
+        private final Board board;
+        private final int rank;
+        private final int total;
+        private final List<LeaderboardEntry> entries;
+        private final long version;
+    }
+
+    /**
+     * 榜上的不可变快照，排序字段在树里期间不会变化；openId 只作内部索引，不对外输出
+     */
+    private static final class Standing {
+        private final long id;
+        private final String openId;
+        private final String nickName;
+        private final int wins;
+        private final int losses;
+        private final long bean;
+
+        Standing(UserVO user) {
+            this(user.getId(), user.getOpenId(), user.getNickName(),
+                    user.getWins() == null ? 0 : user.getWins(),
+                    user.getLosses() == null ? 0 : user.getLosses(),
+                    user.getBean() == null ? 0L : user.getBean());
+        }
+
+        Standing(long id, String openId, String nickName, int wins, int losses, long bean) {
+            this.id = id;
+            this.openId = openId;
+            this.nickName = nickName;
+            this.wins = wins;
+            this.losses = losses;
+            this.bean = bean;
+        }
+    }
+}
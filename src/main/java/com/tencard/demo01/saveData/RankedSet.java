@@ -0,0 +1,185 @@
+package com.tencard.demo01.saveData;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 顺序统计树（Treap，每个节点记录子树大小）。
+ * 插入、删除、按名次取元素、查元素名次都是期望 O(log n)，连续取 k 个元素期望 O(log n + k)。
+ * 元素进入集合后比较用到的字段不能再变，更新时先 remove 旧对象再 add 新对象。
+ * 非线程安全，由调用方加锁。
+ */
+public final class RankedSet<T> {
+
+    private final Comparator<? super T> comparator;
+    private final Random random = new Random();
+    private Node<T> root;
+
+    public RankedSet(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void add(T value) {
+        Node<T> node = new Node<>(value, random.nextInt());
+        Node<T>[] parts = split(root, value);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    public boolean remove(T value) {
+        int before = size(root);
+        root = delete(root, value);
+        return size(root) < before;
+    }
+
+    /**
+     * 元素的名次（从 0 开始），不存在返回 -1
+     */
+    public int rankOf(T value) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int c = comparator.compare(value, node.value);
+            if (c < 0) {
+                node = node.left;
+            } else if (c > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 第 index 名的元素（从 0 开始）
+     */
+    public T get(int index) {
+        Node<T> node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+        throw new IndexOutOfBoundsException("index: " + index);
+    }
+
+    /**
+     * 从第 from 名开始按顺序取最多 count 个元素。
+     * 一次中序遍历，按子树大小跳过范围外的子树，期望 O(log n + count)
+     */
+    public List<T> range(int from, int count) {
+        int start = Math.max(0, from);
+        int end = (int) Math.min((long) start + Math.max(0, count), size());
+        List<T> result = new ArrayList<>(Math.max(0, end - start));
+        collect(root, 0, start, end, result);
+        return result;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * 按 value 拆成两棵树：[0] 中的元素都小于 value，[1] 中的元素都大于等于 value
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] split(Node<T> node, T value) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (comparator.compare(node.value, value) < 0) {
+            Node<T>[] parts = split(node.right, value);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        }
+        Node<T>[] parts = split(node.left, value);
+        node.left = parts[1];
+        node.update();
+        parts[1] = node;
+        return parts;
+    }
+
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private Node<T> delete(Node<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+        int c = comparator.compare(value, node.value);
+        if (c < 0) {
+            node.left = delete(node.left, value);
+        } else if (c > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * 把 node 子树中名次落在 [from, to) 的元素按顺序放进 out，offset 为该子树第一个元素的名次
+     */
+    private void collect(Node<T> node, int offset, int from, int to, List<T> out) {
+        if (node == null || offset >= to || offset + node.size <= from) {
+            return;
+        }
+        int rank = offset + size(node.left);
+        collect(node.left, offset, from, to, out);
+        if (rank >= from && rank < to) {
+            out.add(node.value);
+        }
+        collect(node.right, rank + 1, from, to, out);
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<T> {
+        private final T value;
+        private final int priority;
+        private int size = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + RankedSet.size(left) + RankedSet.size(right);
+        }
+    }
+}
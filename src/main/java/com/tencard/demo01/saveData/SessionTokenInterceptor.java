@@ -0,0 +1,82 @@
+package com.tencard.demo01.saveData;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * /api/user 和昵称检查接口的会话令牌校验：Authorization: Bearer 令牌有效时把 openId 放进请求属性，
+ * 路径里的 openId 必须与令牌一致。带了令牌但无效一律 401；
+ * 不带令牌时只有 allow-raw-openid 打开才放行（兼容旧客户端），但这类请求身份未经校验，
+ * 写豆子、战绩、昵称的接口要用 {@link #verifiedOpenId} 确认后才能写。排行榜是公开数据，不校验。
+ */
+@Component
+public class SessionTokenInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this)
+                .addPathPatterns("/api/user/**", "/api/check-nickname")
+                .excludePathPatterns("/api/user/leaderboard");
+    }
+
+    /**
+     * 令牌校验通过的 openId；不带令牌的旧客户端请求返回 null，不能据此写数据
+     */
+    public static String verifiedOpenId(HttpServletRequest request) {
+        return (String) request.getAttribute(SessionTokenService.OPEN_ID_ATTRIBUTE);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        String token = SessionTokenService.fromAuthorizationHeader(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (token == null) {
+            if (sessionTokenService.isRawOpenIdAllowed()) {
+                sessionTokenService.recordRawOpenId();
+                return true;
+            }
+            return reject(response, HttpStatus.UNAUTHORIZED, "缺少会话令牌，请重新登录");
+        }
+        String openId = sessionTokenService.verify(token);
+        if (openId == null) {
+            return reject(response, HttpStatus.UNAUTHORIZED, "会话令牌无效或已过期，请重新登录");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String pathOpenId = pathVariables == null ? null : pathVariables.get("openId");
+        if (pathOpenId != null && !pathOpenId.equals(openId)) {
+            return reject(response, HttpStatus.FORBIDDEN, "不能操作其他用户");
+        }
+        request.setAttribute(SessionTokenService.OPEN_ID_ATTRIBUTE, openId);
+        return true;
+    }
+
+    private static boolean reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("success", false);
+        json.put("message", message);
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(json.toJSONString());
+        return false;
+    }
+}
@@ -0,0 +1,180 @@
+package com.tencard.demo01.saveData;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登录后由服务端签发的会话令牌：base64url(openId).过期时间(秒).base64url(HMAC-SHA256)。
+ * 校验只做一次 HMAC 和过期判断，不查库也不调微信，/match 连接和 /api/user 接口据此确认 openId。
+ * 未配置 secret 时启动时随机生成，重启后旧令牌全部失效，客户端重新登录即可。
+ */
+@Component
+@Slf4j
+public class SessionTokenService {
+
+    /**
+     * 校验通过后 openId 存放在请求属性里的名字
+     */
+    public static final String OPEN_ID_ATTRIBUTE = "xcards.sessionOpenId";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final boolean rawOpenIdAllowed;
+    // Mac 不是线程安全的，每个线程一个，避免每次校验都重新初始化
+    private final ThreadLocal<Mac> macs;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    private final AtomicLong badSignature = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rawOpenIdAccepted = new AtomicLong();
+
+    public SessionTokenService(@Value("${xcards.session-token.secret:}") String secret,
+                               @Value("${xcards.session-token.ttl-hours:168}") long ttlHours,
+                               @Value("${xcards.session-token.allow-raw-openid:true}") boolean rawOpenIdAllowed) {
+        byte[] keyBytes;
+        if (secret == null || secret.trim().isEmpty()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("xcards.session-token.secret is not set, using a random key; tokens will not survive a restart");
+        } else {
+            keyBytes = secret.trim().getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlMillis = TimeUnit.HOURS.toMillis(ttlHours);
+        this.rawOpenIdAllowed = rawOpenIdAllowed;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * 为 openId 签发新令牌
+     */
+    public Issued issue(String openId) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        String payload = ENCODER.encodeToString(openId.getBytes(StandardCharsets.UTF_8))
+                + "." + TimeUnit.MILLISECONDS.toSeconds(expiresAt);
+        issued.incrementAndGet();
+        return new Issued(payload + "." + ENCODER.encodeToString(sign(payload)), expiresAt);
+    }
+
+    /**
+     * 校验令牌
+     * @return 令牌里的 openId；格式错误、签名不符或已过期返回 null
+     */
+    public String verify(String token) {
+        if (token == null) {
+            malformed.incrementAndGet();
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        int first = token.indexOf('.');
+        if (first <= 0 || dot <= first) {
+            malformed.incrementAndGet();
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                badSignature.incrementAndGet();
+                return null;
+            }
+            long expiresAt = TimeUnit.SECONDS.toMillis(Long.parseLong(payload.substring(first + 1)));
+            if (System.currentTimeMillis() >= expiresAt) {
+                expired.incrementAndGet();
+                return null;
+            }
+            String openId = new String(DECODER.decode(payload.substring(0, first)), StandardCharsets.UTF_8);
+            verified.incrementAndGet();
+            return openId;
+        } catch (IllegalArgumentException e) {
+            // base64 或数字格式错误
+            malformed.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 从 "Bearer xxx" 形式的 Authorization 头里取出令牌，没有返回 null
+     */
+    public static String fromAuthorizationHeader(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        String token = authorization.substring(7).trim();
+        return token.isEmpty() ? null : token;
+    }
+
+    /**
+     * 过渡期是否仍接受不带令牌、只传 openId 的旧客户端
+     */
+    public boolean isRawOpenIdAllowed() {
+        return rawOpenIdAllowed;
+    }
+
+    public void recordRawOpenId() {
+        rawOpenIdAccepted.incrementAndGet();
+    }
+
+    /**
+     * 会话令牌指标：签发、校验通过、各类校验失败以及仍按裸 openId 接入的次数
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ttlMillis", ttlMillis);
+        metrics.put("rawOpenIdAllowed", rawOpenIdAllowed);
+        metrics.put("issued", issued.get());
+        metrics.put("verified", verified.get());
+        metrics.put("malformed", malformed.get());
+        metrics.put("badSignature", badSignature.get());
+        metrics.put("expired", expired.get());
+        metrics.put("rawOpenIdAccepted", rawOpenIdAccepted.get());
+        return metrics;
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * 新签发的令牌及其过期时间（毫秒时间戳）
+     */
+    @Getter
+    public static final class Issued {
+        private final String token;
+        private final long expiresAt;
+
+        Issued(String token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.tencard.demo01.saveData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 结算预写日志：受理的每局结算先追加一行到当前日志文件，进程崩溃或重启后据此重放尚未落库的结算。
+ * 每次刷盘前把当前文件封存为一个分段，封存分段里的结算全部落库（或转入死信）后整段删除。
+ * 每行一局：gameId \t winner \t loser \t bet。
+ * 追加由单独的写线程组提交：同一时刻到达的记录一次写入、一次刷盘，调用方在锁外 await 等待自己那条落盘。
+ * 封存、删除和关闭由 GameSettlementService 加锁调用。
+ */
+final class SettlementJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(SettlementJournal.class);
+
+    private static final String ACTIVE = "settlements.log";
+    private static final String SEALED_PREFIX = "settlements-";
+    private static final String SEALED_SUFFIX = ".log";
+    private static final String DEAD_LETTER = "dead-letter.log";
+
+    private final Path dir;
+    private final boolean sync;
+    // 以下三项只在 ioLock 下访问：写线程写入，封存和关闭时切换文件
+    private final Object ioLock = new Object();
+    private FileChannel channel;
+    private BufferedWriter writer;
+    private boolean dirty;
+    private long sealedSeq;
+
+    // 等待写线程取走的记录，以及写线程是否正拿着一批在写；由 this 保护
+    private List<Entry> buffer = new ArrayList<>();
+    private boolean writing;
+    private boolean closed;
+    private Thread writerThread;
+    private long groupCommits;
+
+    SettlementJournal(Path dir, boolean sync) {
+        this.dir = dir;
+        this.sync = sync;
+    }
+
+    /**
+     * 打开日志目录，返回上次未删除的全部记录（封存分段在前，当前文件在后）
+     */
+    List<String[]> open() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = sealedSegments();
+        for (Path segment : files) {
+            sealedSeq = Math.max(sealedSeq, segmentSeq(segment));
+        }
+        Path active = dir.resolve(ACTIVE);
+        if (Files.exists(active)) {
+            files.add(active);
+        }
+        List<String[]> entries = new ArrayList<>();
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 4) {
+                    entries.add(fields);
+                } else if (!line.isEmpty()) {
+                    // 崩溃时写了一半的最后一行
+                    log.warn("Skipping malformed settlement journal line in {}: {}", file.getFileName(), line);
+                }
+            }
+        }
+        // 重放的记录会重新追加到新的当前文件，旧文件封存后随下一次成功刷盘删除
+        seal();
+        writerThread = new Thread(this::writeLoop, "settlement-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        return entries;
+    }
+
+    /**
+     * 把一局结算交给写线程，立即返回；用 {@link #await} 等它落盘
+     */
+    Entry append(String gameId, String winner, String loser, long bet) {
+        Entry entry = new Entry(gameId + "\t" + winner + "\t" + loser + "\t" + bet + "\n");
+        synchronized (this) {
+            if (closed || writerThread == null) {
+                throw new UncheckedIOException("Settlement journal is not open", new ClosedChannelException());
+            }
+            buffer.add(entry);
+            notifyAll();
+        }
+        return entry;
+    }
+
+    /**
+     * 等待 entry 所在的一批写完（journal-sync 时包括刷盘）
+     * @return 写入失败或等待被中断时返回 false，这一局失去崩溃保护
+     */
+    synchronized boolean await(Entry entry) {
+        while (!entry.done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return entry.written;
+    }
+
+    /**
+     * 写线程：取走当前积攒的全部记录，一次写入、一次刷盘，再唤醒等待的调用方
+     */
+    private void writeLoop() {
+        while (true) {
+            List<Entry> batch;
+            synchronized (this) {
+                while (buffer.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // 只靠 close 退出，忽略中断
+                    }
+                }
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                batch = buffer;
+                buffer = new ArrayList<>();
+                writing = true;
+            }
+            boolean written = writeBatch(batch);
+            synchronized (this) {
+                for (Entry entry : batch) {
+                    entry.written = written;
+                    entry.done = true;
+                }
+                writing = false;
+                groupCommits++;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean writeBatch(List<Entry> batch) {
+        synchronized (ioLock) {
+            try {
+                if (writer == null) {
+                    channel = FileChannel.open(dir.resolve(ACTIVE),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                            StandardCharsets.UTF_8));
+                }
+                for (Entry entry : batch) {
+                    writer.write(entry.line);
+                }
+                writer.flush();
+                if (sync) {
+                    channel.force(false);
+                }
+                dirty = true;
+                return true;
+            } catch (IOException e) {
+                log.error("Failed to append {} settlements to journal", batch.size(), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 把当前文件封存为新分段，之后受理的结算写入新的当前文件。
+     * 先等写线程把已交给它的记录写完，封存分段里不会缺少已受理的结算
+     */
+    void seal() throws IOException {
+        synchronized (this) {
+            while (!buffer.isEmpty() || writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while sealing settlement journal", e);
+                }
+            }
+        }
+        synchronized (ioLock) {
+            closeWriter();
+            Path active = dir.resolve(ACTIVE);
+            if (dirty || (Files.exists(active) && Files.size(active) > 0)) {
+                Files.move(active, dir.resolve(SEALED_PREFIX + (++sealedSeq) + SEALED_SUFFIX));
+            }
+            dirty = false;
+        }
+    }
+
+    /**
+     * 封存分段里的结算都已落库或转入死信，删除它们
+     */
+    void deleteSealed() throws IOException {
+        for (Path segment : sealedSegments()) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * 多次单独重试仍失败的结算写入死信文件，留待人工处理，不再自动重放
+     */
+    void deadLetter(String gameId, String winner, String loser, long bet, String reason) {
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve(DEAD_LETTER), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(gameId + "\t" + winner + "\t" + loser + "\t" + bet + "\t" + reason + "\n");
+        } catch (IOException e) {
+            log.error("Failed to write dead letter for game {}", gameId, e);
+        }
+    }
+
+    int sealedCount() throws IOException {
+        return sealedSegments().size();
+    }
+
+    synchronized long groupCommits() {
+        return groupCommits;
+    }
+
+    /**
+     * 写完已交给写线程的记录后停止写线程并关闭文件
+     */
+    void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            thread = writerThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (ioLock) {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private List<Path> sealedSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            // 目录已被外部删除，没有分段可处理
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEALED_PREFIX + "*" + SEALED_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentSeq(a), segmentSeq(b)));
+        return segments;
+    }
+
+    private static long segmentSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEALED_PREFIX.length(), name.length() - SEALED_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 一条待写记录，写线程写完后置 done
+     */
+    static final class Entry {
+        private final String line;
+        private boolean done;
+        private boolean written;
+
+        private Entry(String line) {
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.tencard.demo01.saveData;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * openId -> UserVO 进程内缓存：容量有上限、写入后定时过期。
+ * 同一 openId 并发未命中时只有一个线程去加载，其余线程等待同一结果，重连风暴不会打穿数据库。
+ * 缓存中的对象视为只读，修改一律通过 put / update 写入新副本。
+ */
+@Component
+public class UserCache {
+
+    private final Cache<String, UserVO> cache;
+
+    public UserCache(@Value("${xcards.user-cache.max-size:100000}") long maxSize,
+                     @Value("${xcards.user-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 读取缓存，未命中时用 loader 加载（同一 key 单飞）。loader 返回 null 时不缓存。
+     */
+    public UserVO get(String openId, Function<String, UserVO> loader) {
+        return cache.get(openId, loader);
+    }
+
+    public UserVO getIfPresent(String openId) {
+        return cache.getIfPresent(openId);
+    }
+
+    /**
+     * 写穿：数据库写入成功后放入最新实体
+     */
+    public void put(UserVO user) {
+        if (user != null && user.getOpenId() != null) {
+            cache.put(user.getOpenId(), user);
+        }
+    }
+
+    /**
+     * 数据库原子更新后同步修改缓存中的副本，未缓存则什么都不做
+     */
+    public void update(String openId, Consumer<UserVO> change) {
+        cache.asMap().computeIfPresent(openId, (key, user) -> {
+            UserVO copy = copyOf(user);
+            change.accept(copy);
+            return copy;
+        });
+    }
+
+    public void invalidate(String openId) {
+        cache.invalidate(openId);
+    }
+
+    /**
+     * 命中 / 未命中 / 淘汰等指标
+     */
+    public Map<String, Object> metrics() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("size", cache.estimatedSize());
+        metrics.put("hits", stats.hitCount());
+        metrics.put("misses", stats.missCount());
+        metrics.put("hitRate", stats.hitRate());
+        metrics.put("loads", stats.loadCount());
+        metrics.put("loadFailures", stats.loadFailureCount());
+        metrics.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        metrics.put("evictions", stats.evictionCount());
+        return metrics;
+    }
+
+    private static UserVO copyOf(UserVO user) {
+        return new UserVO(user.getId(), user.getOpenId(), user.getNickName(), user.getWins(), user.getLosses(),
+                user.getCreateTime(), user.getBean(), user.getLastSignInDate(), user.getTotalGames());
+    }
+}
@@ -2,22 +2,35 @@ package com.tencard.demo01.saveData;
 
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.time.LocalDate;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/user") // 路径改为单数
 public class UserController {
 
+    // 排行榜分页与名次窗口的上限
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_RANK_WINDOW = 50;
+
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Autowired
+    private WinStreakTracker winStreakTracker;
+
     @PostMapping("/signin/{openId}")
-    public ResponseEntity<?> signIn(@PathVariable String openId) {
+    public ResponseEntity<?> signIn(@PathVariable String openId, HttpServletRequest request) {
         JSONObject json = new JSONObject();
         json.put("success", false);
 
@@ -25,23 +38,25 @@ public class UserController {
             json.put("message", "openId is required");
             return ResponseEntity.ok(json);
         }
+        // 签到会发豆子，必须带会话令牌（路径与令牌是否一致已由拦截器检查）
+        if (SessionTokenInterceptor.verifiedOpenId(request) == null) {
+            json.put("message", "请先登录");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(json);
+        }
 
         UserVO user = userService.findOrCreateUserByOpenId(openId);
-        LocalDate today = LocalDate.now();
         if(user == null) {
             json.put("message", "用户不存在");
             return ResponseEntity.ok(json);
         }
 
-        if (user.getLastSignInDate() != null && user.getLastSignInDate().isEqual(today)) {
+        // 判断是否已签到与发放豆子在同一条 UPDATE 中完成，并发签到也只会成功一次
+        UserVO updatedUser = userService.signIn(openId);
+        if (updatedUser == null) {
             json.put("message", "您今天已经签到过了");
             return ResponseEntity.ok(json);
         }
 
-        user.setBean(user.getBean() + 500);
-        user.setLastSignInDate(today);
-        UserVO updatedUser = userService.savePlayer(user);
-
         json.put("success", true);
         json.put("message", "签到成功，获得500豆子！");
         json.put("beans", updatedUser.getBean());
@@ -49,22 +64,88 @@ public class UserController {
     }
 
     /**
-     * 获取排行榜数据
-     * @return 按胜利场次排序的用户列表 (Top 10)
+     * 获取排行榜数据，默认胜场榜第一页（Top 10）
+     * @param page 页码，从 0 开始
+     * @param size 每页条数，最多 MAX_PAGE_SIZE
+     * @param board 榜单：wins / winRate / bean
+     * @return 按名次排序的榜单（只含名次、昵称和战绩，不含 openId），带 ETag，未变化时返回 304
      */
     @GetMapping("/leaderboard")
-    public List<UserVO> getLeaderboard() {
-        return userService.getLeaderboard();
+    public ResponseEntity<List<LeaderboardEntry>> getLeaderboard(@RequestParam(defaultValue = "0") int page,
+                                                                 @RequestParam(defaultValue = "10") int size,
+                                                                 @RequestParam(required = false) String board,
+                                                                 WebRequest request) {
+        LeaderboardService.Board type = LeaderboardService.Board.of(board);
+        if (type == null || page < 0 || size <= 0 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        String etag = etag(type);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(leaderboardService.page(type, page, size));
+    }
+
+    /**
+     * 查询玩家名次以及前后各 window 名玩家
+     * @param window 前后各取多少名，最多 MAX_RANK_WINDOW
+     * @param board 榜单：wins / winRate / bean
+     */
+    @GetMapping("/{openId}/rank")
+    public ResponseEntity<LeaderboardService.RankWindow> getRank(@PathVariable String openId,
+                                                                 @RequestParam(defaultValue = "5") int window,
+                                                                 @RequestParam(required = false) String board,
+                                                                 WebRequest request) {
+        LeaderboardService.Board type = LeaderboardService.Board.of(board);
+        if (type == null || window < 0 || window > MAX_RANK_WINDOW) {
+            return ResponseEntity.badRequest().build();
+        }
+        String etag = etag(type);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        LeaderboardService.RankWindow rank = leaderboardService.around(type, openId, window);
+        if (rank == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(rank);
+    }
+
+    /**
+     * 查询玩家当前的同房间连胜
+     */
+    @GetMapping("/{openId}/streak")
+    public ResponseEntity<?> getStreak(@PathVariable String openId) {
+        JSONObject json = new JSONObject();
+        json.put("openId", openId);
+        json.put("streak", winStreakTracker.current(openId));
+        json.put("roomId", winStreakTracker.currentRoomId(openId));
+        return ResponseEntity.ok(json);
+    }
+
+    // 先取版本号再读数据，返回的数据不会比 ETag 旧
+    private String etag(LeaderboardService.Board board) {
+        return "\"" + board.name().toLowerCase() + "-" + leaderboardService.version() + "\"";
     }
 
     /**
      * 创建一个新用户
      */
     @PostMapping
-    public ResponseEntity<UserVO> createUser(@RequestBody UserVO user) {
+    public ResponseEntity<UserVO> createUser(@RequestBody UserVO user, HttpServletRequest request) {
         if (user.getOpenId() == null || user.getOpenId().isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
+        HttpStatus denied = checkOwner(request, user.getOpenId());
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
         UserVO createdUser = userService.createPlayer(user.getOpenId(), user.getNickName());
         if (createdUser == null) {
             return ResponseEntity.status(409).build(); // 409 Conflict - User already exists
@@ -73,10 +154,11 @@ public class UserController {
     }
 
     /**
-     * 更新用户信息
+     * 更新用户信息：只能改昵称，战绩和豆子只由对局结算写入
      */
     @PutMapping("/{id}")
-    public ResponseEntity<UserVO> updateUser(@PathVariable Long id, @RequestBody UserVO userDetails) {
+    public ResponseEntity<UserVO> updateUser(@PathVariable Long id, @RequestBody UserVO userDetails,
+                                             HttpServletRequest request) {
         // A more robust implementation would fetch user by ID directly
         UserVO existingUser = userService.getAllPlayers().stream()
                 .filter(u -> u.getId().equals(id))
@@ -86,12 +168,15 @@ public class UserController {
         if (existingUser == null) {
             return ResponseEntity.notFound().build();
         }
+        HttpStatus denied = checkOwner(request, existingUser.getOpenId());
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
 
-        existingUser.setNickName(userDetails.getNickName());
-        existingUser.setWins(userDetails.getWins());
-        existingUser.setLosses(userDetails.getLosses());
-
-        UserVO updatedUser = userService.savePlayer(existingUser);
+        UserVO updatedUser = userService.updateUserNickname(existingUser.getOpenId(), userDetails.getNickName());
+        if (updatedUser == null) {
+            return ResponseEntity.badRequest().build();
+        }
         return ResponseEntity.ok(updatedUser);
     }
 
@@ -110,13 +195,26 @@ public class UserController {
      * @return 更新结果
      */
     @PostMapping("/updateNickname")
-    public ResponseEntity<?> updateNickname(@RequestBody UserVO userVO) {
+    public ResponseEntity<?> updateNickname(@RequestBody UserVO userVO, HttpServletRequest request) {
         String openId = userVO.getOpenId();
         String nickname = userVO.getNickName();
         if(!StringUtils.hasLength(openId) || !StringUtils.hasLength(nickname) || nickname.length() > 20) {
             return ResponseEntity.badRequest().build();
         }
+        HttpStatus denied = checkOwner(request, openId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
         final UserVO vo = userService.updateUserNickname(openId, nickname);
         return ResponseEntity.ok(vo);
     }
-}
\ No newline at end of file
+
+    // 写接口必须带有效会话令牌（401），请求里的 openId 必须与令牌一致（403）；通过返回 null
+    private static HttpStatus checkOwner(HttpServletRequest request, String openId) {
+        String tokenOpenId = SessionTokenInterceptor.verifiedOpenId(request);
+        if (tokenOpenId == null) {
+            return HttpStatus.UNAUTHORIZED;
+        }
+        return tokenOpenId.equals(openId) ? null : HttpStatus.FORBIDDEN;
+    }
+}
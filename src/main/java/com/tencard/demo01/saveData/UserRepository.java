@@ -1,9 +1,13 @@
 package com.tencard.demo01.saveData;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.LocalDate;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserVO, Long> {
@@ -11,8 +15,36 @@ public interface UserRepository extends JpaRepository<UserVO, Long> {
     UserVO findByOpenId(String openId);
 
     /**
-     * 查询胜利场次排名前10的用户
-     * @return 用户列表
+     * 结算一局：一条语句同时更新胜者和败者的战绩与豆子，败者余额不足时扣到 0 为止
+     * @return 更新行数，正常为 2
      */
-    List<UserVO> findTop10ByOrderByWinsDesc();
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update UserVO u set " +
+            "u.wins = coalesce(u.wins, 0) + (case when u.openId = :winner then 1 else 0 end), " +
+            "u.losses = coalesce(u.losses, 0) + (case when u.openId = :loser then 1 else 0 end), " +
+            "u.totalGames = coalesce(u.totalGames, 0) + 1, " +
+            "u.bean = case when u.openId = :winner then (coalesce(u.bean, 0) + :bet) " +
+            "when coalesce(u.bean, 0) >= :bet then (u.bean - :bet) else 0 end " +
+            "where u.openId in (:winner, :loser)")
+    int settleGame(@Param("winner") String winner, @Param("loser") String loser, @Param("bet") long bet);
+
+    /**
+     * 只改昵称，不读出整行再保存，不会覆盖并发的豆子、战绩原子更新
+     * @return 更新行数，0 表示用户不存在
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update UserVO u set u.nickName = :nickName where u.openId = :openId")
+    int updateNickname(@Param("openId") String openId, @Param("nickName") String nickName);
+
+    /**
+     * 每日签到：当天未签到时原子地发放奖励并记录签到日期
+     * @return 更新行数，0 表示今天已经签到过
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update UserVO u set u.bean = coalesce(u.bean, 0) + :reward, u.lastSignInDate = :today " +
+            "where u.openId = :openId and (u.lastSignInDate is null or u.lastSignInDate <> :today)")
+    int signIn(@Param("openId") String openId, @Param("reward") long reward, @Param("today") LocalDate today);
 }
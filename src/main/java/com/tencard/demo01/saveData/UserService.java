@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Service
@@ -13,15 +14,38 @@ public class UserService {
 
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
+    // 每日签到奖励的豆子数
+    public static final long SIGN_IN_REWARD = 500L;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
     /**
      * 根据 openId 查找用户，如果不存在则创建新用户。
+     * 优先读缓存，同一 openId 并发未命中时只查一次数据库。
+     * 返回的实体可能是缓存中的共享对象，调用方不要直接修改。
      * @param openId 用户的唯一标识
      * @return 找到或创建的用户实体
      */
     public UserVO findOrCreateUserByOpenId(String openId) {
+        return userCache.get(openId, this::loadOrCreateUser);
+    }
+
+    /**
+     * 只读缓存，不查数据库
+     * @return 未缓存时返回 null
+     */
+    public UserVO cachedUser(String openId) {
+        return userCache.getIfPresent(openId);
+    }
+
+    private UserVO loadOrCreateUser(String openId) {
         UserVO user = userRepository.findByOpenId(openId);
         if (user == null) {
             log.info("Creating new user for openId: {}", openId);
@@ -33,6 +57,7 @@ public class UserService {
             user.setBean(1000L); // 新用户注册时给予1000豆子
             user.setTotalGames(0);
             user = userRepository.save(user);
+            leaderboardService.add(user);
         }
         return user;
     }
@@ -47,80 +72,87 @@ public class UserService {
         if(!StringUtils.hasLength(openId) || !StringUtils.hasLength(nickname) || nickname.length() > 20) {
             return null;
         }
-        UserVO user = userRepository.findByOpenId(openId);
-        if (user != null) {
-            log.info("Updating nickname for openId: {} to {}", openId, nickname);
-            user.setNickName(nickname);
-            user = userRepository.save(user);
-        } else {
-            // 新建
-            user = new UserVO();
-            user.setOpenId(openId);
-            user.setNickName(nickname);
-            // 设置新用户的默认值
-            user.setWins(0);
-            user.setLosses(0);
-            user.setBean(1000L); // 新用户注册时给予1000豆子
-            user.setTotalGames(0);
-            user = userRepository.save(user);
+        // 昵称没变就不写库（每次进房都会调用）
+        UserVO cached = userCache.getIfPresent(openId);
+        if (cached != null && nickname.equals(cached.getNickName())) {
+            return cached;
         }
-        return user;
+        // 不存在时经缓存单飞创建，同一 openId 并发改昵称不会重复插入
+        findOrCreateUserByOpenId(openId);
+        log.info("Updating nickname for openId: {} to {}", openId, nickname);
+        // 单列 UPDATE，不读-改-写整行，不会覆盖同时落库的豆子和战绩
+        if (userRepository.updateNickname(openId, nickname) == 0) {
+            log.warn("Nickname update found no user for openId: {}", openId);
+            return null;
+        }
+        userCache.update(openId, u -> u.setNickName(nickname));
+        leaderboardService.rename(openId, nickname);
+        return findOrCreateUserByOpenId(openId);
     }
 
     /**
-     * 更新用户战绩
+     * 每日签到，发放 SIGN_IN_REWARD 豆子
      * @param openId 用户的唯一标识
-     * @param isWin 是否胜利
+     * @return 签到后的用户；今天已经签到过则返回 null
      */
-    public void updateUserStats(String openId, boolean isWin) {
-        UserVO user = userRepository.findByOpenId(openId);
-        if (user != null) {
-            if (isWin) {
-                user.setWins(user.getWins() + 1);
-            } else {
-                user.setLosses(user.getLosses() + 1);
-            }
-            user.setTotalGames(user.getTotalGames() + 1); // 增加总游戏场次计数
-            userRepository.save(user);
-            log.info("Updated stats for user {}: wins={}, losses={}", openId, user.getWins(), user.getLosses());
-        } else {
-            log.warn("Attempted to update stats for non-existent user with openId: {}", openId);
+    public UserVO signIn(String openId) {
+        LocalDate today = LocalDate.now();
+        if (userRepository.signIn(openId, SIGN_IN_REWARD, today) == 0) {
+            return null;
         }
+        // 只叠加签到奖励，不用重读的整行覆盖缓存和榜单：重读之后才同步的结算增量会被覆盖掉
+        userCache.update(openId, u -> {
+            u.setBean((u.getBean() == null ? 0L : u.getBean()) + SIGN_IN_REWARD);
+            u.setLastSignInDate(today);
+        });
+        leaderboardService.adjust(openId, 0, 0, SIGN_IN_REWARD);
+        return findOrCreateUserByOpenId(openId);
     }
 
     /**
-     * 更新用户的豆子数量
-     * @param openId 用户的唯一标识
-     * @param amount 要增加或减少的豆子数量（可以为负数）
+     * 对局结算落库后同步缓存和排行榜：胜者 +1 胜并赢得赌注，败者 +1 负并扣除赌注（最低扣到 0）
      */
-    public void updateUserBean(String openId, long amount) {
-        UserVO user = userRepository.findByOpenId(openId);
-        if (user != null) {
-            user.setBean(user.getBean() + amount);
-            userRepository.save(user);
-            log.info("Updated bean for user {}: new balance is {}", openId, user.getBean());
-        } else {
-            log.warn("Attempted to update bean for non-existent user with openId: {}", openId);
-        }
+    public void applySettlement(String winner, String loser, long bet) {
+        userCache.update(winner, u -> {
+            u.setWins(zeroIfNull(u.getWins()) + 1);
+            u.setTotalGames(zeroIfNull(u.getTotalGames()) + 1);
+            u.setBean((u.getBean() == null ? 0L : u.getBean()) + bet);
+        });
+        userCache.update(loser, u -> {
+            u.setLosses(zeroIfNull(u.getLosses()) + 1);
+            u.setTotalGames(zeroIfNull(u.getTotalGames()) + 1);
+            u.setBean(Math.max(0L, (u.getBean() == null ? 0L : u.getBean()) - bet));
+        });
+        leaderboardService.applyGame(winner, loser, bet);
     }
 
     /**
-     * 获取排行榜
-     * @return 按胜利场次排序的用户列表 (Top 10)
+     * 获取排行榜（内存榜单，不查数据库）
+     * @return 胜场榜前 10 名（只含公开字段）
      */
-    public List<UserVO> getLeaderboard() {
-        return userRepository.findTop10ByOrderByWinsDesc();
+    public List<LeaderboardEntry> getLeaderboard() {
+        return leaderboardService.top(10);
     }
 
     public List<UserVO> getAllPlayers() {
         return userRepository.findAll();
     }
 
+    /**
+     * 整行保存，只用于新建用户；已有用户的修改走原子 UPDATE，避免覆盖并发的豆子和战绩更新
+     */
     public UserVO savePlayer(UserVO user) {
-        return userRepository.save(user);
+        UserVO saved = userRepository.save(user);
+        userCache.put(saved);
+        leaderboardService.add(saved);
+        return saved;
     }
 
     public void deletePlayer(Long id) {
+        userRepository.findById(id).ifPresent(user -> {
+            userCache.invalidate(user.getOpenId());
+            leaderboardService.remove(user.getOpenId());
+        });
         userRepository.deleteById(id);
     }
 
@@ -133,7 +165,7 @@ public class UserService {
         user.setNickName(nickName);
         user.setWins(0);
         user.setLosses(0);
-        return userRepository.save(user);
+        return savePlayer(user);
     }
 
     public UserVO createRandomPlayer(String openId) {
@@ -146,6 +178,10 @@ public class UserService {
         user.setNickName("Player_" + (System.currentTimeMillis() % 10000));
         user.setWins(0);
         user.setLosses(0);
-        return userRepository.save(user);
+        return savePlayer(user);
+    }
+
+    private static int zeroIfNull(Integer value) {
+        return value == null ? 0 : value;
     }
 }
@@ -8,7 +8,7 @@ import org.hibernate.annotations.CreationTimestamp;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "idx_users_wins", columnList = "wins"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
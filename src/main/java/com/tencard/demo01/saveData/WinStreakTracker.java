@@ -0,0 +1,67 @@
+package com.tencard.demo01.saveData;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同房间连胜计数：每局结算时 O(1) 更新，不再回溯排序对局历史。
+ * 赢一局：同一房间 +1，换了房间从 1 开始；输一局或离开房间清零。
+ */
+@Component
+public class WinStreakTracker {
+
+    // openId -> 当前连胜
+    private final Map<String, Streak> streaks = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一场胜利
+     * @return 记录后的连胜局数
+     */
+    public int recordWin(String openId, long roomId) {
+        return streaks.compute(openId, (k, streak) ->
+                streak != null && streak.roomId == roomId ? new Streak(roomId, streak.count + 1) : new Streak(roomId, 1)
+        ).count;
+    }
+
+    /**
+     * 记录一场失败，连胜清零
+     */
+    public void recordLoss(String openId) {
+        streaks.remove(openId);
+    }
+
+    /**
+     * 玩家离开房间，连胜清零
+     */
+    public void reset(String openId) {
+        streaks.remove(openId);
+    }
+
+    /**
+     * 当前连胜局数，没有连胜返回 0
+     */
+    public int current(String openId) {
+        Streak streak = streaks.get(openId);
+        return streak == null ? 0 : streak.count;
+    }
+
+    /**
+     * 当前连胜所在房间，没有连胜返回 null
+     */
+    public Long currentRoomId(String openId) {
+        Streak streak = streaks.get(openId);
+        return streak == null ? null : streak.roomId;
+    }
+
+    private static final class Streak {
+        private final long roomId;
+        private final int count;
+
+        Streak(long roomId, int count) {
+            this.roomId = roomId;
+            this.count = count;
+        }
+    }
+}
@@ -4,10 +4,13 @@ import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
@@ -31,32 +34,73 @@ public class WxLoginController {
     @Value("${wechat.secret}")
     private String appSecret;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${wechat.api-base-url:https://api.weixin.qq.com}")
+    private String apiBaseUrl;
+
+    // 共享的连接池 RestTemplate，带超时和按接口限流
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
 
     @PostMapping("/login")
     public Map<String, Object> wxLogin(@RequestParam("code") String code) {
-        String url = "https://api.weixin.qq.com/sns/jscode2session" +
+        String url = apiBaseUrl + "/sns/jscode2session" +
                 "?appid=" + appId +
                 "&secret=" + appSecret +
                 "&js_code=" + code +
                 "&grant_type=authorization_code";
 
-        String response = restTemplate.getForObject(url, String.class);
+        Map<String, Object> result = new HashMap<>();
+        String response;
+        try {
+            response = restTemplate.getForObject(url, String.class);
+        } catch (RestClientException e) {
+            // 微信超时或限流，不让登录请求一直挂着
+            log.error("jscode2session failed: {}", e.getMessage());
+            result.put("success", false);
+            result.put("message", "登录服务繁忙，请稍后重试");
+            return result;
+        }
         JSONObject jsonResponse = JSONObject.parseObject(response);
 
-        Map<String, Object> result = new HashMap<>();
-        String openId = jsonResponse.getString("openid");
+        String openId = jsonResponse == null ? null : jsonResponse.getString("openid");
 
         if (openId != null) {
             // 根据 openId 查找或创建用户
             UserVO user = userService.findOrCreateUserByOpenId(openId);
             log.info("------ 查询｜创建的用户 : {} ---------", user.toString());
+            // 签发会话令牌，之后连接 /match 和调用 /api/user 都带令牌，重连不用再走一遍登录
+            SessionTokenService.Issued issued = sessionTokenService.issue(user.getOpenId());
             result.put("success", true);
             result.put("openId", user.getOpenId());
+            result.put("token", issued.getToken());
+            result.put("expiresAt", issued.getExpiresAt());
         } else {
             result.put("success", false);
-            result.put("message", jsonResponse.getString("errmsg"));
+            result.put("message", jsonResponse == null ? "empty response" : jsonResponse.getString("errmsg"));
+        }
+        return result;
+    }
+
+    /**
+     * 用仍然有效的会话令牌换一个新令牌，不调用微信也不查库
+     */
+    @PostMapping("/refresh")
+    public Map<String, Object> refresh(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        Map<String, Object> result = new HashMap<>();
+        String openId = sessionTokenService.verify(SessionTokenService.fromAuthorizationHeader(authorization));
+        if (openId == null) {
+            result.put("success", false);
+            result.put("message", "会话令牌无效或已过期，请重新登录");
+            return result;
         }
+        SessionTokenService.Issued issued = sessionTokenService.issue(openId);
+        result.put("success", true);
+        result.put("openId", openId);
+        result.put("token", issued.getToken());
+        result.put("expiresAt", issued.getExpiresAt());
         return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package com.tencard.demo01;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * 性能测试用的计时和分配统计。每个样本连续调用 batch 次取平均，避免单次调用短于计时精度
+ */
+final class Benchmarks {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Benchmarks() {
+    }
+
+    /**
+     * 预热后采样 samples 次，返回按升序排列的每次调用纳秒数
+     */
+    static double[] nanosPerCall(int samples, int batch, Runnable call) {
+        for (int i = 0; i < samples * batch; i++) {
+            call.run();
+        }
+        double[] nanos = new double[samples];
+        for (int s = 0; s < samples; s++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                call.run();
+            }
+            nanos[s] = (double) (System.nanoTime() - start) / batch;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    static double median(double[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    static double p99(double[] sorted) {
+        return sorted[sorted.length * 99 / 100];
+    }
+
+    /**
+     * 预热后连续调用 calls 次，返回当前线程平均每次分配的字节数
+     */
+    static double bytesPerCall(int calls, Runnable call) {
+        for (int i = 0; i < calls; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            call.run();
+        }
+        return (double) (THREADS.getThreadAllocatedBytes(threadId) - before) / calls;
+    }
+}
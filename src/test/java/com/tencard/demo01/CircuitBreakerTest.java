@@ -0,0 +1,69 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 100;
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+        fail(breaker, 2);
+        breaker.onSuccess();
+        // 成功会清零连续失败
+        fail(breaker, 2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.openedCount());
+        assertEquals(1, breaker.shortCircuitedCount());
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThroughAndClosesOnSuccess() throws Exception {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        // 探测在途时其他调用继续短路
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeReopens() throws Exception {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS);
+        fail(breaker, 2);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        return breaker;
+    }
+
+    private static void fail(CircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.tencard.demo01;
+
+import com.tencard.demo01.saveData.SessionTokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.containsString;
+
+@WebMvcTest(GameHistoryController.class)
+@Import(SessionTokenService.class)
+@TestPropertySource(properties = "xcards.session-token.secret=test-secret")
+class GameHistoryControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @MockBean
+    private GameHistoryStore gameHistoryStore;
+
+    @Test
+    void returnsOwnHistoryFromThePlayersView() throws Exception {
+        when(gameHistoryStore.recent("alice")).thenReturn(Arrays.asList(
+                GameHistoryStoreTest.record("g2", "bob", "alice"),
+                GameHistoryStoreTest.record("g1", "alice", "bob")));
+        mockMvc.perform(get("/api/user/alice/history").param("limit", "1")
+                        .header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.games.length()").value(1))
+                .andExpect(jsonPath("$.games[0].gameId").value("g2"))
+                .andExpect(jsonPath("$.games[0].outcome").value("loss"))
+                .andExpect(jsonPath("$.games[0].redCards.length()").value(10))
+                // 不泄露对手的 openId
+                .andExpect(content().string(not(containsString("bob"))));
+    }
+
+    @Test
+    void anotherPlayersHistoryIsForbidden() throws Exception {
+        mockMvc.perform(get("/api/user/bob/history").header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void negativeLimitIsRejected() throws Exception {
+        mockMvc.perform(get("/api/user/alice/history").param("limit", "-1")
+                        .header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String bearer(String openId) {
+        return "Bearer " + sessionTokenService.issue(openId).getToken();
+    }
+}
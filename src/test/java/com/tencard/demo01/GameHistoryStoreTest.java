@@ -0,0 +1,69 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameHistoryStoreTest {
+
+    // 一条记录的溢出长度：3 个 long + result + 双方 10 张牌 + 3 个 UTF 字符串
+    private static final int RECORD_BYTES = 8 * 3 + 1 + 20 + (2 + 2) + (2 + 1) + (2 + 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsNewestRecordsPerPlayer() {
+        GameHistoryStore store = new GameHistoryStore(3, 30, "", 256);
+        for (int i = 1; i <= 5; i++) {
+            store.add(record("g" + i, "a", "b"));
+        }
+        List<GameRecord> recent = store.recent("a");
+        assertEquals(3, recent.size());
+        assertEquals("g5", recent.get(0).getGameId());
+        assertEquals("g3", recent.get(2).getGameId());
+        assertEquals(3, store.recent("b").size());
+        assertEquals(0, store.recent("c").size());
+    }
+
+    @Test
+    void spillsOnceBatchIsFullWithoutWaitingForTheSchedule() throws Exception {
+        Path file = dir.resolve("history.bin");
+        GameHistoryStore store = new GameHistoryStore(3, 30, file.toString(), 4);
+        for (int i = 0; i < 3; i++) {
+            store.add(record("g" + i, "a", "b"));
+        }
+        assertEquals(3, store.metrics().get("pendingSpill"));
+        assertEquals(false, Files.exists(file));
+
+        store.add(record("g3", "a", "b"));
+        assertEquals(0, store.metrics().get("pendingSpill"));
+        assertEquals(4L, store.metrics().get("spilled"));
+        assertEquals(4L * RECORD_BYTES, Files.size(file));
+        store.shutdown();
+    }
+
+    @Test
+    void dropsPendingRecordsWhenTheFileCannotBeWritten() {
+        // 目录不能当作文件打开
+        GameHistoryStore store = new GameHistoryStore(3, 30, dir.toString(), 2);
+        for (int i = 0; i < 5; i++) {
+            store.add(record("g" + i, "a", "b"));
+        }
+        assertEquals(4L, store.metrics().get("spillDropped"));
+        assertEquals(1, store.metrics().get("pendingSpill"));
+        store.shutdown();
+        assertEquals(5L, store.metrics().get("spillDropped"));
+        assertEquals(0, store.metrics().get("pendingSpill"));
+    }
+
+    static GameRecord record(String gameId, String winner, String loser) {
+        return new GameRecord(gameId, 1L, new byte[10], new byte[10], GameRecord.RESULT_RED_WIN,
+                winner, loser, 1000L, 2000L);
+    }
+}
@@ -1,4 +0,0 @@
-package com.tencard.demo01;
-
-public class GameState {
-}
@@ -0,0 +1,58 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 出牌路径不分配对象；对局记录直接复制数组，比原来 BeanUtils 反射拷贝整个 GameState 快
+ */
+class GameStateBenchmarkTest {
+
+    private Object sink;
+    private int cards;
+
+    @Test
+    void playCardPathDoesNotAllocate() {
+        GameState state = new GameState();
+        double bytes = Benchmarks.bytesPerCall(100_000, () -> {
+            // 反复在第一回合出 3 对 4：双方出牌、判断回合结束、比较点数、读取本回合的牌
+            state.addCard("redSide", 3);
+            state.addCard("blueSide", 4);
+            if (state.isCurrentRoundComplete()) {
+                sink = state.determineRoundResult();
+                cards += state.getCurrentRedCard() + state.getCurrentBlueCard() + state.getRoundNumber();
+            }
+        });
+        assertEquals(GameState.RESULT_CONTINUE, sink);
+        assertTrue(bytes < 1, "play-card path allocates " + bytes + " bytes per round");
+    }
+
+    @Test
+    void recordCreationBeatsBeanUtils() {
+        GameState state = new GameState();
+        state.setRoomId(10001L);
+        for (int round = 0; round < 3; round++) {
+            state.addCard("redSide", 6 + round);
+            state.addCard("blueSide", 2 + round);
+            state.nextRound();
+        }
+        state.recordGameResult("red", "blue");
+
+        double[] beanUtils = Benchmarks.nanosPerCall(200, 100, () -> {
+            // 原来的 createRecord
+            GameState record = new GameState();
+            BeanUtils.copyProperties(state, record);
+            sink = record;
+        });
+        double[] toRecord = Benchmarks.nanosPerCall(200, 100, () -> sink = state.toRecord(GameState.RESULT_RED_WIN));
+        GameRecord record = state.toRecord(GameState.RESULT_RED_WIN);
+        assertEquals(8, record.getRedCards()[2]);
+        assertEquals(4, record.getBlueCards()[2]);
+        double before = Benchmarks.median(beanUtils);
+        double after = Benchmarks.median(toRecord);
+        assertTrue(after * 5 < before, "record creation " + before + " ns with BeanUtils, " + after + " ns with toRecord");
+    }
+}
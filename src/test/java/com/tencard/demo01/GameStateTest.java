@@ -0,0 +1,84 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameStateTest {
+
+    private static final String RED = "redSide";
+    private static final String BLUE = "blueSide";
+
+    @Test
+    void oneBeforeTheLastRoundContinues() {
+        GameState state = new GameState();
+        assertEquals(GameState.RESULT_CONTINUE, play(state, 1, 10));
+        assertFalse(state.isGameCompleted());
+    }
+
+    @Test
+    void oneInTheLastRoundStillEndsTheGame() {
+        GameState state = reachLastRound();
+        assertEquals(GameState.RESULT_BLUE_WIN, play(state, 1, 5));
+        assertTrue(state.isGameCompleted());
+
+        state = reachLastRound();
+        assertEquals(GameState.RESULT_DRAW, play(state, 1, 1));
+        assertTrue(state.isGameCompleted());
+    }
+
+    @Test
+    void everyGameEndsWithinTenRounds() {
+        Random random = new Random(7);
+        for (int game = 0; game < 10_000; game++) {
+            GameState state = new GameState();
+            int[] red = shuffledDeck(random);
+            int[] blue = shuffledDeck(random);
+            String result = null;
+            for (int round = 0; round < GameState.TEN && !state.isGameCompleted(); round++) {
+                result = play(state, red[round], blue[round]);
+                if (GameState.RESULT_CONTINUE.equals(result)) {
+                    state.nextRound();
+                }
+            }
+            assertTrue(state.isGameCompleted(), "game " + game + " did not finish");
+            assertNotEquals(GameState.RESULT_CONTINUE, result);
+        }
+    }
+
+    private static GameState reachLastRound() {
+        GameState state = new GameState();
+        // 9 回合都出 1，一直进入下一轮
+        for (int round = 0; round < GameState.TEN - 1; round++) {
+            assertEquals(GameState.RESULT_CONTINUE, play(state, 1, 1));
+            state.nextRound();
+        }
+        assertEquals(GameState.TEN, state.getRoundNumber());
+        return state;
+    }
+
+    private static String play(GameState state, int redCard, int blueCard) {
+        state.addCard(RED, redCard);
+        state.addCard(BLUE, blueCard);
+        return state.determineRoundResult();
+    }
+
+    static int[] shuffledDeck(Random random) {
+        int[] deck = new int[GameState.TEN];
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = i + 1;
+        }
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = deck[i];
+            deck[i] = deck[j];
+            deck[j] = t;
+        }
+        return deck;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tencard.demo01;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpEndpointBulkheadTest {
+
+    private final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    private final HttpEndpointBulkhead bulkhead = new HttpEndpointBulkhead(2, 50, connectionManager);
+    private final ExecutorService pool = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+        connectionManager.shutdown();
+    }
+
+    @Test
+    void rejectsCallsBeyondTheLimitUntilResponsesAreClosed() throws Exception {
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ClientHttpRequestExecution slow = (request, body) -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+        };
+        Future<ClientHttpResponse> first = pool.submit(() -> call("/wxa/msg_sec_check", slow));
+        Future<ClientHttpResponse> second = pool.submit(() -> call("/wxa/msg_sec_check", slow));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // 同一接口名额已满，等待 50ms 后拒绝
+        assertThrows(ResourceAccessException.class, () -> call("/wxa/msg_sec_check", ok()));
+        // 其他接口不受影响
+        call("/sns/jscode2session", ok()).close();
+
+        release.countDown();
+        ClientHttpResponse firstResponse = first.get(5, TimeUnit.SECONDS);
+        ClientHttpResponse secondResponse = second.get(5, TimeUnit.SECONDS);
+        // 响应关闭前名额仍被占用
+        assertThrows(ResourceAccessException.class, () -> call("/wxa/msg_sec_check", ok()));
+        firstResponse.close();
+        // 重复关闭只归还一次名额
+        firstResponse.close();
+        secondResponse.close();
+        call("/wxa/msg_sec_check", ok()).close();
+
+        Map<String, Object> endpoint = endpoint("wx.test/wxa/msg_sec_check");
+        assertEquals(2L, endpoint.get("rejected"));
+        assertEquals(0, endpoint.get("inFlight"));
+    }
+
+    @Test
+    void failedCallReleasesItsPermit() throws Exception {
+        ClientHttpRequestExecution failing = (request, body) -> {
+            throw new IOException("connection reset");
+        };
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IOException.class, () -> call("/cgi-bin/token", failing));
+        }
+        call("/cgi-bin/token", ok()).close();
+        Map<String, Object> endpoint = endpoint("wx.test/cgi-bin/token");
+        assertEquals(5L, endpoint.get("errors"));
+        assertEquals(0, endpoint.get("inFlight"));
+    }
+
+    private ClientHttpResponse call(String path, ClientHttpRequestExecution execution) throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET,
+                URI.create("http://wx.test" + path + "?access_token=secret"));
+        return bulkhead.intercept(request, new byte[0], execution);
+    }
+
+    private static ClientHttpRequestExecution ok() {
+        return (request, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> endpoint(String key) {
+        Map<String, Object> endpoints = (Map<String, Object>) bulkhead.metrics().get("endpoints");
+        return (Map<String, Object>) endpoints.get(key);
+    }
+}
@@ -0,0 +1,49 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每帧解析成本：改造前先解析成 JSONObject 读 type，join_room 再把原始字符串解析一遍成 PlayerVO；
+ * 现在 InboundCommandDecoder 只解析一次
+ */
+class InboundDecodingBenchmarkTest {
+
+    private static final String JOIN_ROOM = "{\"type\":\"join_room\",\"openId\":\"oAbCdEfGhIjKlMnOpQrStUvWxYz0\","
+            + "\"nickName\":\"玩家一号\",\"roomCode\":\"4396\",\"winRate\":49,\"lastSeq\":12}";
+
+    private final InboundCommandDecoder decoder = new InboundCommandDecoder();
+    private Object sink;
+
+    @Test
+    void joinRoomIsParsedOnce() {
+        InboundCommand.JoinRoom command = (InboundCommand.JoinRoom) decoder.decode(JOIN_ROOM);
+        assertEquals("4396", command.getPlayer().getRoomCode());
+        assertEquals(12L, command.getLastSeq());
+
+        double[] doubleParse = Benchmarks.nanosPerCall(200, 200, () -> sink = doubleParse(JOIN_ROOM));
+        double[] singlePass = Benchmarks.nanosPerCall(200, 200, () -> sink = decoder.decode(JOIN_ROOM));
+        double doubleBytes = Benchmarks.bytesPerCall(20_000, () -> sink = doubleParse(JOIN_ROOM));
+        double singleBytes = Benchmarks.bytesPerCall(20_000, () -> sink = decoder.decode(JOIN_ROOM));
+
+        double before = Benchmarks.median(doubleParse);
+        double after = Benchmarks.median(singlePass);
+        assertTrue(after * 1.25 < before, "join_room parse " + before + " ns -> " + after + " ns per frame");
+        assertTrue(singleBytes * 1.25 < doubleBytes,
+                "join_room parse " + doubleBytes + " -> " + singleBytes + " bytes per frame");
+    }
+
+    // 改造前 onMessage 的做法：先解析一次读 type，join_room 再解析一次
+    private static Object doubleParse(String message) {
+        JSONObject json = JSON.parseObject(message);
+        String type = json.getString("type");
+        if ("join_room".equals(type)) {
+            return JSON.parseObject(message, PlayerVO.class);
+        }
+        return json;
+    }
+}
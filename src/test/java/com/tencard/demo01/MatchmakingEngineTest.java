@@ -0,0 +1,192 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchmakingEngineTest {
+
+    private static final long MIN_BEAN = 200;
+
+    private final MatchmakingEngine engine = new MatchmakingEngine(1000, 10, 5000, 5, MIN_BEAN);
+    private final List<String> matches = new ArrayList<>();
+
+    MatchmakingEngineTest() {
+        engine.setMatchListener((first, second) -> matches.add(first.getOpenId() + ":" + second.getOpenId()));
+    }
+
+    @Test
+    void refusesPlayersBelowMinimumBean() {
+        assertFalse(engine.enqueue(player("poor"), MIN_BEAN - 1, 0, 0));
+        assertFalse(engine.isWaiting("poor"));
+        assertTrue(engine.enqueue(player("rich"), MIN_BEAN, 0, 0));
+        // 豆子不足的玩家没有进队列，不会被配给后来的玩家
+        assertTrue(matches.isEmpty());
+        assertEquals(1L, engine.metrics().get("refused"));
+        assertEquals(1, engine.metrics().get("waiting"));
+    }
+
+    @Test
+    void refusalCancelsEarlierTicket() {
+        assertTrue(engine.enqueue(player("a"), 1000, 0, 0));
+        // 输光后重新匹配：旧票一并作废
+        assertFalse(engine.enqueue(player("a"), 0, 0, 0));
+        assertFalse(engine.isWaiting("a"));
+        assertTrue(engine.enqueue(player("b"), 1000, 0, 0));
+        assertTrue(matches.isEmpty());
+    }
+
+    @Test
+    void matchesPlayersInSameBucket() {
+        assertTrue(engine.enqueue(player("a"), 1500, 5, 5));
+        assertTrue(engine.enqueue(player("b"), 1800, 5, 5));
+        assertEquals(1, matches.size());
+        assertEquals("a:b", matches.get(0));
+        assertFalse(engine.isWaiting("a"));
+        assertFalse(engine.isWaiting("b"));
+    }
+
+    @Test
+    void sweepWidensToleranceOverTime() throws Exception {
+        MatchmakingEngine fast = new MatchmakingEngine(1000, 10, 50, 5, MIN_BEAN);
+        fast.setMatchListener((first, second) -> matches.add(first.getOpenId() + ":" + second.getOpenId()));
+        assertTrue(fast.enqueue(player("a"), 500, 0, 0));
+        assertTrue(fast.enqueue(player("b"), 2500, 0, 0));
+        // 豆子档位差 2，刚入队时配不上
+        assertTrue(matches.isEmpty());
+        Thread.sleep(120);
+        fast.sweep();
+        assertEquals(1, matches.size());
+    }
+
+    @Test
+    void separatesWinRateBandsUntilWidened() throws Exception {
+        MatchmakingEngine fast = new MatchmakingEngine(1000, 10, 50, 5, MIN_BEAN);
+        fast.setMatchListener((first, second) -> matches.add(first.getOpenId() + ":" + second.getOpenId()));
+        // 豆子同档，胜率 70% 与 50% 差两档
+        assertTrue(fast.enqueue(player("strong"), 1000, 7, 3));
+        assertTrue(fast.enqueue(player("average"), 1000, 5, 5));
+        assertTrue(matches.isEmpty());
+        // 新手按 50% 胜率处理，和 average 同档，立即配上
+        assertTrue(fast.enqueue(player("rookie"), 1000, 1, 0));
+        assertEquals("average:rookie", matches.get(0));
+        Thread.sleep(120);
+        fast.sweep();
+        assertTrue(fast.isWaiting("strong"));
+    }
+
+    @Test
+    void cancelledPlayerIsNotMatched() {
+        assertTrue(engine.enqueue(player("a"), 1000, 0, 0));
+        assertTrue(engine.cancel("a"));
+        assertFalse(engine.cancel("a"));
+        assertTrue(engine.enqueue(player("b"), 1000, 0, 0));
+        assertTrue(matches.isEmpty());
+        assertTrue(engine.isWaiting("b"));
+        assertEquals(1L, engine.metrics().get("cancelled"));
+    }
+
+    @Test
+    void reportsTimeToMatchPercentiles() throws Exception {
+        MatchmakingEngine fast = new MatchmakingEngine(1000, 10, 50, 5, MIN_BEAN);
+        assertEquals(0L, fast.metrics().get("timeToMatchP99"));
+        assertTrue(fast.enqueue(player("a"), 500, 0, 0));
+        assertTrue(fast.enqueue(player("b"), 2500, 0, 0));
+        Thread.sleep(120);
+        fast.sweep();
+        // 再配一对立即成功的，四个样本里两个约 0ms、两个超过 100ms
+        assertTrue(fast.enqueue(player("c"), 1000, 0, 0));
+        assertTrue(fast.enqueue(player("d"), 1000, 0, 0));
+
+        Map<String, Object> metrics = fast.metrics();
+        assertEquals(2L, metrics.get("matched"));
+        assertTrue((Long) metrics.get("timeToMatchP50") < 100);
+        assertTrue((Long) metrics.get("timeToMatchP90") >= 100);
+        assertTrue((Long) metrics.get("timeToMatchP99") >= 100);
+    }
+
+    @Test
+    void holdsTensOfThousandsOfWaitingPlayers() {
+        int players = 20_000;
+        // 每人一个豆子档位，档位间隔大于最大放宽幅度，谁也配不上谁
+        for (int i = 0; i < players; i++) {
+            assertTrue(engine.enqueue(player("waiting-" + i), (long) i * 10 * 1000 + MIN_BEAN, 0, 0));
+        }
+        engine.sweep();
+        assertTrue(matches.isEmpty());
+        assertEquals(players, engine.metrics().get("waiting"));
+
+        // 每个档位来一个对手，都和自己档位的等待者配上
+        for (int i = 0; i < players; i++) {
+            assertTrue(engine.enqueue(player("partner-" + i), (long) i * 10 * 1000 + MIN_BEAN, 0, 0));
+        }
+        assertEquals(players, matches.size());
+        for (int i = 0; i < players; i++) {
+            assertEquals("waiting-" + i + ":partner-" + i, matches.get(i));
+        }
+        assertEquals(0, engine.metrics().get("waiting"));
+    }
+
+    @Test
+    void concurrentEnqueueNeverMatchesAPlayerTwice() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger pairs = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        MatchmakingEngine shared = new MatchmakingEngine(1000, 10, 5000, 5, MIN_BEAN);
+        shared.setMatchListener((first, second) -> {
+            pairs.incrementAndGet();
+            if (!seen.add(first.getOpenId()) || !seen.add(second.getOpenId())) {
+                duplicates.incrementAndGet();
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    // 分散到 20 个豆子档位，线程之间抢同一批桶
+                    shared.enqueue(player(thread + "-" + i), 1000 + (i % 20) * 1000L, 0, 0);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        shared.sweep();
+
+        int total = threads * perThread;
+        assertEquals(0, duplicates.get());
+        assertEquals(total, pairs.get() * 2 + (Integer) shared.metrics().get("waiting"));
+        // 同档的人最终都能配上，最多每档剩一个
+        assertTrue((Integer) shared.metrics().get("waiting") <= 20);
+    }
+
+    private static PlayerVO player(String openId) {
+        PlayerVO player = new PlayerVO();
+        player.setOpenId(openId);
+        return player;
+    }
+}
@@ -0,0 +1,202 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundPipelineTest {
+
+    private static final String IN_FLIGHT = "{\"type\":\"game_ready\"}";
+
+    private Session session;
+    private OutboundPipeline pipeline;
+    // 已交给 WebSocket 的帧，以及最近一帧的完成回调
+    private final List<Object> sent = new ArrayList<>();
+    private SendHandler inFlight;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            inFlight = invocation.getArgument(1);
+            return null;
+        }).when(remote).sendText(any(String.class), any(SendHandler.class));
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            inFlight = invocation.getArgument(1);
+            return null;
+        }).when(remote).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+
+        pipeline = new OutboundPipeline(3, OutboundPipeline.OverflowPolicy.COALESCE);
+        // 第一帧发出后不回调，模拟慢客户端，后续帧留在队列里
+        pipeline.send(session, IN_FLIGHT);
+    }
+
+    @Test
+    void replacesOnlyAQueuedFrameOfTheSameType() throws IOException {
+        ByteBuffer binary = ByteBuffer.wrap(new byte[]{BinaryProtocol.OP_PLEASE_TAKE_CARD});
+        pipeline.send(session, "{\"type\":\"opponent_offline\",\"n\":1}");
+        pipeline.send(session, "{\"seq\":1,\"type\":\"round_complete\"}");
+        pipeline.send(session, binary);
+        // 队列已满：同类型的旧状态被替换，带 seq 的帧和二进制帧都保留
+        pipeline.send(session, "{\"type\":\"opponent_offline\",\"n\":2}");
+
+        verify(session, never()).close(any(CloseReason.class));
+        assertEquals(1L, pipeline.metrics().get("coalesced"));
+        assertEquals(3L, pipeline.metrics().get("queuedFrames"));
+
+        drain();
+        assertEquals(4, sent.size());
+        assertEquals(IN_FLIGHT, sent.get(0));
+        assertEquals("{\"seq\":1,\"type\":\"round_complete\"}", sent.get(1));
+        assertSame(binary, sent.get(2));
+        assertEquals("{\"type\":\"opponent_offline\",\"n\":2}", sent.get(3));
+    }
+
+    @Test
+    void sequencedFrameThatCannotBeKeptDisconnects() throws IOException {
+        fillWithSequencedFrames();
+        pipeline.send(session, "{\"seq\":20,\"type\":\"round_complete\"}");
+        verify(session).close(any(CloseReason.class));
+        assertEquals(1L, pipeline.metrics().get("disconnected"));
+    }
+
+    @Test
+    void unsequencedFrameWithNothingToReplaceDisconnects() throws IOException {
+        fillWithSequencedFrames();
+        // 不会为了放下新状态去丢带 seq 的帧
+        pipeline.send(session, "{\"type\":\"opponent_offline\"}");
+        verify(session).close(any(CloseReason.class));
+        assertEquals(0L, pipeline.metrics().get("coalesced"));
+    }
+
+    @Test
+    void terminalFrameIsNeverCoalesced() throws IOException {
+        pipeline.send(session, "{\"type\":\"room_expired\"}");
+        pipeline.send(session, "{\"type\":\"share\"}");
+        pipeline.send(session, "{\"type\":\"share\"}");
+        pipeline.send(session, "{\"type\":\"room_expired\"}");
+        verify(session).close(any(CloseReason.class));
+        assertEquals(0L, pipeline.metrics().get("coalesced"));
+    }
+
+    @Test
+    void binaryFrameIsNeverCoalesced() throws IOException {
+        fillWithSequencedFrames();
+        pipeline.send(session, ByteBuffer.wrap(new byte[]{BinaryProtocol.OP_PLEASE_TAKE_CARD}));
+        verify(session).close(any(CloseReason.class));
+    }
+
+    @Test
+    void dropPolicyOnlyDropsUnsequencedLobbyFrames() throws IOException {
+        OutboundPipeline dropping = new OutboundPipeline(3, OutboundPipeline.OverflowPolicy.DROP);
+        dropping.send(session, IN_FLIGHT);
+        for (int i = 0; i < 3; i++) {
+            dropping.send(session, "{\"type\":\"opponent_offline\",\"n\":" + i + "}");
+        }
+        dropping.send(session, "{\"type\":\"opponent_offline\",\"n\":3}");
+        verify(session, never()).close(any(CloseReason.class));
+        assertEquals(1L, dropping.metrics().get("dropped"));
+
+        // 带 seq 的帧放不下时断开，不静默丢掉
+        dropping.send(session, "{\"seq\":1,\"type\":\"round_complete\"}");
+        verify(session).close(any(CloseReason.class));
+        assertEquals(1L, dropping.metrics().get("disconnected"));
+    }
+
+    @Test
+    void dropPolicyDisconnectsOnBinaryAndTerminalFrames() throws IOException {
+        OutboundPipeline dropping = new OutboundPipeline(1, OutboundPipeline.OverflowPolicy.DROP);
+        dropping.send(session, IN_FLIGHT);
+        dropping.send(session, "{\"type\":\"share\"}");
+        dropping.send(session, "{\"type\":\"room_expired\"}");
+        verify(session).close(any(CloseReason.class));
+    }
+
+    @Test
+    void inlineCompletionsAreSentInALoop() {
+        // 容器在 sendText 内部直接回调完成：连续发送不能随队列长度加深调用栈
+        int frames = 50_000;
+        SendHandler[] first = new SendHandler[1];
+        int[] count = new int[1];
+        // 手写代理而不是 mock，几万次调用不经过 Mockito 记录
+        RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.Async.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendText")) {
+                        SendHandler handler = (SendHandler) args[1];
+                        if (count[0]++ == 0) {
+                            // 第一帧挂起，让后面的帧先排进队列
+                            first[0] = handler;
+                        } else {
+                            handler.onResult(new SendResult());
+                        }
+                    }
+                    return null;
+                });
+        Session inline = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return "s2";
+                        case "isOpen":
+                            return true;
+                        case "getAsyncRemote":
+                            return remote;
+                        default:
+                            return null;
+                    }
+                });
+
+        OutboundPipeline deep = new OutboundPipeline(frames, OutboundPipeline.OverflowPolicy.DISCONNECT);
+        for (int i = 0; i <= frames; i++) {
+            deep.send(inline, "{\"type\":\"share\"}");
+        }
+        assertEquals((long) frames, deep.metrics().get("queuedFrames"));
+
+        first[0].onResult(new SendResult());
+        assertEquals(frames + 1, count[0]);
+        assertEquals((long) frames + 1, deep.metrics().get("sent"));
+        assertEquals(0L, deep.metrics().get("queuedFrames"));
+        assertFalse(deep.isBusy(inline));
+    }
+
+    private void fillWithSequencedFrames() {
+        for (int i = 0; i < 3; i++) {
+            pipeline.send(session, "{\"seq\":" + (10 + i) + ",\"type\":\"round_complete\"}");
+        }
+    }
+
+    // 逐帧回调发送成功，直到队列发完
+    private void drain() {
+        int before;
+        do {
+            before = sent.size();
+            inFlight.onResult(new SendResult());
+        } while (sent.size() > before);
+    }
+}
@@ -0,0 +1,51 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSONObject;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每条出站消息的分配量：改造前每次发送新建 JSONObject 和 Gson，
+ * 现在固定内容的消息直接复用预编码的帧，结算消息用共享 Gson 序列化类型化 DTO
+ */
+class OutboundSerializationBenchmarkTest {
+
+    private static final int CALLS = 20_000;
+
+    // 防止 JIT 把结果当作无用代码消除
+    private String sink;
+
+    @Test
+    void constantFramesAreNotReencoded() {
+        double before = Benchmarks.bytesPerCall(CALLS, () -> {
+            JSONObject takeTurnInfo = new JSONObject();
+            takeTurnInfo.put("type", "please_take_card");
+            sink = new Gson().toJson(takeTurnInfo);
+        });
+        double after = Benchmarks.bytesPerCall(CALLS, () -> sink = OutboundMessages.PLEASE_TAKE_CARD);
+
+        assertEquals(sink, new Gson().toJson(JSONObject.parseObject(sink)));
+        assertTrue(after < 1, "pre-encoded please_take_card allocates " + after + " bytes per send");
+        assertTrue(before > 1000, "per-send Gson allocated only " + before + " bytes");
+    }
+
+    @Test
+    void roundCompleteUsesSharedSerializer() {
+        double before = Benchmarks.bytesPerCall(CALLS, () -> {
+            JSONObject roundInfo = new JSONObject();
+            roundInfo.put("type", "round_complete");
+            roundInfo.put("round", 3);
+            roundInfo.put("myCard", 7);
+            roundInfo.put("oppCard", 5);
+            sink = new Gson().toJson(roundInfo);
+        });
+        double after = Benchmarks.bytesPerCall(CALLS,
+                () -> sink = GameUtil.toJson(new RoundCompleteMessage(3, 7, 5)));
+
+        assertEquals("{\"type\":\"round_complete\",\"round\":3,\"myCard\":7,\"oppCard\":5}", sink);
+        assertTrue(after * 3 < before, "round_complete: " + before + " -> " + after + " bytes per send");
+    }
+}
@@ -0,0 +1,82 @@
+package com.tencard.demo01;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayBufferTest {
+
+    @Test
+    void stampsSeqIntoJsonObjects() {
+        ReplayBuffer buffer = new ReplayBuffer(8, false, 0);
+        assertEquals("{\"seq\":1}", buffer.append("{}"));
+        JSONObject frame = JSON.parseObject((String) buffer.append(OutboundMessages.OPPONENT_LEAVE));
+        assertEquals(2, frame.getIntValue("seq"));
+        assertEquals("opponent_leave", frame.getString("type"));
+        assertEquals("{\"seq\":3,\"type\":\"x\"}", buffer.append("{\"type\":\"x\"}"));
+    }
+
+    @Test
+    void reusesPreEncodedFramesWithoutReserializing() {
+        ReplayBuffer buffer = new ReplayBuffer(8, false, 0);
+        String constant = OutboundMessages.PLEASE_TAKE_CARD;
+        String sent = (String) buffer.append(constant);
+        // 预编码的常量原样跟在 seq 后面，regionMatches 比较的就是常量本身的字符
+        assertTrue(sent.regionMatches(sent.indexOf(',') + 1, constant, 1, constant.length() - 1));
+        assertEquals("{\"seq\":1,".length() + constant.length() - 1, sent.length());
+
+        // 重新解析再序列化会改掉这些空白和 Gson 的 HTML 转义，拼接则逐字保留
+        String odd = "{\"type\" : \"x\",  \"text\":\"\\u003c\"}";
+        assertEquals("{\"seq\":2," + odd.substring(1), buffer.append(odd));
+    }
+
+    @Test
+    void rejectsNonObjectFrames() {
+        ReplayBuffer buffer = new ReplayBuffer(8, false, 0);
+        assertThrows(IllegalArgumentException.class, () -> buffer.append("[1,2]"));
+        assertThrows(IllegalArgumentException.class, () -> buffer.append(""));
+    }
+
+    @Test
+    void binaryFramesCarrySeqAfterOpcode() {
+        ReplayBuffer buffer = new ReplayBuffer(8, true, 41);
+        ByteBuffer original = BinaryProtocol.gameResult("red_win");
+        ByteBuffer sent = (ByteBuffer) buffer.append(original);
+        assertEquals(6, sent.remaining());
+        assertEquals(BinaryProtocol.OP_GAME_RESULT, sent.get(0));
+        assertEquals(42, sent.getInt(1));
+        assertEquals(BinaryProtocol.RESULT_RED_WIN, sent.get(5));
+        // 原帧不变，可以复用
+        assertEquals(2, original.remaining());
+
+        ByteBuffer please = (ByteBuffer) buffer.append(BinaryProtocol.pleaseTakeCard());
+        assertEquals(43, please.getInt(1));
+    }
+
+    @Test
+    void replaysFramesAfterSeqUntilOverwritten() {
+        ReplayBuffer buffer = new ReplayBuffer(4, true, 0);
+        for (int i = 0; i < 6; i++) {
+            buffer.append(BinaryProtocol.pleaseTakeCard());
+        }
+        List<Object> missed = buffer.since(3);
+        assertEquals(3, missed.size());
+        byte[] header = new byte[5];
+        ((ByteBuffer) missed.get(0)).get(header);
+        assertArrayEquals(new byte[]{BinaryProtocol.OP_PLEASE_TAKE_CARD, 0, 0, 0, 4}, header);
+        // seq 1 已被覆盖
+        assertNull(buffer.since(1));
+        buffer.ack(5);
+        assertNull(buffer.since(4));
+        assertEquals(1, buffer.since(5).size());
+    }
+}
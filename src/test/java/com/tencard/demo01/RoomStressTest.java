@@ -0,0 +1,123 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomStressTest {
+
+    private static final int ROOMS = 10_000;
+    private static final String RED = "redSide";
+    private static final String BLUE = "blueSide";
+
+    /**
+     * 1 万个房间同时对局：每个玩家的出牌由“网络”线程池投递到房间信箱，回合结束后再投递下一张，
+     * 红蓝双方的投递互相竞争。每个房间必须恰好产生一个结果，并且与按实际出牌顺序单线程重放的结果一致
+     */
+    @Test
+    void tenThousandConcurrentGamesEachReachOneConsistentResult() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        ExecutorService network = Executors.newFixedThreadPool(4);
+        try {
+            Random random = new Random(2024);
+            List<Table> tables = new ArrayList<>(ROOMS);
+            CountDownLatch finished = new CountDownLatch(ROOMS);
+            for (int i = 0; i < ROOMS; i++) {
+                tables.add(new Table(new Room((long) i, "r" + i, pool), GameStateTest.shuffledDeck(random),
+                        GameStateTest.shuffledDeck(random), network, finished));
+            }
+            for (Table table : tables) {
+                table.startRound();
+            }
+            assertTrue(finished.await(60, TimeUnit.SECONDS), "games not finished: " + finished.getCount());
+
+            for (Table table : tables) {
+                assertEquals(1, table.results.get(), "room " + table.room.getId());
+                assertEquals(0, table.rejected.get(), "room " + table.room.getId());
+                assertEquals(replay(table), table.result);
+            }
+        } finally {
+            network.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    // 按房间里实际出过的牌单线程重放一遍
+    private static String replay(Table table) {
+        GameState state = new GameState();
+        String result = null;
+        for (int round = 0; round < table.roundsPlayed; round++) {
+            state.addCard(RED, table.red[round]);
+            state.addCard(BLUE, table.blue[round]);
+            result = state.determineRoundResult();
+            if (GameState.RESULT_CONTINUE.equals(result)) {
+                state.nextRound();
+            }
+        }
+        assertNotNull(result);
+        return result;
+    }
+
+    private static final class Table {
+        private final Room room;
+        private final int[] red;
+        private final int[] blue;
+        private final ExecutorService network;
+        private final CountDownLatch finished;
+        private final AtomicInteger results = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+        // 只在房间信箱内读写，finished 之后由测试线程读取
+        private int roundsPlayed;
+        private String result;
+
+        Table(Room room, int[] red, int[] blue, ExecutorService network, CountDownLatch finished) {
+            this.room = room;
+            this.red = red;
+            this.blue = blue;
+            this.network = network;
+            this.finished = finished;
+            room.resetPlayerDecks();
+        }
+
+        // 双方各自从“网络”线程投递本回合的牌
+        void startRound() {
+            int round = roundsPlayed;
+            network.execute(() -> room.execute(() -> play(RED, red[round])));
+            network.execute(() -> room.execute(() -> play(BLUE, blue[round])));
+        }
+
+        // 与 WebSocket4Match.handlePlayCard 相同的流程
+        private void play(String role, int card) {
+            if (room.checkPlay(role, card) != null) {
+                rejected.incrementAndGet();
+                return;
+            }
+            room.play(role, card);
+            GameState state = room.getGameState();
+            if (!state.isCurrentRoundComplete()) {
+                return;
+            }
+            String roundResult = state.determineRoundResult();
+            roundsPlayed++;
+            if (GameState.RESULT_CONTINUE.equals(roundResult)) {
+                state.nextRound();
+                startRound();
+            } else {
+                result = roundResult;
+                results.incrementAndGet();
+                finished.countDown();
+            }
+        }
+    }
+}
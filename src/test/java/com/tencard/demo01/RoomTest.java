@@ -0,0 +1,56 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomTest {
+
+    private static final String RED = "redSide";
+    private static final String BLUE = "blueSide";
+
+    @Test
+    void rejectsIllegalAndDuplicatePlays() {
+        Room room = newGame();
+        assertEquals(CardRejectedMessage.REASON_INVALID_CARD, room.checkPlay(RED, 0));
+        assertEquals(CardRejectedMessage.REASON_INVALID_CARD, room.checkPlay(RED, 11));
+        assertNull(room.checkPlay(RED, 3));
+        room.play(RED, 3);
+        assertEquals(CardRejectedMessage.REASON_ALREADY_PLAYED, room.checkPlay(RED, 4));
+        room.play(BLUE, 4);
+        room.getGameState().determineRoundResult();
+        room.getGameState().nextRound();
+        assertEquals(CardRejectedMessage.REASON_CARD_USED, room.checkPlay(RED, 3));
+    }
+
+    @Test
+    void lastCardsAreAlwaysPlayableAndAOneInTheLastRoundEndsTheGame() {
+        Room room = newGame();
+        // 双方按同样的顺序出牌，点数相同不会提前分胜负，1 留到最后一回合
+        int[] order = {2, 3, 4, 5, 6, 7, 8, 9, 10, 1};
+        String result = null;
+        for (int round = 0; round < order.length; round++) {
+            assertNull(room.checkPlay(RED, order[round]), "round " + (round + 1));
+            room.play(RED, order[round]);
+            assertNull(room.checkPlay(BLUE, order[round]), "round " + (round + 1));
+            room.play(BLUE, order[round]);
+            result = room.getGameState().determineRoundResult();
+            if (GameState.RESULT_CONTINUE.equals(result)) {
+                room.getGameState().nextRound();
+            }
+        }
+        assertEquals(GameState.RESULT_DRAW, result);
+        assertTrue(room.getGameState().isGameCompleted());
+        assertEquals(0, room.lowestCard(RED));
+        // 对局结束后任何出牌都被拒绝，不会再推进回合
+        assertEquals(CardRejectedMessage.REASON_INVALID_CARD, room.checkPlay(RED, 1));
+    }
+
+    static Room newGame() {
+        Room room = new Room(1L, "r1", Runnable::run);
+        room.resetPlayerDecks();
+        return room;
+    }
+}
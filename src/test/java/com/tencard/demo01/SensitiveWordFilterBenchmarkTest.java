@@ -0,0 +1,91 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 进房时的昵称检查：词库从内置的几个词涨到一万个词，自动机匹配耗时基本不变；
+ * 原来逐词 contains 的做法随词数线性变慢
+ */
+class SensitiveWordFilterBenchmarkTest {
+
+    private static final String[] NICKNAMES = {"快乐的小猫咪123", "Tom和Jerry", "夜 空 中 最 亮 的 星", "ＡＢ小王子", "玩家4396"};
+
+    @TempDir
+    Path dir;
+
+    private int found;
+
+    @Test
+    void joinCheckStaysFlatUpToTenThousandWords() throws IOException {
+        List<String> words = randomWords(10_000);
+        SensitiveWordFilter builtIn = new SensitiveWordFilter(null);
+        SensitiveWordFilter large = new SensitiveWordFilter(writeWords(words).toString());
+        large.init();
+        assertTrue((int) large.metrics().get("words") > words.size());
+        for (String nickname : NICKNAMES) {
+            assertNull(large.findFirst(nickname), nickname);
+        }
+        assertEquals(words.get(4321), large.findFirst("我是" + words.get(4321).toUpperCase()));
+
+        double small = Benchmarks.median(Benchmarks.nanosPerCall(200, 500, () -> check(builtIn)));
+        double tenThousand = Benchmarks.median(Benchmarks.nanosPerCall(200, 500, () -> check(large)));
+        double loop = Benchmarks.median(Benchmarks.nanosPerCall(20, 5, () -> {
+            // 原来 handleJoinRoom 的做法：每次进房逐词转小写再 contains
+            for (String nickname : NICKNAMES) {
+                String lower = nickname.toLowerCase();
+                for (String word : words) {
+                    if (lower.contains(word.toLowerCase())) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }));
+
+        assertTrue(tenThousand < small * 3, "built-in words " + small + " ns, 10k words " + tenThousand + " ns");
+        assertTrue(tenThousand * 100 < loop, "10k words: automaton " + tenThousand + " ns, loop " + loop + " ns");
+    }
+
+    private void check(SensitiveWordFilter filter) {
+        for (String nickname : NICKNAMES) {
+            if (filter.findFirst(nickname) != null) {
+                found++;
+            }
+        }
+    }
+
+    private Path writeWords(List<String> words) throws IOException {
+        Path file = dir.resolve("words.txt");
+        Files.write(file, words, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    // 互不相同的 4-8 个小写字母的随机词，测试昵称里没有这么长的连续字母，不会误命中
+    private static List<String> randomWords(int count) {
+        Random random = new Random(21);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            char[] word = new char[4 + random.nextInt(5)];
+            for (int i = 0; i < word.length; i++) {
+                word[i] = (char) ('a' + random.nextInt(26));
+            }
+            words.add(new String(word));
+        }
+        return new ArrayList<>(words);
+    }
+}
@@ -0,0 +1,107 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerialExecutorTest {
+
+    private static final int ROOMS = 10_000;
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 25;
+
+    /**
+     * 1 万个房间信箱共用一个小线程池，多个线程同时往同一房间投递：
+     * 同一房间内不能并发执行，同一投递方的事件保持顺序，所有事件都执行且只执行一次
+     */
+    @Test
+    void tenThousandRoomsStaySerialAndOrdered() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            List<RoomProbe> rooms = new ArrayList<>(ROOMS);
+            for (int i = 0; i < ROOMS; i++) {
+                rooms.add(new RoomProbe(new SerialExecutor(pool)));
+            }
+            int total = ROOMS * PRODUCERS * EVENTS_PER_PRODUCER;
+            CountDownLatch done = new CountDownLatch(total);
+            for (int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                producers.execute(() -> {
+                    for (int seq = 0; seq < EVENTS_PER_PRODUCER; seq++) {
+                        for (RoomProbe room : rooms) {
+                            room.submit(producer, seq, done);
+                        }
+                    }
+                });
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS), "events not drained: " + done.getCount());
+
+            long executed = 0;
+            for (RoomProbe room : rooms) {
+                assertEquals(0, room.overlaps.get());
+                assertEquals(0, room.outOfOrder.get());
+                executed += room.executed.get();
+            }
+            assertEquals(total, executed);
+        } finally {
+            producers.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failingTaskDoesNotStallTheMailbox() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            SerialExecutor mailbox = new SerialExecutor(pool);
+            CountDownLatch after = new CountDownLatch(1);
+            mailbox.execute(() -> {
+                throw new IllegalStateException("boom");
+            });
+            mailbox.execute(after::countDown);
+            assertTrue(after.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static final class RoomProbe {
+        private final SerialExecutor mailbox;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicInteger overlaps = new AtomicInteger();
+        private final AtomicInteger outOfOrder = new AtomicInteger();
+        // 每个投递方下一个应执行的序号，只在信箱内读写
+        private final int[] nextSeq = new int[PRODUCERS];
+
+        RoomProbe(SerialExecutor mailbox) {
+            this.mailbox = mailbox;
+        }
+
+        void submit(int producer, int seq, CountDownLatch done) {
+            mailbox.execute(() -> {
+                if (running.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                if (nextSeq[producer] != seq) {
+                    outOfOrder.incrementAndGet();
+                }
+                nextSeq[producer] = seq + 1;
+                executed.incrementAndGet();
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionHeartbeatTest {
+
+    private final OutboundPipeline pipeline = new OutboundPipeline(8, OutboundPipeline.OverflowPolicy.DISCONNECT);
+    private final List<List<Session>> evicted = new ArrayList<>();
+    private Session session;
+    private RemoteEndpoint.Async remote;
+    private SendHandler inFlight;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        remote = mock(RemoteEndpoint.Async.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        // 异步发送不回调，模拟卡住的客户端
+        doAnswer(invocation -> {
+            inFlight = invocation.getArgument(1);
+            return null;
+        }).when(remote).sendText(any(String.class), any(SendHandler.class));
+    }
+
+    @Test
+    void pingsIdleSessions() throws Exception {
+        SessionHeartbeat heartbeat = heartbeat(60);
+        heartbeat.register(session);
+        heartbeat.sweep();
+        verify(remote, times(1)).sendPing(any(ByteBuffer.class));
+        assertEquals(1L, heartbeat.metrics().get("pingsSent"));
+    }
+
+    @Test
+    void skipsSessionsWithASendInFlight() throws Exception {
+        SessionHeartbeat heartbeat = heartbeat(60);
+        heartbeat.register(session);
+        pipeline.send(session, "{\"type\":\"x\"}");
+
+        heartbeat.sweep();
+        verify(remote, never()).sendPing(any(ByteBuffer.class));
+        assertEquals(1L, heartbeat.metrics().get("pingsSkipped"));
+
+        // 在途的发送完成后恢复 ping
+        inFlight.onResult(new SendResult());
+        heartbeat.sweep();
+        verify(remote, times(1)).sendPing(any(ByteBuffer.class));
+    }
+
+    @Test
+    void stalledSessionIsEvictedByTheDeadlineWithoutBeingPinged() throws Exception {
+        SessionHeartbeat heartbeat = heartbeat(0);
+        heartbeat.register(session);
+        pipeline.send(session, "{\"type\":\"x\"}");
+        Thread.sleep(5);
+
+        heartbeat.sweep();
+        verify(remote, never()).sendPing(any(ByteBuffer.class));
+        assertEquals(1, evicted.size());
+        assertSame(session, evicted.get(0).get(0));
+        assertTrue(heartbeat.metrics().get("sessions").equals(0));
+    }
+
+    private SessionHeartbeat heartbeat(long timeoutSeconds) {
+        // 只直接调用 sweep，不启动时间轮
+        SessionHeartbeat heartbeat = new SessionHeartbeat(null, pipeline, 20, timeoutSeconds);
+        heartbeat.setEvictor(evicted::add);
+        return heartbeat;
+    }
+}
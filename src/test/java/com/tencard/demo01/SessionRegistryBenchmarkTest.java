@@ -0,0 +1,86 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.Session;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每条 /match 消息分发前都要按会话反查 openId：1k、10k、100k 连接下注册表查询耗时不随连接数增长，
+ * 原来遍历 openId -> Session 映射的做法随连接数线性变慢
+ */
+class SessionRegistryBenchmarkTest {
+
+    private static final int[] CONNECTIONS = {1_000, 10_000, 100_000};
+
+    @Test
+    void lookupCostStaysFlatAsConnectionsGrow() {
+        double[] registryNanos = new double[CONNECTIONS.length];
+        double scanNanos = 0;
+        for (int c = 0; c < CONNECTIONS.length; c++) {
+            int n = CONNECTIONS[c];
+            SessionRegistry registry = new SessionRegistry();
+            Map<String, Session> openId2Session = new ConcurrentHashMap<>();
+            Session[] sessions = new Session[n];
+            for (int i = 0; i < n; i++) {
+                sessions[i] = session("s-" + i);
+                registry.register("open-" + i, sessions[i]);
+                openId2Session.put("open-" + i, sessions[i]);
+            }
+            Random random = new Random(n);
+            int[] misses = new int[1];
+            registryNanos[c] = Benchmarks.median(Benchmarks.nanosPerCall(200, 1000, () -> {
+                if (registry.findOpenId(sessions[random.nextInt(n)]) == null) {
+                    misses[0]++;
+                }
+            }));
+            if (n == CONNECTIONS[CONNECTIONS.length - 1]) {
+                scanNanos = Benchmarks.median(Benchmarks.nanosPerCall(20, 10, () -> {
+                    if (scan(openId2Session, sessions[random.nextInt(n)]) == null) {
+                        misses[0]++;
+                    }
+                }));
+            }
+            assertEquals(0, misses[0]);
+            assertEquals("open-7", registry.findOpenId(sessions[7]));
+        }
+
+        double smallest = registryNanos[0];
+        double largest = registryNanos[CONNECTIONS.length - 1];
+        // 连接数涨 100 倍，查询耗时只随缓存命中率变化，远小于线性增长
+        assertTrue(largest < smallest * 20, "registry lookup 1k=" + smallest + "ns, 100k=" + largest + "ns");
+        assertTrue(largest * 100 < scanNanos, "registry " + largest + "ns vs linear scan " + scanNanos + "ns");
+    }
+
+    // 原来的 findOpenIdBySession：遍历全部在线玩家比较会话
+    private static String scan(Map<String, Session> openId2Session, Session session) {
+        for (Map.Entry<String, Session> entry : openId2Session.entrySet()) {
+            if (entry.getValue().getId().equals(session.getId())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static Session session(String id) {
+        return (Session) Proxy.newProxyInstance(SessionRegistryBenchmarkTest.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "hashCode":
+                            return id.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
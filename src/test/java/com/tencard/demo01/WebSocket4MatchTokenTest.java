@@ -0,0 +1,117 @@
+package com.tencard.demo01;
+
+import com.tencard.demo01.saveData.SessionTokenService;
+import com.tencard.demo01.saveData.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * /match 建连时用会话令牌确认身份：令牌里的 openId 为准，校验不查库
+ */
+class WebSocket4MatchTokenTest {
+
+    private final SessionTokenService tokens = new SessionTokenService("test-secret", 1, false);
+    private final UserService userService = mock(UserService.class);
+    private final SessionHeartbeat sessionHeartbeat = mock(SessionHeartbeat.class);
+    private final MatchmakingEngine matchmakingEngine = mock(MatchmakingEngine.class);
+    private final WebSocket4Match endpoint = new WebSocket4Match();
+
+    @BeforeEach
+    void setUp() {
+        endpoint.setSessionTokenService(tokens);
+        endpoint.setUserService(userService);
+        endpoint.setSessionHeartbeat(sessionHeartbeat);
+        endpoint.setMatchmakingEngine(matchmakingEngine);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // 端点的依赖是静态字段，不能留给其他测试
+        for (String field : new String[]{"sessionTokenService", "userService", "sessionHeartbeat", "matchmakingEngine"}) {
+            ReflectionTestUtils.setField(WebSocket4Match.class, field, null);
+        }
+    }
+
+    @Test
+    void validTokenBindsItsOpenIdWithoutDatabase() throws Exception {
+        Map<String, List<String>> params = new HashMap<>();
+        params.put("token", Collections.singletonList(tokens.issue("alice").getToken()));
+        // 客户端带的 openId 参数不能覆盖令牌里的身份
+        params.put("openId", Collections.singletonList("mallory"));
+        Session session = session("s-valid", params);
+
+        endpoint.onOpen(session);
+
+        assertEquals("alice", session.getUserProperties().get(SessionTokenService.OPEN_ID_ATTRIBUTE));
+        verify(session, never()).close(any(CloseReason.class));
+        verify(sessionHeartbeat).register(session);
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+
+        // 断开时按令牌里的 openId 清理
+        endpoint.onClose(session);
+        verify(matchmakingEngine).cancel("alice");
+        verify(matchmakingEngine, never()).cancel("mallory");
+    }
+
+    @Test
+    void invalidTokenClosesWithPolicyViolation() throws Exception {
+        Map<String, List<String>> params = new HashMap<>();
+        params.put("token", Collections.singletonList(tokens.issue("alice").getToken() + "x"));
+        Session session = session("s-invalid", params);
+
+        endpoint.onOpen(session);
+
+        assertCloseCode(session);
+        assertNull(session.getUserProperties().get(SessionTokenService.OPEN_ID_ATTRIBUTE));
+        verify(sessionHeartbeat, never()).register(any());
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+    }
+
+    @Test
+    void rawOpenIdIsRefusedWhenTokensAreRequired() throws Exception {
+        Map<String, List<String>> params = new HashMap<>();
+        params.put("openId", Collections.singletonList("alice"));
+        Session session = session("s-raw", params);
+
+        endpoint.onOpen(session);
+
+        assertCloseCode(session);
+        verify(sessionHeartbeat, never()).register(any());
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+    }
+
+    private static void assertCloseCode(Session session) throws Exception {
+        ArgumentCaptor<CloseReason> reason = ArgumentCaptor.forClass(CloseReason.class);
+        verify(session).close(reason.capture());
+        assertEquals(CloseReason.CloseCodes.VIOLATED_POLICY, reason.getValue().getCloseCode());
+    }
+
+    private static Session session(String id, Map<String, List<String>> params) {
+        Session session = mock(Session.class);
+        Map<String, Object> properties = new HashMap<>();
+        when(session.getId()).thenReturn(id);
+        when(session.getRequestParameterMap()).thenReturn(params);
+        when(session.getUserProperties()).thenReturn(properties);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
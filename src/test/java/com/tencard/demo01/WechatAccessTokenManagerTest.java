@@ -0,0 +1,109 @@
+package com.tencard.demo01;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class WechatAccessTokenManagerTest {
+
+    private static final String TOKEN_URL =
+            "http://wx.test/cgi-bin/token?grant_type=client_credential&appid=app&secret=secret";
+
+    private HashedWheelTimer timer;
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+    private WechatAccessTokenManager manager;
+
+    @BeforeEach
+    void setUp() {
+        timer = new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, 64);
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        // 微信接口慢一点，保证并发调用方确实重叠在同一次刷新上
+        restTemplate.setInterceptors(Collections.singletonList((request, body, execution) -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return execution.execute(request, body);
+        }));
+        manager = new WechatAccessTokenManager("app", "secret", "http://wx.test/", 300, timer, restTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+        timer.stop();
+    }
+
+    @Test
+    void concurrentCallersShareOneFetch() throws Exception {
+        server.expect(once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess("{\"access_token\":\"t1\",\"expires_in\":7200}", MediaType.APPLICATION_JSON));
+
+        int callers = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return manager.getAccessToken();
+            }));
+        }
+        start.countDown();
+        for (Future<String> result : results) {
+            assertEquals("t1", result.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        server.verify();
+        assertEquals(1L, manager.metrics().get("fetches"));
+        // 之后直接命中缓存
+        assertEquals("t1", manager.getAccessToken());
+        assertEquals(1L, manager.metrics().get("fetches"));
+    }
+
+    @Test
+    void invalidatedTokenIsFetchedAgain() {
+        server.expect(requestTo(TOKEN_URL))
+                .andRespond(withSuccess("{\"access_token\":\"t1\",\"expires_in\":7200}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(TOKEN_URL))
+                .andRespond(withSuccess("{\"access_token\":\"t2\",\"expires_in\":7200}", MediaType.APPLICATION_JSON));
+
+        assertEquals("t1", manager.getAccessToken());
+        // 别人的旧 token 不会清掉当前缓存
+        manager.invalidate("stale");
+        assertEquals("t1", manager.getAccessToken());
+        manager.invalidate("t1");
+        assertEquals("t2", manager.getAccessToken());
+        server.verify();
+    }
+
+    @Test
+    void wechatErrorSurfacesToCallers() {
+        server.expect(requestTo(TOKEN_URL))
+                .andRespond(withSuccess("{\"errcode\":40013,\"errmsg\":\"invalid appid\"}", MediaType.APPLICATION_JSON));
+        assertThrows(IllegalStateException.class, manager::getAccessToken);
+        assertEquals(1L, manager.metrics().get("fetchFailures"));
+    }
+}
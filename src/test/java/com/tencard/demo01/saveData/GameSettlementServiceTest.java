@@ -0,0 +1,215 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({GameSettlementService.class, UserService.class, UserCache.class, LeaderboardService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+// 定时刷盘不参与测试，由用例手动调用 flush；重试不退避
+@TestPropertySource(properties = {
+        "xcards.settlement.flush-interval-ms=3600000",
+        "xcards.settlement.retry-backoff-ms=0",
+        "xcards.settlement.batch-size=500"
+})
+class GameSettlementServiceTest {
+
+    @TempDir
+    static Path journalDir;
+
+    @DynamicPropertySource
+    static void journal(DynamicPropertyRegistry registry) {
+        registry.add("xcards.settlement.journal-dir", () -> journalDir.resolve("service").toString());
+    }
+
+    @Autowired
+    private GameSettlementService settlementService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GameSettlementRepository settlementRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void flushesThousandsOfGamesInBatches() {
+        int players = 200;
+        int games = 5000;
+        for (int i = 0; i < players; i++) {
+            userService.findOrCreateUserByOpenId("tp-" + i);
+        }
+        for (int g = 0; g < games; g++) {
+            settlementService.settle("tp-game-" + g, "tp-" + (g % players), "tp-" + ((g + 1) % players), 1);
+        }
+        settlementService.flush();
+
+        long totalBean = 0;
+        int totalGames = 0;
+        for (int i = 0; i < players; i++) {
+            UserVO user = userRepository.findByOpenId("tp-" + i);
+            totalBean += user.getBean();
+            totalGames += user.getTotalGames();
+            // 缓存 + 账本与数据库一致
+            assertEquals((long) user.getBean(), settlementService.availableBean("tp-" + i));
+        }
+        assertEquals(players * 1000L, totalBean);
+        assertEquals(games * 2, totalGames);
+        assertEquals(0, settlementService.metrics().get("pending"));
+    }
+
+    @Test
+    void poisonSettlementIsDeadLetteredWithoutBlockingOthers() throws Exception {
+        userService.findOrCreateUserByOpenId("poison-a");
+        userService.findOrCreateUserByOpenId("poison-b");
+        settlementService.settle("poison-ok-1", "poison-a", "poison-b", 100);
+        // gameId 超过列长度 64，这一局怎么写都会失败
+        settlementService.settle(repeat('x', 80), "poison-a", "poison-b", 50);
+        settlementService.settle("poison-ok-2", "poison-b", "poison-a", 10);
+
+        for (int i = 0; i < 10 && (long) settlementService.metrics().get("deadLettered") == 0; i++) {
+            settlementService.flush();
+        }
+
+        assertEquals(1L, settlementService.metrics().get("deadLettered"));
+        assertEquals(0, settlementService.metrics().get("retrying"));
+        assertEquals(1090L, (long) userRepository.findByOpenId("poison-a").getBean());
+        assertEquals(910L, (long) userRepository.findByOpenId("poison-b").getBean());
+        // 死信不再计入可用豆子
+        assertEquals(1090L, settlementService.availableBean("poison-a"));
+        List<String> deadLetters = Files.readAllLines(journalDir.resolve("service").resolve("dead-letter.log"),
+                StandardCharsets.UTF_8);
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.get(0).startsWith(repeat('x', 80) + "\tpoison-a\tpoison-b\t50"));
+    }
+
+    @Test
+    void unflushedSettlementsAreReplayedAfterRestart() throws Exception {
+        userService.findOrCreateUserByOpenId("crash-a");
+        userService.findOrCreateUserByOpenId("crash-b");
+        Path dir = journalDir.resolve("crash");
+
+        GameSettlementService beforeCrash = newService(dir);
+        beforeCrash.recover();
+        assertTrue(beforeCrash.settle("crash-game-1", "crash-a", "crash-b", 200));
+        assertTrue(beforeCrash.settle("crash-game-2", "crash-a", "crash-b", 100));
+        // 进程在刷盘前退出：不调用 flush / shutdown
+
+        GameSettlementService afterRestart = newService(dir);
+        afterRestart.recover();
+        assertEquals(2L, afterRestart.metrics().get("replayed"));
+        assertEquals(1300L, afterRestart.availableBean("crash-a"));
+        afterRestart.flush();
+
+        assertEquals(1300L, (long) userRepository.findByOpenId("crash-a").getBean());
+        assertEquals(700L, (long) userRepository.findByOpenId("crash-b").getBean());
+        assertEquals(2, userRepository.findByOpenId("crash-b").getLosses());
+        // 全部落库后日志分段被删除，再重启不会重复结算
+        afterRestart.shutdown();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertFalse(files.anyMatch(p -> p.getFileName().toString().startsWith("settlements")));
+        }
+        GameSettlementService again = newService(dir);
+        again.recover();
+        assertEquals(0L, again.metrics().get("replayed"));
+        assertEquals(2, settlementRepository.findByGameIdIn(Arrays.asList("crash-game-1", "crash-game-2")).size());
+    }
+
+    @Test
+    void concurrentSettlementsShareJournalWrites() throws Exception {
+        userService.findOrCreateUserByOpenId("group-a");
+        userService.findOrCreateUserByOpenId("group-b");
+        Path dir = journalDir.resolve("group");
+        GameSettlementService service = newService(dir);
+        ReflectionTestUtils.setField(service, "journalSync", true);
+        service.recover();
+
+        int threads = 8;
+        int perThread = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    assertTrue(service.settle("group-" + thread + "-" + i, "group-a", "group-b", 1));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // 每次刷盘带走多局：组提交次数少于结算数
+        long commits = (long) service.metrics().get("journalGroupCommits");
+        assertTrue(commits < threads * perThread, "group commits: " + commits);
+        assertEquals(0L, service.metrics().get("journalErrors"));
+
+        // settle 返回时已落盘：不刷盘直接重启，全部重放
+        GameSettlementService restarted = newService(dir);
+        restarted.recover();
+        assertEquals((long) threads * perThread, restarted.metrics().get("replayed"));
+        restarted.shutdown();
+        assertEquals(1000L + threads * perThread, (long) userRepository.findByOpenId("group-a").getBean());
+    }
+
+    private GameSettlementService newService(Path dir) {
+        GameSettlementService service = new GameSettlementService();
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "settlementRepository", settlementRepository);
+        ReflectionTestUtils.setField(service, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(service, "userService", userService);
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "retryBackoffMillis", 0L);
+        ReflectionTestUtils.setField(service, "maxBackoffMillis", 0L);
+        ReflectionTestUtils.setField(service, "splitAfterAttempts", 3);
+        ReflectionTestUtils.setField(service, "maxAttempts", 6);
+        ReflectionTestUtils.setField(service, "journalDir", dir.toString());
+        return service;
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 百万玩家规模下的榜单读取耗时：翻页和“我的名次”都要在 1 ms 以内（按 p99 计）
+ */
+class LeaderboardServiceBenchmarkTest {
+
+    private static final int USERS = 1_000_000;
+    private static final int CALLS = 20_000;
+    private static final long BUDGET_NANOS = 1_000_000;
+
+    private static final LeaderboardService leaderboard = new LeaderboardService();
+
+    @BeforeAll
+    static void fill() {
+        Random random = new Random(7);
+        for (int i = 1; i <= USERS; i++) {
+            int wins = random.nextInt(500);
+            leaderboard.add(LeaderboardServiceTest.user(i, "open-" + i, wins, random.nextInt(500), random.nextInt(100_000)));
+        }
+        assertEquals(USERS, leaderboard.size());
+    }
+
+    @Test
+    void pagesAreServedWithinBudget() {
+        Random random = new Random(11);
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            long[] nanos = measure(() -> {
+                // 首页最常见，其余随机翻到榜单深处
+                int page = random.nextBoolean() ? 0 : random.nextInt(USERS / 50);
+                List<LeaderboardEntry> entries = leaderboard.page(board, page, 50);
+                assertEquals(50, entries.size());
+            });
+            assertWithinBudget(board + " page", nanos);
+        }
+    }
+
+    @Test
+    void rankWindowIsServedWithinBudget() {
+        Random random = new Random(13);
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            long[] nanos = measure(() -> {
+                LeaderboardService.RankWindow window = leaderboard.around(board,
+                        "open-" + (1 + random.nextInt(USERS)), 5);
+                assertTrue(window.getRank() >= 1);
+            });
+            assertWithinBudget(board + " rank", nanos);
+        }
+    }
+
+    private static long[] measure(Runnable call) {
+        // 先预热，让 JIT 编译完热点路径
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        long[] nanos = new long[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            long start = System.nanoTime();
+            call.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void assertWithinBudget(String name, long[] sorted) {
+        long p99 = sorted[sorted.length * 99 / 100];
+        assertTrue(p99 < BUDGET_NANOS, name + " p99 " + p99 / 1000 + " us over " + sorted.length + " calls");
+    }
+}
@@ -0,0 +1,139 @@
+package com.tencard.demo01.saveData;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LeaderboardServiceTest {
+
+    private final LeaderboardService leaderboard = new LeaderboardService();
+
+    @Test
+    void pagesCarryRanksAndNoPrivateFields() {
+        for (int i = 1; i <= 5; i++) {
+            leaderboard.add(user(i, "open-" + i, i * 10, 1, 1000L + i));
+        }
+        List<LeaderboardEntry> second = leaderboard.page(LeaderboardService.Board.WINS, 1, 2);
+        assertEquals(2, second.size());
+        assertEquals(3, second.get(0).getRank());
+        assertEquals("name-3", second.get(0).getNickName());
+        assertEquals(30, second.get(0).getWins());
+        assertEquals(4, second.get(1).getRank());
+
+        String json = JSON.toJSONString(leaderboard.around(LeaderboardService.Board.BEAN, "open-2", 1));
+        assertFalse(json.contains("open-"), json);
+        assertFalse(json.contains("lastSignInDate"), json);
+    }
+
+    @Test
+    void pageFarBeyondTheBoardIsEmpty() {
+        for (int i = 1; i <= 5; i++) {
+            leaderboard.add(user(i, "open-" + i, i, 0, 0L));
+        }
+        // page * size 超出 int 范围，不能回绕成负数或小偏移
+        assertTrue(leaderboard.page(LeaderboardService.Board.WINS, Integer.MAX_VALUE / 50, 100).isEmpty());
+        assertTrue(leaderboard.page(LeaderboardService.Board.WINS, 42949673, 100).isEmpty());
+        assertTrue(leaderboard.page(LeaderboardService.Board.WINS, 1, 5).isEmpty());
+        assertEquals(5, leaderboard.page(LeaderboardService.Board.WINS, 0, 5).size());
+    }
+
+    @Test
+    void rankWindowIsCenteredOnThePlayer() {
+        for (int i = 1; i <= 5; i++) {
+            leaderboard.add(user(i, "open-" + i, i, 0, 0L));
+        }
+        LeaderboardService.RankWindow window = leaderboard.around(LeaderboardService.Board.WINS, "open-3", 1);
+        assertEquals(3, window.getRank());
+        assertEquals(5, window.getTotal());
+        assertEquals(3, window.getEntries().size());
+        assertEquals(2, window.getEntries().get(0).getRank());
+        assertEquals("name-3", window.getEntries().get(1).getNickName());
+    }
+
+    @Test
+    void staleSnapshotDoesNotOverwriteLaterDeltas() {
+        leaderboard.add(user(1, "open-1", 10, 0, 1000L));
+        leaderboard.applyGame("open-1", "open-2", 100);
+        // 结算增量之前读出的整行快照再到达，不能覆盖榜上的战绩
+        leaderboard.add(user(1, "open-1", 10, 0, 1000L));
+
+        LeaderboardEntry entry = leaderboard.page(LeaderboardService.Board.WINS, 0, 1).get(0);
+        assertEquals(11, entry.getWins());
+        assertEquals(1100L, entry.getBean());
+    }
+
+    @Test
+    void settlementDuringLoadIsNotLostWhenPageIsStale() {
+        UserRepository repository = mock(UserRepository.class);
+        ReflectionTestUtils.setField(leaderboard, "userRepository", repository);
+        when(repository.findAll(any(Pageable.class))).thenAnswer(invocation -> {
+            // 页在结算提交前读出，结算的增量在页应用之前到达
+            List<UserVO> stale = Arrays.asList(user(1, "open-1", 10, 0, 1000L), user(2, "open-2", 0, 10, 1000L));
+            leaderboard.applyGame("open-1", "open-2", 100);
+            return new PageImpl<>(stale, invocation.getArgument(0), 2);
+        });
+        when(repository.findByOpenId("open-1")).thenReturn(user(1, "open-1", 11, 0, 1100L));
+        when(repository.findByOpenId("open-2")).thenReturn(user(2, "open-2", 0, 11, 900L));
+
+        leaderboard.load();
+
+        assertBoard(11, 1100L, 11, 900L);
+    }
+
+    @Test
+    void settlementDuringLoadIsNotCountedTwiceWhenPageIsFresh() {
+        UserRepository repository = mock(UserRepository.class);
+        ReflectionTestUtils.setField(leaderboard, "userRepository", repository);
+        List<UserVO> fresh = Arrays.asList(user(1, "open-1", 11, 0, 1100L), user(2, "open-2", 0, 11, 900L));
+        when(repository.findAll(any(Pageable.class))).thenAnswer(invocation -> {
+            // 页在结算提交后读出，结算的增量随后到达
+            PageImpl<UserVO> page = new PageImpl<>(fresh, invocation.getArgument(0), 2);
+            leaderboard.applyGame("open-1", "open-2", 100);
+            return page;
+        });
+        when(repository.findByOpenId("open-1")).thenReturn(fresh.get(0));
+        when(repository.findByOpenId("open-2")).thenReturn(fresh.get(1));
+
+        leaderboard.load();
+
+        assertBoard(11, 1100L, 11, 900L);
+        // 加载结束后恢复增量更新
+        leaderboard.adjust("open-1", 1, 0, 50L);
+        assertEquals(12, leaderboard.page(LeaderboardService.Board.WINS, 0, 1).get(0).getWins());
+    }
+
+    private void assertBoard(int winnerWins, long winnerBean, int loserLosses, long loserBean) {
+        List<LeaderboardEntry> byBean = leaderboard.page(LeaderboardService.Board.BEAN, 0, 10);
+        assertEquals(2, byBean.size());
+        assertEquals("name-1", byBean.get(0).getNickName());
+        assertEquals(winnerWins, byBean.get(0).getWins());
+        assertEquals(winnerBean, byBean.get(0).getBean());
+        assertEquals(loserLosses, byBean.get(1).getLosses());
+        assertEquals(loserBean, byBean.get(1).getBean());
+    }
+
+    static UserVO user(long id, String openId, int wins, int losses, long bean) {
+        UserVO user = new UserVO();
+        user.setId(id);
+        user.setOpenId(openId);
+        user.setNickName("name-" + id);
+        user.setWins(wins);
+        user.setLosses(losses);
+        user.setBean(bean);
+        user.setLastSignInDate(LocalDate.now());
+        return user;
+    }
+}
@@ -0,0 +1,108 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 百万用户下内存榜单与原来按请求查库的对比：前 10 名和“我的名次”
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+// 百万行只在这个测试的库里，结束后关闭上下文释放
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class LeaderboardSqlBenchmarkTest {
+
+    private static final int USERS = 1_000_000;
+    private static final String ME = "open-424242";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void inMemoryBoardBeatsSqlAtOneMillionUsers() {
+        // 用 H2 的 SYSTEM_RANGE 一条语句造数据，胜场打散分布
+        jdbcTemplate.update("insert into users (id, open_id, nick_name, wins, losses, bean) "
+                + "select x, 'open-' || x, 'name-' || x, mod(x * 7919, 5000), mod(x * 104729, 5000), 1000 "
+                + "from system_range(1, " + USERS + ")");
+        LeaderboardService leaderboard = new LeaderboardService();
+        jdbcTemplate.query("select id, open_id, nick_name, wins, losses, bean from users", rs -> {
+            UserVO user = new UserVO();
+            user.setId(rs.getLong(1));
+            user.setOpenId(rs.getString(2));
+            user.setNickName(rs.getString(3));
+            user.setWins(rs.getInt(4));
+            user.setLosses(rs.getInt(5));
+            user.setBean(rs.getLong(6));
+            leaderboard.add(user);
+        });
+
+        // 原来的做法：每次请求查库排序
+        List<String> sqlTop10 = new ArrayList<>();
+        double sqlTop = median(nanos(3, () -> {
+            sqlTop10.clear();
+            for (UserVO user : entityManager
+                    .createQuery("select u from UserVO u order by u.wins desc, u.id", UserVO.class)
+                    .setMaxResults(10).getResultList()) {
+                sqlTop10.add(user.getNickName());
+            }
+        }));
+        long[] sqlRank = new long[1];
+        double sqlRankNanos = median(nanos(3, () -> sqlRank[0] = 1 + jdbcTemplate.queryForObject(
+                "select count(*) from users u, users me where me.open_id = ? "
+                        + "and (u.wins > me.wins or (u.wins = me.wins and u.id < me.id))", Long.class, ME)));
+
+        List<String> memTop10 = new ArrayList<>();
+        double memTop = p99(nanos(10_000, () -> {
+            memTop10.clear();
+            for (LeaderboardEntry entry : leaderboard.top(10)) {
+                memTop10.add(entry.getNickName());
+            }
+        }));
+        int[] memRank = new int[1];
+        double memRankNanos = p99(nanos(10_000, () -> memRank[0] = leaderboard.rankOf(ME)));
+
+        // 结果一致，内存榜单的 p99 仍比查库的中位数快两个数量级以上
+        assertEquals(sqlTop10, memTop10);
+        assertEquals(sqlRank[0], memRank[0]);
+        assertTrue(memTop * 100 < sqlTop, "top 10: sql " + sqlTop / 1000 + " us, in-memory p99 " + memTop / 1000 + " us");
+        assertTrue(memRankNanos * 100 < sqlRankNanos,
+                "rank: sql " + sqlRankNanos / 1000 + " us, in-memory p99 " + memRankNanos / 1000 + " us");
+    }
+
+    // 先调用一次预热，再逐次计时，返回升序排列的纳秒数
+    private static double[] nanos(int calls, Runnable call) {
+        call.run();
+        double[] result = new double[calls];
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            call.run();
+            result[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static double median(double[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private static double p99(double[] sorted) {
+        return sorted[sorted.length * 99 / 100];
+    }
+}
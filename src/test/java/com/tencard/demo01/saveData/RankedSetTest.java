@@ -0,0 +1,46 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankedSetTest {
+
+    @Test
+    void rangeMatchesSortedOrder() {
+        RankedSet<Integer> set = new RankedSet<>(Comparator.reverseOrder());
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int value = random.nextInt(1_000_000);
+            if (!expected.contains(value)) {
+                set.add(value);
+                expected.add(value);
+            }
+        }
+        // 删掉一部分，确认子树大小维护正确
+        for (int i = 0; i < 300; i++) {
+            assertTrue(set.remove(expected.remove(random.nextInt(expected.size()))));
+        }
+        expected.sort(Collections.reverseOrder());
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, set.range(0, Integer.MAX_VALUE));
+        for (int from = 0; from < expected.size(); from += 97) {
+            int to = Math.min(expected.size(), from + 25);
+            assertEquals(expected.subList(from, to), set.range(from, 25));
+            assertEquals(from, set.rankOf(expected.get(from)));
+            assertEquals(expected.get(from), set.get(from));
+        }
+        assertTrue(set.range(expected.size(), 10).isEmpty());
+        assertTrue(set.range(5, 0).isEmpty());
+        assertEquals(expected.subList(0, 3), set.range(-2, 3));
+    }
+}
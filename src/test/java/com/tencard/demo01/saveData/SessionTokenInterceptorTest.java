@@ -0,0 +1,115 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(UserController.class)
+@Import(SessionTokenService.class)
+@TestPropertySource(properties = "xcards.session-token.secret=test-secret")
+class SessionTokenInterceptorTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private LeaderboardService leaderboardService;
+
+    @MockBean
+    private WinStreakTracker winStreakTracker;
+
+    @Test
+    void invalidTokenIsUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/user/alice").header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void tokenForAnotherUserIsForbidden() throws Exception {
+        mockMvc.perform(post("/api/user/signin/bob").header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isForbidden());
+        verify(userService, never()).signIn(anyString());
+    }
+
+    @Test
+    void signInWithoutTokenIsUnauthorized() throws Exception {
+        mockMvc.perform(post("/api/user/signin/alice"))
+                .andExpect(status().isUnauthorized());
+        verify(userService, never()).signIn(anyString());
+    }
+
+    @Test
+    void signInWithOwnTokenSucceeds() throws Exception {
+        UserVO user = new UserVO();
+        user.setOpenId("alice");
+        user.setBean(1500L);
+        when(userService.findOrCreateUserByOpenId("alice")).thenReturn(user);
+        when(userService.signIn("alice")).thenReturn(user);
+        mockMvc.perform(post("/api/user/signin/alice").header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isOk());
+        verify(userService).signIn("alice");
+    }
+
+    @Test
+    void rawOpenIdReadIsStillAllowed() throws Exception {
+        when(userService.findOrCreateUserByOpenId("alice")).thenReturn(new UserVO());
+        mockMvc.perform(get("/api/user/alice"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void nicknameUpdateRequiresMatchingToken() throws Exception {
+        String body = "{\"openId\":\"bob\",\"nickName\":\"newName\"}";
+        mockMvc.perform(post("/api/user/updateNickname").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/user/updateNickname").contentType(MediaType.APPLICATION_JSON).content(body)
+                        .header(HttpHeaders.AUTHORIZATION, bearer("alice")))
+                .andExpect(status().isForbidden());
+        verify(userService, never()).updateUserNickname(any(), any());
+
+        mockMvc.perform(post("/api/user/updateNickname").contentType(MediaType.APPLICATION_JSON).content(body)
+                        .header(HttpHeaders.AUTHORIZATION, bearer("bob")))
+                .andExpect(status().isOk());
+        verify(userService).updateUserNickname("bob", "newName");
+    }
+
+    @Test
+    void missingTokenIsUnauthorizedOnceRawOpenIdIsDisabled() throws Exception {
+        SessionTokenInterceptor interceptor = new SessionTokenInterceptor();
+        ReflectionTestUtils.setField(interceptor, "sessionTokenService",
+                new SessionTokenService("test-secret", 1, false));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/user/alice"), response, null));
+        assertEquals(401, response.getStatus());
+    }
+
+    private String bearer(String openId) {
+        return "Bearer " + sessionTokenService.issue(openId).getToken();
+    }
+}
@@ -0,0 +1,50 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SessionTokenServiceTest {
+
+    private final SessionTokenService service = new SessionTokenService("test-secret", 1, true);
+
+    @Test
+    void issuedTokenVerifiesToItsOpenId() {
+        String token = service.issue("o-abc.123").getToken();
+        assertEquals("o-abc.123", service.verify(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        String token = service.issue("alice").getToken();
+        // 换成别人的 openId，签名不变
+        String forged = token.replaceFirst("^[^.]+", "Ym9i");
+        assertNull(service.verify(forged));
+        assertNull(service.verify(token + "x"));
+        assertNull(service.verify("garbage"));
+        assertNull(service.verify(null));
+    }
+
+    @Test
+    void tokenSignedWithAnotherSecretIsRejected() {
+        String token = new SessionTokenService("other-secret", 1, true).issue("alice").getToken();
+        assertNull(service.verify(token));
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        SessionTokenService shortLived = new SessionTokenService("test-secret", 0, true);
+        assertNull(shortLived.verify(shortLived.issue("alice").getToken()));
+        assertEquals(1L, shortLived.metrics().get("expired"));
+    }
+
+    @Test
+    void bearerHeaderIsParsed() {
+        assertEquals("abc", SessionTokenService.fromAuthorizationHeader("Bearer abc"));
+        assertEquals("abc", SessionTokenService.fromAuthorizationHeader("bearer  abc "));
+        assertNull(SessionTokenService.fromAuthorizationHeader("Basic abc"));
+        assertNull(SessionTokenService.fromAuthorizationHeader("Bearer "));
+        assertNull(SessionTokenService.fromAuthorizationHeader(null));
+    }
+}
@@ -0,0 +1,100 @@
+package com.tencard.demo01.saveData;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest
+@Import({UserService.class, UserCache.class, LeaderboardService.class})
+// 并发用例需要各线程看到彼此已提交的数据，不包在测试事务里
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserServiceTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Test
+    void nicknameUpdateDoesNotOverwriteConcurrentBeanAndStats() {
+        userService.findOrCreateUserByOpenId("rename-1");
+        // 缓存里的旧快照之后，结算已经原子地写了豆子和战绩
+        userRepository.settleGame("rename-1", "someone-else", 300L);
+
+        UserVO updated = userService.updateUserNickname("rename-1", "newName");
+        assertNotNull(updated);
+
+        UserVO stored = userRepository.findByOpenId("rename-1");
+        assertEquals("newName", stored.getNickName());
+        assertEquals(1300L, stored.getBean());
+        assertEquals(1, stored.getWins());
+        assertEquals(1, stored.getTotalGames());
+        assertEquals("newName", userService.findOrCreateUserByOpenId("rename-1").getNickName());
+        assertEquals("newName", leaderboardService.around(LeaderboardService.Board.WINS, "rename-1", 0)
+                .getEntries().get(0).getNickName());
+    }
+
+    @Test
+    void concurrentNicknameUpdatesForNewUserCreateOneRow() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserVO>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String nickname = "name" + i;
+            results.add(pool.submit(() -> {
+                start.await();
+                return userService.updateUserNickname("rename-new", nickname);
+            }));
+        }
+        start.countDown();
+        for (Future<UserVO> result : results) {
+            assertNotNull(result.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        assertEquals(1, userRepository.findAll().stream().filter(u -> "rename-new".equals(u.getOpenId())).count());
+    }
+
+    @Test
+    void signInDoesNotDoubleCountSettlementPendingSync() {
+        userService.findOrCreateUserByOpenId("sign-1");
+        // 结算已提交，但还没同步到缓存和榜单
+        userRepository.settleGame("sign-1", "sign-other", 300L);
+
+        UserVO signedIn = userService.signIn("sign-1");
+        assertNotNull(signedIn);
+        assertNull(userService.signIn("sign-1"));
+        userService.applySettlement("sign-1", "sign-other", 300L);
+
+        long stored = userRepository.findByOpenId("sign-1").getBean();
+        assertEquals(1800L, stored);
+        assertEquals(stored, userService.findOrCreateUserByOpenId("sign-1").getBean());
+        assertEquals(stored, leaderboardService.around(LeaderboardService.Board.BEAN, "sign-1", 0)
+                .getEntries().get(0).getBean());
+    }
+
+    @Test
+    void missingOrInvalidNicknameIsRejected() {
+        assertNull(userService.updateUserNickname("rename-2", ""));
+        assertNull(userService.updateUserNickname("rename-2", "123456789012345678901"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.tencard.demo01.saveData;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(WxLoginController.class)
+@Import(SessionTokenService.class)
+@TestPropertySource(properties = {
+        "xcards.session-token.secret=test-secret",
+        "wechat.appid=test-appid",
+        "wechat.secret=test-app-secret"
+})
+class WxLoginControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private RestTemplate restTemplate;
+
+    @Test
+    void loginIssuesTokenForWechatOpenId() throws Exception {
+        when(restTemplate.getForObject(anyString(), eq(String.class))).thenReturn("{\"openid\":\"alice\"}");
+        UserVO user = new UserVO();
+        user.setOpenId("alice");
+        when(userService.findOrCreateUserByOpenId("alice")).thenReturn(user);
+
+        JSONObject result = call(post("/api/wx/login").param("code", "wx-code"));
+
+        assertTrue(result.getBooleanValue("success"));
+        assertEquals("alice", result.getString("openId"));
+        assertEquals("alice", sessionTokenService.verify(result.getString("token")));
+        assertTrue(result.getLongValue("expiresAt") > System.currentTimeMillis());
+    }
+
+    @Test
+    void wechatFailureIssuesNoToken() throws Exception {
+        when(restTemplate.getForObject(anyString(), eq(String.class))).thenThrow(new ResourceAccessException("timeout"));
+
+        JSONObject result = call(post("/api/wx/login").param("code", "wx-code"));
+
+        assertFalse(result.getBooleanValue("success"));
+        assertNull(result.get("token"));
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+    }
+
+    @Test
+    void wechatErrorIssuesNoToken() throws Exception {
+        when(restTemplate.getForObject(anyString(), eq(String.class))).thenReturn("{\"errcode\":40029,\"errmsg\":\"invalid code\"}");
+
+        JSONObject result = call(post("/api/wx/login").param("code", "bad-code"));
+
+        assertFalse(result.getBooleanValue("success"));
+        assertNull(result.get("token"));
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+    }
+
+    @Test
+    void refreshIssuesNewTokenWithoutWechatOrDatabase() throws Exception {
+        String old = sessionTokenService.issue("alice").getToken();
+        // 令牌里的过期时间精确到秒，隔一秒再刷新才能保证拿到不同的令牌
+        Thread.sleep(1100);
+
+        JSONObject result = call(post("/api/wx/refresh").header(HttpHeaders.AUTHORIZATION, "Bearer " + old));
+
+        assertTrue(result.getBooleanValue("success"));
+        assertEquals("alice", result.getString("openId"));
+        assertNotEquals(old, result.getString("token"));
+        assertEquals("alice", sessionTokenService.verify(result.getString("token")));
+        verify(restTemplate, never()).getForObject(anyString(), eq(String.class));
+        verify(userService, never()).findOrCreateUserByOpenId(anyString());
+    }
+
+    @Test
+    void refreshRejectsInvalidOrMissingToken() throws Exception {
+        JSONObject invalid = call(post("/api/wx/refresh").header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token"));
+        assertFalse(invalid.getBooleanValue("success"));
+        assertNull(invalid.get("token"));
+
+        JSONObject missing = call(post("/api/wx/refresh"));
+        assertFalse(missing.getBooleanValue("success"));
+        assertNull(missing.get("token"));
+    }
+
+    private JSONObject call(RequestBuilder request) throws Exception {
+        String body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JSONObject.parseObject(body);
+    }
+}